@@ -159,7 +159,10 @@ def _strip_gwt_incompatible(ctx, name, java_srcs):
         executable = ctx.executable._j2cl_stripper,
         arguments = [args],
         env = dict(LANG = "en_US.UTF-8"),
-        execution_requirements = {"supports-workers": "1"},
+        execution_requirements = {
+            "supports-workers": "1",
+            "supports-multiplex-workers": "1",
+        },
         mnemonic = "J2cl",
     )
 
@@ -193,6 +196,8 @@ def _j2cl_transpile(
         args.add("-readablesourcemaps")
     if internal_transpiler_flags.get("readable_library_info"):
         args.add("-readablelibraryinfo")
+    if internal_transpiler_flags.get("verification"):
+        args.add("-verification", internal_transpiler_flags["verification"])
     if ctx.var.get("GROK_ELLIPSIS_BUILD", None):
         args.add("-generatekytheindexingmetadata")
     args.add_all(srcs)
@@ -204,7 +209,10 @@ def _j2cl_transpile(
         executable = ctx.executable._j2cl_transpiler,
         arguments = [args],
         env = dict(LANG = "en_US.UTF-8"),
-        execution_requirements = {"supports-workers": "1"},
+        execution_requirements = {
+            "supports-workers": "1",
+            "supports-multiplex-workers": "1",
+        },
         mnemonic = "J2cl",
     )
 
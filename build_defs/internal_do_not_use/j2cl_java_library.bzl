@@ -19,6 +19,7 @@ def _impl_j2cl_library(ctx):
             "readable_source_maps": ctx.attr.readable_source_maps,
             "readable_library_info": ctx.attr.readable_library_info,
             "declare_legacy_namespace": ctx.attr.declare_legacy_namespace,
+            "verification": ctx.attr.verification,
         },
     )
 
@@ -53,6 +54,7 @@ _J2CL_INTERNAL_LIB_ATTRS = {
     "readable_source_maps": attr.bool(default = False),
     "readable_library_info": attr.bool(default = False),
     "declare_legacy_namespace": attr.bool(default = False),
+    "verification": attr.string(values = ["", "ALWAYS", "SAMPLED", "OFF"]),
 }
 
 _J2CL_LIB_ATTRS = {
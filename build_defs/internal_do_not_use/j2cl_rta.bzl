@@ -47,18 +47,25 @@ def _j2cl_rta_impl(ctx):
     unused_types_list = ctx.outputs.unused_types_list
     unused_members_list = ctx.outputs.unused_members_list
     removal_code_info_file = ctx.outputs.removal_code_info_file
+    removal_code_index_file = ctx.outputs.removal_code_index_file
 
     # TODO(b/120914781): use a param file
     rta_args = ctx.actions.args()
     rta_args.add("--unusedTypesOutput", unused_types_list)
     rta_args.add("--unusedMembersOutput", unused_members_list)
     rta_args.add("--removalCodeInfoOutput", removal_code_info_file)
+    rta_args.add("--removalCodeIndexOutput", removal_code_index_file)
     rta_args.add_all(all_library_info_files)
 
     # Run rta algorithm
     ctx.actions.run(
         inputs = all_library_info_files,
-        outputs = [unused_types_list, unused_members_list, removal_code_info_file],
+        outputs = [
+            unused_types_list,
+            unused_members_list,
+            removal_code_info_file,
+            removal_code_index_file,
+        ],
         arguments = [rta_args],
         progress_message = "Running rapid type analysis",
         executable = ctx.executable._rta_runner,
@@ -68,6 +75,7 @@ def _j2cl_rta_impl(ctx):
         _J2clRtaInfo(
             unused_types_list = unused_types_list,
             removal_code_info_file = removal_code_info_file,
+            removal_code_index_file = removal_code_index_file,
             unused_members_list = unused_members_list,
         ),
     ]
@@ -91,6 +99,7 @@ j2cl_rta = rule(
         "unused_types_list": "%{name}_unused_types.list",
         "unused_members_list": "%{name}_unused_members.list",
         "removal_code_info_file": "%{name}_removal_code_info",
+        "removal_code_index_file": "%{name}_removal_code_index",
     },
     implementation = _j2cl_rta_impl,
 )
@@ -19,16 +19,13 @@ import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
-import com.google.common.io.MoreFiles;
 import com.google.j2cl.common.J2clUtils;
 import com.google.j2cl.common.Problems;
 import com.google.j2cl.common.Problems.FatalError;
 import com.google.j2cl.frontend.FrontendUtils.FileInfo;
 import com.google.j2cl.frontend.GwtIncompatibleNodeCollector;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -49,9 +46,7 @@ public class JavaPreprocessor {
     for (FileInfo fileInfo : fileInfos) {
       String processedFileContent;
       try {
-        String fileContent =
-            MoreFiles.asCharSource(Paths.get(fileInfo.sourcePath()), StandardCharsets.UTF_8).read();
-        processedFileContent = processFile(fileContent);
+        processedFileContent = processFile(fileInfo.readContent());
       } catch (IOException e) {
         problems.fatal(FatalError.CANNOT_OPEN_FILE, e.toString());
         return;
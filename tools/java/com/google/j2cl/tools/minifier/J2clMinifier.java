@@ -14,26 +14,28 @@
 package com.google.j2cl.tools.minifier;
 
 import static com.google.common.base.Preconditions.checkState;
-import static com.google.common.collect.Iterables.getLast;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Multiset;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.j2cl.tools.rta.CodeRemovalIndex;
+import com.google.j2cl.tools.rta.CodeRemovalIndex.UnusedLineSet;
 import com.google.j2cl.tools.rta.CodeRemovalInfo;
-import com.google.j2cl.tools.rta.LineRange;
-import com.google.j2cl.tools.rta.UnusedLines;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A thread-safe, fast and pretty minifier/comment stripper for J2CL generated code.
@@ -57,15 +59,11 @@ import java.util.Map;
  * make sure that the parser doesn't interpret the contents of a line comment and let it effect the
  * parse state.
  *
- * <p>SourceMap updating would be nice. This may be added later.
+ * <p>Source maps of the content can be updated along with it, see {@link #minify(String, String,
+ * String)}.
  */
 public class J2clMinifier {
 
-  private interface TransitionFunction {
-    StringBuilder transition(
-        StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c);
-  }
-
   /**
    * This is a unicode fullwidth low line. Using this unusual separator and incrementing number
    * makes it extremely unlikely that a new minified name will collide with some existing
@@ -73,6 +71,9 @@ public class J2clMinifier {
    */
   private static final String MINIFICATION_SEPARATOR = "\uFF3F";
 
+  /** The default bound on the total length of the minified content that is cached. */
+  private static final long DEFAULT_CACHE_MAXIMUM_CHARS = 64 * 1024 * 1024;
+
   private static final String ZIP_FILE_SEPARATOR = "!/";
   private static final int ZIP_FILE_SEPARATOR_OFFSET = ZIP_FILE_SEPARATOR.length();
 
@@ -92,6 +93,27 @@ public class J2clMinifier {
 
   private static int numberOfStates = 0;
 
+  /**
+   * The actions taken on each transition between two states, performed by a switch rather than
+   * through function objects since they are executed for every character.
+   */
+  private static final int[][] actions;
+
+  private static final int A_INVALID = 0;
+  private static final int A_SKIP_CHAR = 1;
+  private static final int A_SKIP_CHAR_UNLESS_NEW_LINE = 2;
+  private static final int A_WRITE_CHAR = 3;
+  private static final int A_START_IDENTIFIER = 4;
+  private static final int A_BUFFER_IDENTIFIER_CHAR = 5;
+  private static final int A_WRITE_IDENTIFIER = 6;
+  private static final int A_WRITE_IDENTIFIER_AND_CHAR = 7;
+  private static final int A_WRITE_SLASH = 8;
+  private static final int A_WRITE_SLASH_AND_CHAR = 9;
+  private static final int A_WRITE_SLASH_AND_START_IDENTIFIER = 10;
+
+  /** The size of the chunks in which streamed content is read and written. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   static {
     // Initialize unique state ids.
     {
@@ -154,20 +176,80 @@ public class J2clMinifier {
 
       setDefaultTransitions(S_DOUBLE_QUOTED_STRING_ESCAPE, S_DOUBLE_QUOTED_STRING);
     }
+
+    // Create and initialize the transition actions table. Transitions that cannot happen are left
+    // as A_INVALID.
+    {
+      actions = new int[numberOfStates][numberOfStates];
+
+      actions[S_NON_IDENTIFIER][S_MINIMIZABLE_IDENTIFIER] = A_START_IDENTIFIER;
+      actions[S_NON_IDENTIFIER][S_NON_MINIMIZABLE_IDENTIFIER] = A_WRITE_CHAR;
+      actions[S_NON_IDENTIFIER][S_NON_IDENTIFIER] = A_WRITE_CHAR;
+      actions[S_NON_IDENTIFIER][S_MAYBE_COMMENT_START] = A_SKIP_CHAR;
+      actions[S_NON_IDENTIFIER][S_SINGLE_QUOTED_STRING] = A_WRITE_CHAR;
+      actions[S_NON_IDENTIFIER][S_DOUBLE_QUOTED_STRING] = A_WRITE_CHAR;
+      actions[S_NON_IDENTIFIER][S_END_STATE] = A_SKIP_CHAR;
+
+      actions[S_NON_MINIMIZABLE_IDENTIFIER][S_NON_MINIMIZABLE_IDENTIFIER] = A_WRITE_CHAR;
+      actions[S_NON_MINIMIZABLE_IDENTIFIER][S_NON_IDENTIFIER] = A_WRITE_CHAR;
+      actions[S_NON_MINIMIZABLE_IDENTIFIER][S_MAYBE_COMMENT_START] = A_SKIP_CHAR;
+      actions[S_NON_MINIMIZABLE_IDENTIFIER][S_SINGLE_QUOTED_STRING] = A_WRITE_CHAR;
+      actions[S_NON_MINIMIZABLE_IDENTIFIER][S_DOUBLE_QUOTED_STRING] = A_WRITE_CHAR;
+      actions[S_NON_MINIMIZABLE_IDENTIFIER][S_END_STATE] = A_SKIP_CHAR;
+
+      actions[S_MINIMIZABLE_IDENTIFIER][S_MINIMIZABLE_IDENTIFIER] = A_BUFFER_IDENTIFIER_CHAR;
+      actions[S_MINIMIZABLE_IDENTIFIER][S_NON_IDENTIFIER] = A_WRITE_IDENTIFIER_AND_CHAR;
+      actions[S_MINIMIZABLE_IDENTIFIER][S_MAYBE_COMMENT_START] = A_WRITE_IDENTIFIER;
+      actions[S_MINIMIZABLE_IDENTIFIER][S_SINGLE_QUOTED_STRING] = A_WRITE_IDENTIFIER_AND_CHAR;
+      actions[S_MINIMIZABLE_IDENTIFIER][S_DOUBLE_QUOTED_STRING] = A_WRITE_IDENTIFIER_AND_CHAR;
+      actions[S_MINIMIZABLE_IDENTIFIER][S_END_STATE] = A_WRITE_IDENTIFIER;
+
+      actions[S_MAYBE_COMMENT_START][S_MINIMIZABLE_IDENTIFIER] =
+          A_WRITE_SLASH_AND_START_IDENTIFIER;
+      actions[S_MAYBE_COMMENT_START][S_NON_MINIMIZABLE_IDENTIFIER] = A_WRITE_SLASH_AND_CHAR;
+      actions[S_MAYBE_COMMENT_START][S_MAYBE_COMMENT_START] = A_WRITE_CHAR;
+      actions[S_MAYBE_COMMENT_START][S_LINE_COMMENT] = A_WRITE_SLASH_AND_CHAR;
+      actions[S_MAYBE_COMMENT_START][S_BLOCK_COMMENT] = A_SKIP_CHAR;
+      actions[S_MAYBE_COMMENT_START][S_NON_IDENTIFIER] = A_WRITE_SLASH_AND_CHAR;
+      actions[S_MAYBE_COMMENT_START][S_SINGLE_QUOTED_STRING] = A_WRITE_SLASH_AND_CHAR;
+      actions[S_MAYBE_COMMENT_START][S_DOUBLE_QUOTED_STRING] = A_WRITE_SLASH_AND_CHAR;
+      actions[S_MAYBE_COMMENT_START][S_END_STATE] = A_WRITE_SLASH;
+
+      actions[S_LINE_COMMENT][S_LINE_COMMENT] = A_WRITE_CHAR;
+      actions[S_LINE_COMMENT][S_NON_IDENTIFIER] = A_WRITE_CHAR;
+      actions[S_LINE_COMMENT][S_END_STATE] = A_SKIP_CHAR;
+
+      actions[S_BLOCK_COMMENT][S_BLOCK_COMMENT] = A_SKIP_CHAR_UNLESS_NEW_LINE;
+      actions[S_BLOCK_COMMENT][S_MAYBE_BLOCK_COMMENT_END] = A_SKIP_CHAR_UNLESS_NEW_LINE;
+      actions[S_BLOCK_COMMENT][S_END_STATE] = A_SKIP_CHAR;
+
+      actions[S_MAYBE_BLOCK_COMMENT_END][S_BLOCK_COMMENT] = A_SKIP_CHAR_UNLESS_NEW_LINE;
+      actions[S_MAYBE_BLOCK_COMMENT_END][S_NON_IDENTIFIER] = A_SKIP_CHAR;
+      actions[S_MAYBE_BLOCK_COMMENT_END][S_MAYBE_BLOCK_COMMENT_END] = A_SKIP_CHAR;
+      actions[S_MAYBE_BLOCK_COMMENT_END][S_END_STATE] = A_SKIP_CHAR;
+
+      actions[S_SINGLE_QUOTED_STRING][S_SINGLE_QUOTED_STRING] = A_WRITE_CHAR;
+      actions[S_SINGLE_QUOTED_STRING][S_SINGLE_QUOTED_STRING_ESCAPE] = A_WRITE_CHAR;
+      actions[S_SINGLE_QUOTED_STRING][S_NON_IDENTIFIER] = A_WRITE_CHAR;
+      actions[S_SINGLE_QUOTED_STRING][S_END_STATE] = A_SKIP_CHAR;
+
+      actions[S_DOUBLE_QUOTED_STRING][S_DOUBLE_QUOTED_STRING] = A_WRITE_CHAR;
+      actions[S_DOUBLE_QUOTED_STRING][S_DOUBLE_QUOTED_STRING_ESCAPE] = A_WRITE_CHAR;
+      actions[S_DOUBLE_QUOTED_STRING][S_NON_IDENTIFIER] = A_WRITE_CHAR;
+      actions[S_DOUBLE_QUOTED_STRING][S_END_STATE] = A_SKIP_CHAR;
+
+      actions[S_SINGLE_QUOTED_STRING_ESCAPE][S_SINGLE_QUOTED_STRING] = A_WRITE_CHAR;
+      actions[S_SINGLE_QUOTED_STRING_ESCAPE][S_END_STATE] = A_SKIP_CHAR;
+
+      actions[S_DOUBLE_QUOTED_STRING_ESCAPE][S_DOUBLE_QUOTED_STRING] = A_WRITE_CHAR;
+      actions[S_DOUBLE_QUOTED_STRING_ESCAPE][S_END_STATE] = A_SKIP_CHAR;
+    }
   }
 
   public static boolean isJ2clFile(String filePath) {
     return filePath.endsWith(".java.js");
   }
 
-  private static StringBuilder bufferIdentifierChar(
-      @SuppressWarnings("unused") StringBuilder minifiedContentBuffer,
-      StringBuilder identifierBuffer,
-      char c) {
-    identifierBuffer.append(c);
-    return identifierBuffer;
-  }
-
   private static String computePrettyIdentifier(String identifier) {
     // Because we have a different mangling pattern for meta functions you can't extract the pretty
     // name with a single simple regex match group.
@@ -183,12 +265,6 @@ public class J2clMinifier {
     }
   }
 
-  private static char[] getChars(String content) {
-    char[] chars = new char[content.length()];
-    content.getChars(0, content.length(), chars, 0);
-    return chars;
-  }
-
   private static boolean isIdentifierChar(char c) {
     return c == '_'
         || c == '$'
@@ -197,24 +273,49 @@ public class J2clMinifier {
         || (c >= 'A' && c <= 'Z');
   }
 
-  private static boolean isMinifiableIdentifier(String identifier) {
+  private static boolean isMinifiableIdentifier(CharSequence identifier) {
     // This is faster than a regex and more readable as well.
     if (startsLikeJavaMethodOrField(identifier)) {
-      int underScoreIndex = identifier.indexOf('_');
+      int underScoreIndex = indexOf(identifier, "_", 0);
       // Match mangled Java member names of the form:  m_<name>__<par1>_ ....
-      return identifier.indexOf("__", underScoreIndex + 1) != -1;
+      return indexOf(identifier, "__", underScoreIndex + 1) != -1;
     }
 
-    return identifier.startsWith("$create__")
-        || identifier.startsWith("$ctor__")
-        || identifier.startsWith("$implements__")
-        || identifier.startsWith("$init__");
+    return startsWith(identifier, "$create__")
+        || startsWith(identifier, "$ctor__")
+        || startsWith(identifier, "$implements__")
+        || startsWith(identifier, "$init__");
+  }
+
+  private static boolean startsLikeJavaMethodOrField(CharSequence identifier) {
+    return startsWith(identifier, "f_")
+        || startsWith(identifier, "m_")
+        || startsWith(identifier, "$f_");
+  }
+
+  private static boolean startsWith(CharSequence sequence, String prefix) {
+    return regionMatches(sequence, 0, prefix);
   }
 
-  private static boolean startsLikeJavaMethodOrField(String identifier) {
-    return identifier.startsWith("f_")
-        || identifier.startsWith("m_")
-        || identifier.startsWith("$f_");
+  private static int indexOf(CharSequence sequence, String string, int fromIndex) {
+    for (int i = fromIndex; i + string.length() <= sequence.length(); i++) {
+      if (regionMatches(sequence, i, string)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean regionMatches(CharSequence sequence, int offset, String string) {
+    if (offset + string.length() > sequence.length()) {
+      return false;
+    }
+    for (int i = 0; i < string.length(); i++) {
+      if (sequence.charAt(offset + i) != string.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private static void setDefaultTransitions(int currentState, int nextState) {
@@ -244,55 +345,6 @@ public class J2clMinifier {
     nextState[currentState]['"'] = S_DOUBLE_QUOTED_STRING;
   }
 
-  @SuppressWarnings("unused")
-  private static StringBuilder skipChar(
-      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c) {
-    return identifierBuffer;
-  }
-
-  private static StringBuilder skipCharUnlessNewLine(
-      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c) {
-    if (c == '\n') {
-      identifierBuffer = writeChar(minifiedContentBuffer, identifierBuffer, c);
-    }
-    return identifierBuffer;
-  }
-
-  @SuppressWarnings("unused")
-  private static StringBuilder startNewIdentifier(
-      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c) {
-    StringBuilder identifierBuilder = new StringBuilder();
-    identifierBuilder.append(c);
-    return identifierBuilder;
-  }
-
-  private static StringBuilder writeChar(
-      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c) {
-    minifiedContentBuffer.append(c);
-    return identifierBuffer;
-  }
-
-  @SuppressWarnings("unused")
-  private static StringBuilder writeSlash(
-      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c) {
-    identifierBuffer = writeChar(minifiedContentBuffer, identifierBuffer, '/');
-    return identifierBuffer;
-  }
-
-  private static StringBuilder writeSlashAndChar(
-      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c) {
-    identifierBuffer = writeChar(minifiedContentBuffer, identifierBuffer, '/');
-    identifierBuffer = writeChar(minifiedContentBuffer, identifierBuffer, c);
-    return identifierBuffer;
-  }
-
-  private static StringBuilder writeSlashAndStartNewIdentifier(
-      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c) {
-    identifierBuffer = writeChar(minifiedContentBuffer, identifierBuffer, '/');
-    identifierBuffer = startNewIdentifier(minifiedContentBuffer, identifierBuffer, c);
-    return identifierBuffer;
-  }
-
   private static String extractFileKey(String fullPath) {
     if (fullPath == null) {
       return null;
@@ -313,102 +365,49 @@ public class J2clMinifier {
    * These fields contain the persistent state that allows for name collision dodging and consistent
    * renaming within and across multiple files.
    */
-  private final Multiset<String> countsByIdentifier = HashMultiset.create();
-
-  /** Set of file paths that are not used by the application. */
-  private ImmutableSet<String> unusedFiles;
+  private final Map<String, AtomicInteger> countsByIdentifier = new ConcurrentHashMap<>();
 
   /**
-   * Gives per file key the array of line indexes that can be stripped. If the index of the line
-   * being scanned is out of bounds of the array, it means the line is used. Otherwise the boolean
-   * stored at the index in the array indicates if the line is used or not.
+   * Gives the files and per file key the lines that can be stripped. The index is memory mapped
+   * when read from a file, and lookups do not allocate beyond encoding the file key.
    */
-  // We choose to use a boolean[] instead of the usual recommended Map<> or Set<> data structure for
-  // performance purpose. Please do not change that instead you measure your change doesn't impact
-  // the performance.
-  private Map<String, boolean[]> unusedLinesPerFile;
+  private CodeRemovalIndex codeRemovalIndex;
 
   /**
    * This is a cache of previously minified content (presumably whole files). This makes reloads in
    * fast concatenating uncompiled JS servers extra-extra fast.
+   *
+   * <p>The cache is keyed by a digest of the content so that it does not retain the original files,
+   * and bounded by the total length of the minified content it holds, evicting the least recently
+   * used entries first.
    */
-  private final Map<String, String> minifiedContentByContent = new Hashtable<>();
+  private final Cache<HashCode, String> minifiedContentByContentDigest =
+      CacheBuilder.newBuilder()
+          .maximumWeight(
+              Long.getLong("j2cl_minifier_cache_max_chars", DEFAULT_CACHE_MAXIMUM_CHARS))
+          .weigher((HashCode contentDigest, String minifiedContent) -> minifiedContent.length())
+          .recordStats()
+          .build();
 
-  private final TransitionFunction[][] transFn;
+  @VisibleForTesting
+  Map<String, String> minifiedIdentifiersByIdentifier = new ConcurrentHashMap<>();
 
-  @VisibleForTesting Map<String, String> minifiedIdentifiersByIdentifier = new HashMap<>();
+  /** The UTF-8 encoding of the minified identifiers, used when minifying streamed content. */
+  private final Map<AsciiIdentifier, byte[]> minifiedIdentifierBytesByIdentifier =
+      new ConcurrentHashMap<>();
 
   public J2clMinifier() {
     // Code removal process is an experimental features for now. In order to avoid disrupting
     // client code using J2clMinifier, we decided to use a System property for now. Eventually,
-    // clients will pass the file to the J2clMinifier.
-    String codeRemovalFilePath = System.getProperty("j2cl_rta_removal_code_info_file");
-    setupRtaCodeRemoval(readCodeRemovalInfoFile(codeRemovalFilePath));
-
-    transFn = new TransitionFunction[numberOfStates][numberOfStates];
-
-    transFn[S_NON_IDENTIFIER][S_MINIMIZABLE_IDENTIFIER] = J2clMinifier::startNewIdentifier;
-    transFn[S_NON_IDENTIFIER][S_NON_MINIMIZABLE_IDENTIFIER] = J2clMinifier::writeChar;
-    transFn[S_NON_IDENTIFIER][S_NON_IDENTIFIER] = J2clMinifier::writeChar;
-    transFn[S_NON_IDENTIFIER][S_MAYBE_COMMENT_START] = J2clMinifier::skipChar;
-    transFn[S_NON_IDENTIFIER][S_SINGLE_QUOTED_STRING] = J2clMinifier::writeChar;
-    transFn[S_NON_IDENTIFIER][S_DOUBLE_QUOTED_STRING] = J2clMinifier::writeChar;
-    transFn[S_NON_IDENTIFIER][S_END_STATE] = J2clMinifier::skipChar;
-
-    transFn[S_NON_MINIMIZABLE_IDENTIFIER][S_NON_MINIMIZABLE_IDENTIFIER] = J2clMinifier::writeChar;
-    transFn[S_NON_MINIMIZABLE_IDENTIFIER][S_NON_IDENTIFIER] = J2clMinifier::writeChar;
-    transFn[S_NON_MINIMIZABLE_IDENTIFIER][S_MAYBE_COMMENT_START] = J2clMinifier::skipChar;
-    transFn[S_NON_MINIMIZABLE_IDENTIFIER][S_SINGLE_QUOTED_STRING] = J2clMinifier::writeChar;
-    transFn[S_NON_MINIMIZABLE_IDENTIFIER][S_DOUBLE_QUOTED_STRING] = J2clMinifier::writeChar;
-    transFn[S_NON_MINIMIZABLE_IDENTIFIER][S_END_STATE] = J2clMinifier::skipChar;
-
-    transFn[S_MINIMIZABLE_IDENTIFIER][S_MINIMIZABLE_IDENTIFIER] =
-        J2clMinifier::bufferIdentifierChar;
-    transFn[S_MINIMIZABLE_IDENTIFIER][S_NON_IDENTIFIER] = this::writeIdentifierAndChar;
-    transFn[S_MINIMIZABLE_IDENTIFIER][S_MAYBE_COMMENT_START] = this::writeIdentifier;
-    transFn[S_MINIMIZABLE_IDENTIFIER][S_SINGLE_QUOTED_STRING] = this::writeIdentifierAndChar;
-    transFn[S_MINIMIZABLE_IDENTIFIER][S_DOUBLE_QUOTED_STRING] = this::writeIdentifierAndChar;
-    transFn[S_MINIMIZABLE_IDENTIFIER][S_END_STATE] = this::writeIdentifier;
-
-    transFn[S_MAYBE_COMMENT_START][S_MINIMIZABLE_IDENTIFIER] =
-        J2clMinifier::writeSlashAndStartNewIdentifier;
-    transFn[S_MAYBE_COMMENT_START][S_NON_MINIMIZABLE_IDENTIFIER] = J2clMinifier::writeSlashAndChar;
-    transFn[S_MAYBE_COMMENT_START][S_MAYBE_COMMENT_START] = J2clMinifier::writeChar;
-    transFn[S_MAYBE_COMMENT_START][S_LINE_COMMENT] = J2clMinifier::writeSlashAndChar;
-    transFn[S_MAYBE_COMMENT_START][S_BLOCK_COMMENT] = J2clMinifier::skipChar;
-    transFn[S_MAYBE_COMMENT_START][S_NON_IDENTIFIER] = J2clMinifier::writeSlashAndChar;
-    transFn[S_MAYBE_COMMENT_START][S_SINGLE_QUOTED_STRING] = J2clMinifier::writeSlashAndChar;
-    transFn[S_MAYBE_COMMENT_START][S_DOUBLE_QUOTED_STRING] = J2clMinifier::writeSlashAndChar;
-    transFn[S_MAYBE_COMMENT_START][S_END_STATE] = J2clMinifier::writeSlash;
-
-    transFn[S_LINE_COMMENT][S_LINE_COMMENT] = J2clMinifier::writeChar;
-    transFn[S_LINE_COMMENT][S_NON_IDENTIFIER] = J2clMinifier::writeChar;
-    transFn[S_LINE_COMMENT][S_END_STATE] = J2clMinifier::skipChar;
-
-    transFn[S_BLOCK_COMMENT][S_BLOCK_COMMENT] = J2clMinifier::skipCharUnlessNewLine;
-    transFn[S_BLOCK_COMMENT][S_MAYBE_BLOCK_COMMENT_END] = J2clMinifier::skipCharUnlessNewLine;
-    transFn[S_BLOCK_COMMENT][S_END_STATE] = J2clMinifier::skipChar;
-
-    transFn[S_MAYBE_BLOCK_COMMENT_END][S_BLOCK_COMMENT] = J2clMinifier::skipCharUnlessNewLine;
-    transFn[S_MAYBE_BLOCK_COMMENT_END][S_NON_IDENTIFIER] = J2clMinifier::skipChar;
-    transFn[S_MAYBE_BLOCK_COMMENT_END][S_MAYBE_BLOCK_COMMENT_END] = J2clMinifier::skipChar;
-    transFn[S_MAYBE_BLOCK_COMMENT_END][S_END_STATE] = J2clMinifier::skipChar;
-
-    transFn[S_SINGLE_QUOTED_STRING][S_SINGLE_QUOTED_STRING] = J2clMinifier::writeChar;
-    transFn[S_SINGLE_QUOTED_STRING][S_SINGLE_QUOTED_STRING_ESCAPE] = J2clMinifier::writeChar;
-    transFn[S_SINGLE_QUOTED_STRING][S_NON_IDENTIFIER] = J2clMinifier::writeChar;
-    transFn[S_SINGLE_QUOTED_STRING][S_END_STATE] = J2clMinifier::skipChar;
-
-    transFn[S_DOUBLE_QUOTED_STRING][S_DOUBLE_QUOTED_STRING] = J2clMinifier::writeChar;
-    transFn[S_DOUBLE_QUOTED_STRING][S_DOUBLE_QUOTED_STRING_ESCAPE] = J2clMinifier::writeChar;
-    transFn[S_DOUBLE_QUOTED_STRING][S_NON_IDENTIFIER] = J2clMinifier::writeChar;
-    transFn[S_DOUBLE_QUOTED_STRING][S_END_STATE] = J2clMinifier::skipChar;
-
-    transFn[S_SINGLE_QUOTED_STRING_ESCAPE][S_SINGLE_QUOTED_STRING] = J2clMinifier::writeChar;
-    transFn[S_SINGLE_QUOTED_STRING_ESCAPE][S_END_STATE] = J2clMinifier::skipChar;
-
-    transFn[S_DOUBLE_QUOTED_STRING_ESCAPE][S_DOUBLE_QUOTED_STRING] = J2clMinifier::writeChar;
-    transFn[S_DOUBLE_QUOTED_STRING_ESCAPE][S_END_STATE] = J2clMinifier::skipChar;
+    // clients will pass the file to the J2clMinifier. The binary index is preferred since it does
+    // not need to be parsed.
+    String codeRemovalIndexPath = System.getProperty("j2cl_rta_removal_code_index_file");
+    if (codeRemovalIndexPath != null) {
+      setupRtaCodeRemoval(loadCodeRemovalIndex(codeRemovalIndexPath));
+    } else {
+      String codeRemovalFilePath = System.getProperty("j2cl_rta_removal_code_info_file");
+      setupRtaCodeRemoval(readCodeRemovalInfoFile(codeRemovalFilePath));
+    }
   }
 
   /**
@@ -427,114 +426,528 @@ public class J2clMinifier {
     String fileKey = extractFileKey(filePath);
 
     // early exit if the file need to be removed entirely
-    if (unusedFiles.contains(fileKey)) {
+    if (codeRemovalIndex.isFileUnused(fileKey)) {
       // TODO(dramaix): please document that minifier can completely remove the content of a file
       // when RTA is not experimental anymore.
       return "";
     }
 
     // Return a previously cached version of minified output, if possible.
-    String minifiedContent = minifiedContentByContent.get(content);
+    HashCode contentDigest = Hashing.murmur3_128().hashUnencodedChars(content);
+    String minifiedContent = minifiedContentByContentDigest.getIfPresent(contentDigest);
     if (minifiedContent != null) {
       return minifiedContent;
     }
 
-    boolean[] unusedLines = unusedLinesPerFile.get(fileKey);
+    minifiedContent =
+        minify(content, codeRemovalIndex.getUnusedLines(fileKey), /* sourceMapRewriter= */ null);
+    // Update the minified content cache for next time.
+    minifiedContentByContentDigest.put(contentDigest, minifiedContent);
 
-    char[] chars = getChars(content);
-    StringBuilder minifiedContentBuffer = new StringBuilder();
+    return minifiedContent;
+  }
+
+  /**
+   * Process the content of a file like {@link #minify(String, String)}, and updates {@code
+   * sourceMap}, the source map of the content in the V3 format, to map the minified content.
+   *
+   * <p>Lines are never added or removed, so only the generated columns of the mappings change and
+   * mappings that start in removed code are dropped. Unlike {@link #minify(String, String)}, the
+   * result is not cached.
+   */
+  public MinifiedFile minify(String filePath, String content, String sourceMap) {
+    String fileKey = extractFileKey(filePath);
+    SourceMapRewriter sourceMapRewriter = new SourceMapRewriter(sourceMap);
+
+    if (codeRemovalIndex.isFileUnused(fileKey)) {
+      // All the mappings are dropped.
+      return new MinifiedFile("", sourceMapRewriter.build());
+    }
+
+    String minifiedContent =
+        minify(content, codeRemovalIndex.getUnusedLines(fileKey), sourceMapRewriter);
+    return new MinifiedFile(minifiedContent, sourceMapRewriter.build());
+  }
+
+  /** The minified content of a file and its updated source map. */
+  public static final class MinifiedFile {
+    private final String content;
+    private final String sourceMap;
+
+    private MinifiedFile(String content, String sourceMap) {
+      this.content = content;
+      this.sourceMap = sourceMap;
+    }
+
+    public String getContent() {
+      return content;
+    }
+
+    public String getSourceMap() {
+      return sourceMap;
+    }
+  }
+
+  private String minify(
+      String content, UnusedLineSet unusedLines, SourceMapRewriter sourceMapRewriter) {
+    StringBuilder minifiedContentBuffer = new StringBuilder(content.length());
     StringBuilder identifierBuffer = new StringBuilder();
     int lastParseState = S_NON_IDENTIFIER;
     int lineNumber = 0;
-    boolean skippingLine = unusedLines != null && unusedLines[lineNumber];
+    boolean skippingLine = unusedLines != null && unusedLines.isUnused(lineNumber);
+    // Offsets of the current line in the content and in the minified content, only needed to
+    // compute columns for the source map.
+    int lineStart = 0;
+    int minifiedLineStart = 0;
 
     /**
      * Loop over the chars in the content, keeping track of in/not-in identifier state, copying
      * non-identifier chars immediately and accumulating identifiers chars for minifying and copying
      * when the identifier ends.
      */
-    for (int i = 0; i < chars.length; i++) {
-      char c = chars[i];
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
 
       // Skip unused lines if necessary. Any unused line should not effect the state machine.
-      if (unusedLines != null) {
-        if (c == '\n') {
-          lineNumber++;
-          skippingLine = unusedLines.length > lineNumber && unusedLines[lineNumber];
-        } else if (skippingLine) {
-          continue;
+      if (skippingLine && c != '\n') {
+        if (sourceMapRewriter != null) {
+          sourceMapRewriter.mapPosition(lineNumber, i - lineStart, SourceMapRewriter.REMOVED);
         }
+        continue;
       }
 
       int parseState = nextState[lastParseState][c < 256 ? c : 0];
 
-      TransitionFunction transitionFunction = transFn[lastParseState][parseState];
-      identifierBuffer = transitionFunction.transition(minifiedContentBuffer, identifierBuffer, c);
+      transition(lastParseState, parseState, minifiedContentBuffer, identifierBuffer, c);
+
+      if (sourceMapRewriter != null) {
+        // Chars that are buffered or skipped end up where the output currently ends. Mappings past
+        // the end of a line are moved to its end.
+        int minifiedColumn = minifiedContentBuffer.length() - minifiedLineStart;
+        sourceMapRewriter.mapPosition(
+            lineNumber,
+            c == '\n' ? Integer.MAX_VALUE : i - lineStart,
+            writesChar(lastParseState, parseState, c) ? minifiedColumn - 1 : minifiedColumn);
+      }
 
       lastParseState = parseState;
+
+      if (c == '\n') {
+        lineNumber++;
+        lineStart = i + 1;
+        minifiedLineStart = minifiedContentBuffer.length();
+        skippingLine = unusedLines != null && unusedLines.isUnused(lineNumber);
+      }
     }
 
     // if we used RTA to remove lines, ensure that we removed everything expected by RTA.
-    checkState(unusedLines == null || lineNumber >= unusedLines.length - 1);
+    checkState(unusedLines == null || lineNumber >= unusedLines.getLineCount() - 1);
 
     // Transition to the end state
-    TransitionFunction transitionFunction = transFn[lastParseState][S_END_STATE];
-    transitionFunction.transition(minifiedContentBuffer, identifierBuffer, (char) 0);
+    transition(lastParseState, S_END_STATE, minifiedContentBuffer, identifierBuffer, (char) 0);
+
+    if (sourceMapRewriter != null) {
+      // Mappings at the end of the content.
+      sourceMapRewriter.mapPosition(
+          lineNumber,
+          Integer.MAX_VALUE,
+          skippingLine
+              ? SourceMapRewriter.REMOVED
+              : minifiedContentBuffer.length() - minifiedLineStart);
+    }
 
-    minifiedContent = minifiedContentBuffer.toString();
-    // Update the minified content cache for next time.
-    minifiedContentByContent.put(content, minifiedContent);
+    return minifiedContentBuffer.toString();
+  }
 
-    return minifiedContent;
+  /**
+   * Process the UTF-8 encoded content of a file read from {@code input} and writes the result to
+   * {@code output}, see {@link #minify(String, String)}.
+   *
+   * <p>The content is processed in chunks as it is read, without being decoded, and identifiers
+   * that were already seen are looked up without creating strings, which makes this suitable for
+   * large bundles. Unlike {@link #minify(String, String)}, the result is not cached. The streams
+   * are not closed.
+   */
+  public void minify(String filePath, InputStream input, OutputStream output) throws IOException {
+    Utf8Minifier minifier = createUtf8Minifier(filePath, output);
+    if (minifier == null) {
+      // The file needs to be removed entirely.
+      return;
+    }
+
+    byte[] chunk = new byte[BUFFER_SIZE];
+    for (int length = input.read(chunk); length != -1; length = input.read(chunk)) {
+      minifier.process(chunk, 0, length);
+    }
+    minifier.finish();
+  }
+
+  /**
+   * Process the UTF-8 encoded content of a file from the position to the limit of {@code content}
+   * and writes the result to {@code output}, see {@link #minify(String, InputStream,
+   * OutputStream)}. The position of {@code content} is not modified.
+   */
+  public void minify(String filePath, ByteBuffer content, OutputStream output) throws IOException {
+    Utf8Minifier minifier = createUtf8Minifier(filePath, output);
+    if (minifier == null) {
+      // The file needs to be removed entirely.
+      return;
+    }
+
+    if (content.hasArray()) {
+      minifier.process(
+          content.array(), content.arrayOffset() + content.position(), content.remaining());
+    } else {
+      // Direct and memory mapped buffers are copied in chunks.
+      ByteBuffer source = content.duplicate();
+      byte[] chunk = new byte[Math.min(BUFFER_SIZE, source.remaining())];
+      while (source.hasRemaining()) {
+        int length = Math.min(chunk.length, source.remaining());
+        source.get(chunk, 0, length);
+        minifier.process(chunk, 0, length);
+      }
+    }
+    minifier.finish();
+  }
+
+  /** Returns a minifier writing to {@code output}, or null if the file needs to be removed. */
+  private Utf8Minifier createUtf8Minifier(String filePath, OutputStream output) {
+    String fileKey = extractFileKey(filePath);
+    if (codeRemovalIndex.isFileUnused(fileKey)) {
+      return null;
+    }
+    return new Utf8Minifier(codeRemovalIndex.getUnusedLines(fileKey), output);
+  }
+
+  /** Returns the hit, miss and eviction statistics of the minified content cache. */
+  public CacheStats getCacheStats() {
+    return minifiedContentByContentDigest.stats();
   }
 
   /**
-   * The minifier might be used from multiple threads so make sure that this function (which along
-   * with the makeUnique function, which is also only called from here, is the only place that
-   * mutates class state) is synchronized.
+   * The minifier might be used from multiple threads. The identifier tables are concurrent so that
+   * threads only contend when they see the same new identifier or the same pretty prefix at the
+   * same time, and identifiers that were already minified are looked up without locking.
    */
-  private synchronized String getMinifiedIdentifier(String identifier) {
-    if (minifiedIdentifiersByIdentifier.containsKey(identifier)) {
-      return minifiedIdentifiersByIdentifier.get(identifier);
+  private String getMinifiedIdentifier(String identifier) {
+    String minifiedIdentifier = minifiedIdentifiersByIdentifier.get(identifier);
+    if (minifiedIdentifier != null) {
+      return minifiedIdentifier;
     }
+    // The minified identifier is computed at most once, which keeps it stable.
+    return minifiedIdentifiersByIdentifier.computeIfAbsent(
+        identifier, this::computeMinifiedIdentifier);
+  }
 
+  private String computeMinifiedIdentifier(String identifier) {
     String prettyIdentifier = computePrettyIdentifier(identifier);
     if (prettyIdentifier.isEmpty()) {
       // The identifier must contain something strange like triple _'s. Leave the whole thing alone
       // just to be safe.
-      minifiedIdentifiersByIdentifier.put(identifier, identifier);
       return identifier;
     }
 
-    String uniquePrettyIdentifier = makeUnique(prettyIdentifier);
-    minifiedIdentifiersByIdentifier.put(identifier, uniquePrettyIdentifier);
-
-    return uniquePrettyIdentifier;
+    return makeUnique(prettyIdentifier);
   }
 
   private String makeUnique(String identifier) {
-    countsByIdentifier.add(identifier);
-    return identifier + MINIFICATION_SEPARATOR + countsByIdentifier.count(identifier);
+    int count =
+        countsByIdentifier.computeIfAbsent(identifier, i -> new AtomicInteger()).incrementAndGet();
+    return identifier + MINIFICATION_SEPARATOR + count;
   }
 
-  private StringBuilder writeIdentifier(
+  private void transition(
+      int lastParseState,
+      int parseState,
       StringBuilder minifiedContentBuffer,
       StringBuilder identifierBuffer,
-      @SuppressWarnings("unused") char c) {
+      char c) {
+    switch (actions[lastParseState][parseState]) {
+      case A_SKIP_CHAR:
+        break;
+      case A_SKIP_CHAR_UNLESS_NEW_LINE:
+        if (c == '\n') {
+          minifiedContentBuffer.append(c);
+        }
+        break;
+      case A_WRITE_CHAR:
+        minifiedContentBuffer.append(c);
+        break;
+      case A_START_IDENTIFIER:
+        identifierBuffer.setLength(0);
+        identifierBuffer.append(c);
+        break;
+      case A_BUFFER_IDENTIFIER_CHAR:
+        identifierBuffer.append(c);
+        break;
+      case A_WRITE_IDENTIFIER:
+        writeIdentifier(minifiedContentBuffer, identifierBuffer);
+        break;
+      case A_WRITE_IDENTIFIER_AND_CHAR:
+        writeIdentifier(minifiedContentBuffer, identifierBuffer);
+        minifiedContentBuffer.append(c);
+        break;
+      case A_WRITE_SLASH:
+        minifiedContentBuffer.append('/');
+        break;
+      case A_WRITE_SLASH_AND_CHAR:
+        minifiedContentBuffer.append('/').append(c);
+        break;
+      case A_WRITE_SLASH_AND_START_IDENTIFIER:
+        minifiedContentBuffer.append('/');
+        identifierBuffer.setLength(0);
+        identifierBuffer.append(c);
+        break;
+      default:
+        throw new AssertionError("Invalid transition from " + lastParseState + " to " + parseState);
+    }
+  }
+
+  /** Returns whether the transition writes {@code c} as the last char of the minified content. */
+  private static boolean writesChar(int lastParseState, int parseState, char c) {
+    switch (actions[lastParseState][parseState]) {
+      case A_WRITE_CHAR:
+      case A_WRITE_IDENTIFIER_AND_CHAR:
+      case A_WRITE_SLASH_AND_CHAR:
+        return true;
+      case A_SKIP_CHAR_UNLESS_NEW_LINE:
+        return c == '\n';
+      default:
+        return false;
+    }
+  }
+
+  private void writeIdentifier(
+      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer) {
     String identifier = identifierBuffer.toString();
     if (isMinifiableIdentifier(identifier)) {
       minifiedContentBuffer.append(getMinifiedIdentifier(identifier));
     } else {
       minifiedContentBuffer.append(identifier);
     }
-    return identifierBuffer;
   }
 
-  private StringBuilder writeIdentifierAndChar(
-      StringBuilder minifiedContentBuffer, StringBuilder identifierBuffer, char c) {
-    writeIdentifier(minifiedContentBuffer, identifierBuffer, c);
-    minifiedContentBuffer.append(c);
-    return identifierBuffer;
+  /** Returns the UTF-8 encoding of the minified version of {@code identifier}. */
+  private byte[] getMinifiedIdentifierBytes(AsciiIdentifier identifier) {
+    byte[] minifiedIdentifier = minifiedIdentifierBytesByIdentifier.get(identifier);
+    if (minifiedIdentifier == null) {
+      minifiedIdentifier =
+          getMinifiedIdentifier(identifier.toString()).getBytes(StandardCharsets.UTF_8);
+      // The identifier is reused by the caller, store a copy.
+      minifiedIdentifierBytesByIdentifier.putIfAbsent(identifier.copy(), minifiedIdentifier);
+    }
+    return minifiedIdentifier;
+  }
+
+  /**
+   * Minifies UTF-8 encoded content as it is read, see {@link #minify(String, InputStream,
+   * OutputStream)}.
+   *
+   * <p>All the characters that matter to the state machine are ASCII. The bytes of multi-byte
+   * characters are all non-ASCII and are processed like any other non-ASCII character, so the
+   * content does not need to be decoded.
+   */
+  private final class Utf8Minifier {
+    private final UnusedLineSet unusedLines;
+    private final OutputStream output;
+    private final byte[] outputBuffer = new byte[BUFFER_SIZE];
+    private int outputLength = 0;
+    private final AsciiIdentifier identifier = new AsciiIdentifier();
+    private int lastParseState = S_NON_IDENTIFIER;
+    private int lineNumber = 0;
+    private boolean skippingLine;
+
+    private Utf8Minifier(UnusedLineSet unusedLines, OutputStream output) {
+      this.unusedLines = unusedLines;
+      this.output = output;
+      this.skippingLine = unusedLines != null && unusedLines.isUnused(lineNumber);
+    }
+
+    private void process(byte[] bytes, int offset, int length) throws IOException {
+      for (int i = offset; i < offset + length; i++) {
+        byte b = bytes[i];
+
+        // Skip unused lines if necessary. Any unused line should not effect the state machine.
+        if (unusedLines != null) {
+          if (b == '\n') {
+            lineNumber++;
+            skippingLine = unusedLines.isUnused(lineNumber);
+          } else if (skippingLine) {
+            continue;
+          }
+        }
+
+        // Non-ASCII bytes are negative.
+        int parseState = nextState[lastParseState][b >= 0 ? b : 0];
+        transition(lastParseState, parseState, b);
+        lastParseState = parseState;
+      }
+    }
+
+    private void finish() throws IOException {
+      // if we used RTA to remove lines, ensure that we removed everything expected by RTA.
+      checkState(unusedLines == null || lineNumber >= unusedLines.getLineCount() - 1);
+
+      // Transition to the end state
+      transition(lastParseState, S_END_STATE, (byte) 0);
+      flush();
+    }
+
+    private void transition(int lastParseState, int parseState, byte b) throws IOException {
+      switch (actions[lastParseState][parseState]) {
+        case A_SKIP_CHAR:
+          break;
+        case A_SKIP_CHAR_UNLESS_NEW_LINE:
+          if (b == '\n') {
+            write(b);
+          }
+          break;
+        case A_WRITE_CHAR:
+          write(b);
+          break;
+        case A_START_IDENTIFIER:
+          identifier.clear();
+          identifier.append(b);
+          break;
+        case A_BUFFER_IDENTIFIER_CHAR:
+          identifier.append(b);
+          break;
+        case A_WRITE_IDENTIFIER:
+          writeIdentifier();
+          break;
+        case A_WRITE_IDENTIFIER_AND_CHAR:
+          writeIdentifier();
+          write(b);
+          break;
+        case A_WRITE_SLASH:
+          write((byte) '/');
+          break;
+        case A_WRITE_SLASH_AND_CHAR:
+          write((byte) '/');
+          write(b);
+          break;
+        case A_WRITE_SLASH_AND_START_IDENTIFIER:
+          write((byte) '/');
+          identifier.clear();
+          identifier.append(b);
+          break;
+        default:
+          throw new AssertionError(
+              "Invalid transition from " + lastParseState + " to " + parseState);
+      }
+    }
+
+    private void writeIdentifier() throws IOException {
+      if (isMinifiableIdentifier(identifier)) {
+        byte[] minifiedIdentifier = getMinifiedIdentifierBytes(identifier);
+        write(minifiedIdentifier, minifiedIdentifier.length);
+      } else {
+        write(identifier.bytes, identifier.length);
+      }
+    }
+
+    private void write(byte b) throws IOException {
+      if (outputLength == outputBuffer.length) {
+        flush();
+      }
+      outputBuffer[outputLength++] = b;
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+      if (outputLength + length > outputBuffer.length) {
+        flush();
+      }
+      if (length > outputBuffer.length) {
+        output.write(bytes, 0, length);
+        return;
+      }
+      System.arraycopy(bytes, 0, outputBuffer, outputLength, length);
+      outputLength += length;
+    }
+
+    private void flush() throws IOException {
+      output.write(outputBuffer, 0, outputLength);
+      outputLength = 0;
+    }
+  }
+
+  /**
+   * An identifier made of ASCII characters stored as bytes. It is mutable so that a single instance
+   * can be reused to look up all the identifiers of a file; the keys stored in maps are copies.
+   */
+  private static final class AsciiIdentifier implements CharSequence {
+    private byte[] bytes;
+    private int length;
+
+    private AsciiIdentifier() {
+      this(new byte[64], 0);
+    }
+
+    private AsciiIdentifier(byte[] bytes, int length) {
+      this.bytes = bytes;
+      this.length = length;
+    }
+
+    private void clear() {
+      length = 0;
+    }
+
+    private void append(byte b) {
+      if (length == bytes.length) {
+        bytes = Arrays.copyOf(bytes, length * 2);
+      }
+      bytes[length++] = b;
+    }
+
+    private AsciiIdentifier copy() {
+      return new AsciiIdentifier(Arrays.copyOf(bytes, length), length);
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) bytes[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().subSequence(start, end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof AsciiIdentifier)) {
+        return false;
+      }
+      AsciiIdentifier other = (AsciiIdentifier) o;
+      if (length != other.length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (bytes[i] != other.bytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      int hashCode = 1;
+      for (int i = 0; i < length; i++) {
+        hashCode = 31 * hashCode + bytes[i];
+      }
+      return hashCode;
+    }
+
+    @Override
+    public String toString() {
+      return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
   }
 
   private static CodeRemovalInfo readCodeRemovalInfoFile(String codeRemovalInfoFilePath) {
@@ -549,37 +962,25 @@ public class J2clMinifier {
     }
   }
 
-  @VisibleForTesting
-  void setupRtaCodeRemoval(CodeRemovalInfo codeRemovalInfo) {
-    if (codeRemovalInfo != null) {
-      unusedFiles = ImmutableSet.copyOf(codeRemovalInfo.getUnusedFilesList());
-      unusedLinesPerFile = createUnusedLinesPerFileMap(codeRemovalInfo);
-    } else {
-      unusedFiles = ImmutableSet.of();
-      unusedLinesPerFile = ImmutableMap.of();
+  private static CodeRemovalIndex loadCodeRemovalIndex(String codeRemovalIndexPath) {
+    try {
+      return CodeRemovalIndex.load(Paths.get(codeRemovalIndexPath));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
   }
 
-  private static Map<String, boolean[]> createUnusedLinesPerFileMap(
-      CodeRemovalInfo codeRemovalInfo) {
-    Map<String, boolean[]> unusedLinesPerFile = new HashMap<>();
-
-    for (UnusedLines unusedLines : codeRemovalInfo.getUnusedLinesList()) {
-      checkState(!unusedLines.getUnusedRangesList().isEmpty());
-
-      // UnusedRangesList is sorted and the last item is the highest line index to remove.
-      // Note that getLineEnd returns an exclusive index and can be used as length of the array.
-      int lastUnusedLine = getLast(unusedLines.getUnusedRangesList()).getLineEnd();
-
-      boolean[] unusedLinesArray = new boolean[lastUnusedLine];
-
-      for (LineRange lineRange : unusedLines.getUnusedRangesList()) {
-        Arrays.fill(unusedLinesArray, lineRange.getLineStart(), lineRange.getLineEnd(), true);
-      }
-      unusedLinesPerFile.put(unusedLines.getFileKey(), unusedLinesArray);
-    }
+  @VisibleForTesting
+  void setupRtaCodeRemoval(CodeRemovalInfo codeRemovalInfo) {
+    setupRtaCodeRemoval(
+        codeRemovalInfo != null
+            ? CodeRemovalIndex.fromCodeRemovalInfo(codeRemovalInfo)
+            : CodeRemovalIndex.EMPTY);
+  }
 
-    return unusedLinesPerFile;
+  @VisibleForTesting
+  void setupRtaCodeRemoval(CodeRemovalIndex codeRemovalIndex) {
+    this.codeRemovalIndex = codeRemovalIndex;
   }
 
   /**
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.j2cl.tools.minifier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Updates a source map in the V3 format as the file it maps is minified.
+ *
+ * <p>The minifier never adds or removes lines, so only the generated columns of the mappings
+ * change, and the mappings that start in removed content are dropped. The mappings are decoded
+ * upfront, the minifier reports where each character of the original content ends up, and the
+ * mappings are encoded again. The rest of the source map is copied verbatim.
+ */
+final class SourceMapRewriter {
+
+  /** The minified column of content that is removed. */
+  static final int REMOVED = -1;
+
+  private static final Pattern MAPPINGS_PATTERN =
+      Pattern.compile("\"mappings\"\\s*:\\s*\"([^\"]*)\"");
+
+  private static final String BASE64_DIGITS =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+  private static final int VLQ_BASE_SHIFT = 5;
+  private static final int VLQ_BASE_MASK = (1 << VLQ_BASE_SHIFT) - 1;
+  private static final int VLQ_CONTINUATION_BIT = 1 << VLQ_BASE_SHIFT;
+
+  // Segments are stored back to back, with absolute values rather than the relative values of the
+  // encoding since segments might be dropped.
+  private static final int LINE = 0;
+  private static final int COLUMN = 1;
+  private static final int FIELD_COUNT = 2;
+  private static final int SOURCE = 3;
+  private static final int SOURCE_LINE = 4;
+  private static final int SOURCE_COLUMN = 5;
+  private static final int NAME = 6;
+  private static final int SEGMENT_SIZE = 7;
+
+  private final String sourceMap;
+  private final int mappingsStart;
+  private final int mappingsEnd;
+
+  private int[] segments = new int[64 * SEGMENT_SIZE];
+  private int segmentCount = 0;
+  /** The segments sorted by generated position, which is the order in which they are visited. */
+  private int[] order;
+  private int[] minifiedColumns;
+  /** The position in {@code order} of the next segment to be visited. */
+  private int nextSegment = 0;
+
+  SourceMapRewriter(String sourceMap) {
+    Matcher matcher = MAPPINGS_PATTERN.matcher(sourceMap);
+    checkArgument(matcher.find(), "Source map without mappings.");
+    this.sourceMap = sourceMap;
+    this.mappingsStart = matcher.start(1);
+    this.mappingsEnd = matcher.end(1);
+
+    decodeMappings();
+    sortSegments();
+    minifiedColumns = new int[segmentCount];
+    Arrays.fill(minifiedColumns, REMOVED);
+  }
+
+  /**
+   * Records that the character at {@code line} and {@code column} of the original content is at
+   * {@code minifiedColumn} in the minified content, or is removed if it is {@link #REMOVED}.
+   * Characters need to be reported in order.
+   */
+  void mapPosition(int line, int column, int minifiedColumn) {
+    while (nextSegment < segmentCount) {
+      int segment = order[nextSegment];
+      int segmentLine = segments[segment * SEGMENT_SIZE + LINE];
+      int segmentColumn = segments[segment * SEGMENT_SIZE + COLUMN];
+      if (segmentLine > line || (segmentLine == line && segmentColumn > column)) {
+        return;
+      }
+      minifiedColumns[segment] = minifiedColumn;
+      nextSegment++;
+    }
+  }
+
+  /** Returns the updated source map. Mappings that were not reported are dropped. */
+  String build() {
+    StringBuilder mappings = new StringBuilder();
+    int line = 0;
+    int previousColumn = 0;
+    int previousSource = 0;
+    int previousSourceLine = 0;
+    int previousSourceColumn = 0;
+    int previousName = 0;
+    boolean firstSegmentInLine = true;
+    for (int segment : order) {
+      if (minifiedColumns[segment] == REMOVED) {
+        continue;
+      }
+      int offset = segment * SEGMENT_SIZE;
+      for (; line < segments[offset + LINE]; line++) {
+        mappings.append(';');
+        previousColumn = 0;
+        firstSegmentInLine = true;
+      }
+      if (!firstSegmentInLine) {
+        mappings.append(',');
+      }
+      firstSegmentInLine = false;
+
+      encode(mappings, minifiedColumns[segment] - previousColumn);
+      previousColumn = minifiedColumns[segment];
+      if (segments[offset + FIELD_COUNT] >= 4) {
+        encode(mappings, segments[offset + SOURCE] - previousSource);
+        encode(mappings, segments[offset + SOURCE_LINE] - previousSourceLine);
+        encode(mappings, segments[offset + SOURCE_COLUMN] - previousSourceColumn);
+        previousSource = segments[offset + SOURCE];
+        previousSourceLine = segments[offset + SOURCE_LINE];
+        previousSourceColumn = segments[offset + SOURCE_COLUMN];
+      }
+      if (segments[offset + FIELD_COUNT] == 5) {
+        encode(mappings, segments[offset + NAME] - previousName);
+        previousName = segments[offset + NAME];
+      }
+    }
+
+    return sourceMap.substring(0, mappingsStart) + mappings + sourceMap.substring(mappingsEnd);
+  }
+
+  private void decodeMappings() {
+    int[] values = new int[SEGMENT_SIZE];
+    int line = 0;
+    int column = 0;
+    int source = 0;
+    int sourceLine = 0;
+    int sourceColumn = 0;
+    int name = 0;
+
+    int position = mappingsStart;
+    while (position < mappingsEnd) {
+      char c = sourceMap.charAt(position);
+      if (c == ';') {
+        line++;
+        column = 0;
+        position++;
+        continue;
+      }
+      if (c == ',') {
+        position++;
+        continue;
+      }
+
+      int fieldCount = 0;
+      while (position < mappingsEnd
+          && sourceMap.charAt(position) != ','
+          && sourceMap.charAt(position) != ';') {
+        checkArgument(fieldCount < 5, "Invalid source map segment.");
+        int value = 0;
+        int shift = 0;
+        int digit;
+        do {
+          checkArgument(position < mappingsEnd, "Invalid source map segment.");
+          digit = BASE64_DIGITS.indexOf(sourceMap.charAt(position++));
+          checkArgument(digit >= 0, "Invalid source map segment.");
+          value += (digit & VLQ_BASE_MASK) << shift;
+          shift += VLQ_BASE_SHIFT;
+        } while ((digit & VLQ_CONTINUATION_BIT) != 0);
+        values[fieldCount++] = (value & 1) == 1 ? -(value >>> 1) : value >>> 1;
+      }
+      checkArgument(
+          fieldCount == 1 || fieldCount == 4 || fieldCount == 5, "Invalid source map segment.");
+
+      column += values[0];
+      if (fieldCount >= 4) {
+        source += values[1];
+        sourceLine += values[2];
+        sourceColumn += values[3];
+      }
+      if (fieldCount == 5) {
+        name += values[4];
+      }
+      addSegment(line, column, fieldCount, source, sourceLine, sourceColumn, name);
+    }
+  }
+
+  private void addSegment(
+      int line,
+      int column,
+      int fieldCount,
+      int source,
+      int sourceLine,
+      int sourceColumn,
+      int name) {
+    int offset = segmentCount * SEGMENT_SIZE;
+    if (offset == segments.length) {
+      segments = Arrays.copyOf(segments, segments.length * 2);
+    }
+    segments[offset + LINE] = line;
+    segments[offset + COLUMN] = column;
+    segments[offset + FIELD_COUNT] = fieldCount;
+    segments[offset + SOURCE] = source;
+    segments[offset + SOURCE_LINE] = sourceLine;
+    segments[offset + SOURCE_COLUMN] = sourceColumn;
+    segments[offset + NAME] = name;
+    segmentCount++;
+  }
+
+  /** Orders the segments by generated position, in case the segments in a line are not sorted. */
+  private void sortSegments() {
+    long[] keys = new long[segmentCount];
+    boolean sorted = true;
+    for (int segment = 0; segment < segmentCount; segment++) {
+      // Segments are already ordered by line.
+      keys[segment] = ((long) segments[segment * SEGMENT_SIZE + COLUMN] << 32) | segment;
+      sorted &=
+          segment == 0
+              || segments[segment * SEGMENT_SIZE + LINE]
+                  > segments[(segment - 1) * SEGMENT_SIZE + LINE]
+              || keys[segment] > keys[segment - 1];
+    }
+
+    order = new int[segmentCount];
+    int lineStart = 0;
+    for (int segment = 0; segment <= segmentCount; segment++) {
+      if (segment == segmentCount
+          || segments[segment * SEGMENT_SIZE + LINE]
+              != segments[lineStart * SEGMENT_SIZE + LINE]) {
+        if (!sorted) {
+          Arrays.sort(keys, lineStart, segment);
+        }
+        for (int i = lineStart; i < segment; i++) {
+          order[i] = (int) keys[i];
+        }
+        lineStart = segment;
+      }
+    }
+  }
+
+  private static void encode(StringBuilder mappings, int value) {
+    int vlq = value < 0 ? ((-value) << 1) + 1 : value << 1;
+    do {
+      int digit = vlq & VLQ_BASE_MASK;
+      vlq >>>= VLQ_BASE_SHIFT;
+      if (vlq > 0) {
+        digit |= VLQ_CONTINUATION_BIT;
+      }
+      mappings.append(BASE64_DIGITS.charAt(digit));
+    } while (vlq > 0);
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.j2cl.tools.rta;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Iterables.getLast;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.primitives.UnsignedBytes;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A binary encoding of {@link CodeRemovalInfo} that can be memory mapped and queried in place,
+ * without being parsed.
+ *
+ * <p>All integers are big endian. The index is laid out as follows:
+ *
+ * <pre>
+ *   int magic, int version, int fileCount
+ *   fileCount entries sorted by file key: int keyOffset, int keyLength, int linesOffset,
+ *       int lineCount
+ *   the file keys encoded in UTF-8
+ *   the line bitmaps, where bit (i % 8) of byte (i / 8) is set if line i is unused
+ * </pre>
+ *
+ * <p>The line count of a file is the number of lines covered by its bitmap, lines past it are used.
+ * Files that are entirely unused have a line count of -1 and no bitmap.
+ */
+public final class CodeRemovalIndex {
+
+  /** An index that does not remove anything. */
+  public static final CodeRemovalIndex EMPTY =
+      fromCodeRemovalInfo(CodeRemovalInfo.getDefaultInstance());
+
+  private static final int MAGIC = 0x4a32434c; // "J2CL"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 3 * Integer.BYTES;
+  private static final int ENTRY_SIZE = 4 * Integer.BYTES;
+  private static final int UNUSED_FILE = -1;
+  // Fields of the entries.
+  private static final int KEY_OFFSET = 0;
+  private static final int KEY_LENGTH = 1;
+  private static final int LINES_OFFSET = 2;
+  private static final int LINE_COUNT = 3;
+
+  /** Memory maps the index stored in {@code path}. */
+  public static CodeRemovalIndex load(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed.
+      return new CodeRemovalIndex(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  public static CodeRemovalIndex fromCodeRemovalInfo(CodeRemovalInfo codeRemovalInfo) {
+    return new CodeRemovalIndex(ByteBuffer.wrap(toByteArray(codeRemovalInfo)));
+  }
+
+  /** Returns the index of {@code codeRemovalInfo}. */
+  public static byte[] toByteArray(CodeRemovalInfo codeRemovalInfo) {
+    // Keys are sorted by their encoding so that lookups can compare bytes without decoding them.
+    // Files that are entirely unused map to null.
+    Map<byte[], UnusedLines> unusedLinesByFileKey =
+        new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+    for (UnusedLines unusedLines : codeRemovalInfo.getUnusedLinesList()) {
+      checkState(!unusedLines.getUnusedRangesList().isEmpty());
+      unusedLinesByFileKey.put(unusedLines.getFileKey().getBytes(UTF_8), unusedLines);
+    }
+    for (String unusedFile : codeRemovalInfo.getUnusedFilesList()) {
+      // Unused files are removed entirely, regardless of their unused lines.
+      unusedLinesByFileKey.put(unusedFile.getBytes(UTF_8), null);
+    }
+
+    int keyOffset = HEADER_SIZE + unusedLinesByFileKey.size() * ENTRY_SIZE;
+    int linesOffset = keyOffset;
+    for (byte[] key : unusedLinesByFileKey.keySet()) {
+      linesOffset += key.length;
+    }
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(outputStream)) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(unusedLinesByFileKey.size());
+      for (Map.Entry<byte[], UnusedLines> entry : unusedLinesByFileKey.entrySet()) {
+        int lineCount = entry.getValue() == null ? UNUSED_FILE : getLineCount(entry.getValue());
+        output.writeInt(keyOffset);
+        output.writeInt(entry.getKey().length);
+        output.writeInt(linesOffset);
+        output.writeInt(lineCount);
+        keyOffset += entry.getKey().length;
+        linesOffset += lineCount == UNUSED_FILE ? 0 : getBitmapSize(lineCount);
+      }
+      for (byte[] key : unusedLinesByFileKey.keySet()) {
+        output.write(key);
+      }
+      for (UnusedLines unusedLines : unusedLinesByFileKey.values()) {
+        if (unusedLines != null) {
+          output.write(createBitmap(unusedLines));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return outputStream.toByteArray();
+  }
+
+  private static int getLineCount(UnusedLines unusedLines) {
+    // UnusedRangesList is sorted and the last item is the highest line index to remove.
+    // Note that getLineEnd returns an exclusive index and can be used as the line count.
+    return getLast(unusedLines.getUnusedRangesList()).getLineEnd();
+  }
+
+  private static int getBitmapSize(int lineCount) {
+    return (lineCount + 7) / 8;
+  }
+
+  private static byte[] createBitmap(UnusedLines unusedLines) {
+    byte[] bitmap = new byte[getBitmapSize(getLineCount(unusedLines))];
+    for (LineRange lineRange : unusedLines.getUnusedRangesList()) {
+      for (int line = lineRange.getLineStart(); line < lineRange.getLineEnd(); line++) {
+        bitmap[line >>> 3] |= (byte) (1 << (line & 7));
+      }
+    }
+    return bitmap;
+  }
+
+  // Only absolute reads are used, which do not modify the buffer and are safe across threads.
+  private final ByteBuffer buffer;
+  private final int fileCount;
+
+  private CodeRemovalIndex(ByteBuffer buffer) {
+    checkState(buffer.getInt(0) == MAGIC, "Not a code removal index.");
+    checkState(
+        buffer.getInt(Integer.BYTES) == VERSION,
+        "Unsupported code removal index version %s.",
+        buffer.getInt(Integer.BYTES));
+    this.buffer = buffer;
+    this.fileCount = buffer.getInt(2 * Integer.BYTES);
+  }
+
+  /** Returns whether the file with key {@code fileKey} can be removed entirely. */
+  public boolean isFileUnused(String fileKey) {
+    int entry = findEntry(fileKey);
+    return entry >= 0 && getEntryField(entry, LINE_COUNT) == UNUSED_FILE;
+  }
+
+  /**
+   * Returns the lines that can be removed from the file with key {@code fileKey}, or null if the
+   * file has no unused lines.
+   */
+  public UnusedLineSet getUnusedLines(String fileKey) {
+    int entry = findEntry(fileKey);
+    if (entry < 0 || getEntryField(entry, LINE_COUNT) == UNUSED_FILE) {
+      return null;
+    }
+    return new UnusedLineSet(
+        buffer, getEntryField(entry, LINES_OFFSET), getEntryField(entry, LINE_COUNT));
+  }
+
+  /** Returns the position of the entry of {@code fileKey} in the entry table, or -1. */
+  private int findEntry(String fileKey) {
+    if (fileKey == null) {
+      return -1;
+    }
+    byte[] key = fileKey.getBytes(UTF_8);
+    int low = 0;
+    int high = fileCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = compareKey(middle, key);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  private int compareKey(int entry, byte[] key) {
+    int keyOffset = getEntryField(entry, KEY_OFFSET);
+    int keyLength = getEntryField(entry, KEY_LENGTH);
+    for (int i = 0; i < Math.min(keyLength, key.length); i++) {
+      int comparison = UnsignedBytes.compare(buffer.get(keyOffset + i), key[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return keyLength - key.length;
+  }
+
+  private int getEntryField(int entry, int field) {
+    return buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE + field * Integer.BYTES);
+  }
+
+  /** The unused lines of a file, backed by the index. */
+  public static final class UnusedLineSet {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int lineCount;
+
+    private UnusedLineSet(ByteBuffer buffer, int offset, int lineCount) {
+      this.buffer = buffer;
+      this.offset = offset;
+      this.lineCount = lineCount;
+    }
+
+    /** Returns the number of lines covered, all the lines after them are used. */
+    public int getLineCount() {
+      return lineCount;
+    }
+
+    public boolean isUnused(int line) {
+      return line < lineCount && (buffer.get(offset + (line >>> 3)) & (1 << (line & 7))) != 0;
+    }
+  }
+}
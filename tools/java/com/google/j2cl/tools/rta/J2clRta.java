@@ -15,11 +15,19 @@
  */
 package com.google.j2cl.tools.rta;
 
-import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.CharSink;
 import com.google.common.io.Files;
-import com.google.j2cl.libraryinfo.LibraryInfo;
+import com.google.j2cl.libraryinfo.CompactLibraryInfo;
+import com.google.j2cl.libraryinfo.CompactMemberInfo;
+import com.google.j2cl.libraryinfo.CompactMethodInvocation;
+import com.google.j2cl.libraryinfo.CompactTypeInfo;
+import com.google.j2cl.libraryinfo.FilePosition;
+import com.google.j2cl.libraryinfo.LibraryInfoCompactor;
 import com.google.j2cl.libraryinfo.TypeInfo;
 import java.io.File;
 import java.io.FileInputStream;
@@ -56,6 +64,13 @@ public class J2clRta {
       required = true)
   String removalCodeInfoOutputFilePath = null;
 
+  @Option(
+      name = "--removalCodeIndexOutput",
+      usage =
+          "Path of output file containing the files and lines that can be removed, as a binary"
+              + " index that can be memory mapped.")
+  String removalCodeIndexOutputFilePath = null;
+
   @Option(
       name = "--unusedMembersOutput",
       usage = "Path of output file containing the list of unused members",
@@ -66,48 +81,140 @@ public class J2clRta {
   List<String> inputs = null;
 
   private void run() {
-    LibraryInfo libraryInfo = mergeCallGraphFiles();
+    List<CompactLibraryInfo> libraryInfos = readCallGraphFiles();
 
-    RtaResult rtaResult = RapidTypeAnalyser.analyse(libraryInfo);
+    RtaResult rtaResult = RapidTypeAnalyser.analyse(libraryInfos);
 
     writeToFile(unusedTypesOutputFilePath, rtaResult.getUnusedTypes());
     writeToFile(unusedMembersOutputFilePath, rtaResult.getUnusedMembers());
     writeToFile(removalCodeInfoOutputFilePath, rtaResult.getCodeRemovalInfo());
+    if (removalCodeIndexOutputFilePath != null) {
+      writeCodeRemovalIndex(removalCodeIndexOutputFilePath, rtaResult.getCodeRemovalInfo());
+    }
   }
 
-  private LibraryInfo mergeCallGraphFiles() {
-    try {
-      Map<String, TypeInfo> typeInfosByName = new HashMap<>();
-
-      // TODO(b/112662982): improve performance by reading file contents in parallel.
-      for (String callGraphPath : inputs) {
-        LibraryInfo libraryInfo = LibraryInfo.parseFrom(new FileInputStream(callGraphPath));
-
-        // Because J2CL proto emits duplicate sources (see b/36486919), we can see several TypeInfos
-        // with the same name. When we reach that case, check that the TypeInfo are the same and
-        // throw an exception if they are different.
-        // TODO(b/36486919): remove that logic when the bug is fixed.
-        for (TypeInfo typeInfo : libraryInfo.getTypeList()) {
-          String typeId = typeInfo.getTypeId();
-          if (typeInfosByName.containsKey(typeId)) {
-            TypeInfo existingTypeInfo = typeInfosByName.get(typeId);
-            checkState(
-                typeInfo.equals(existingTypeInfo),
-                "Got two different TypeInfo for the same type id.\n"
-                    + "TypeId: [%s]\n"
-                    + "Existing TypeInfo: [%s]\n"
-                    + "New TypeInfo: [%s]",
-                typeId,
-                existingTypeInfo,
-                typeInfo);
-          }
-          typeInfosByName.put(typeId, typeInfo);
+  /**
+   * Reads the call graph files in parallel and checks that types defined in several of them are
+   * defined identically.
+   */
+  private List<CompactLibraryInfo> readCallGraphFiles() {
+    List<CallGraphFile> callGraphFiles =
+        inputs.parallelStream().map(CallGraphFile::read).collect(toImmutableList());
+
+    // Because J2CL proto emits duplicate sources (see b/36486919), we can see several TypeInfos
+    // with the same name. When we reach that case, check that the TypeInfo are the same and
+    // throw an exception if they are different. TypeGraphBuilder only uses the first one.
+    // TODO(b/36486919): remove that logic when the bug is fixed.
+    Map<String, TypeDefinition> typeDefinitionsByName = new HashMap<>();
+    for (CallGraphFile callGraphFile : callGraphFiles) {
+      List<String> names = callGraphFile.libraryInfo.getNameList();
+      List<CompactTypeInfo> typeInfos = callGraphFile.libraryInfo.getTypeList();
+      for (int i = 0; i < typeInfos.size(); i++) {
+        TypeDefinition typeDefinition =
+            new TypeDefinition(typeInfos.get(i), names, callGraphFile.typeInfoDigests.get(i));
+        String typeId = names.get(typeDefinition.typeInfo.getTypeId());
+        TypeDefinition existingTypeDefinition =
+            typeDefinitionsByName.putIfAbsent(typeId, typeDefinition);
+        if (existingTypeDefinition != null
+            && !existingTypeDefinition.digest.equals(typeDefinition.digest)) {
+          throw new IllegalStateException(
+              String.format(
+                  "Got two different TypeInfo for the same type id.\n"
+                      + "TypeId: [%s]\n"
+                      + "Existing TypeInfo: [%s]\n"
+                      + "New TypeInfo: [%s]",
+                  typeId, existingTypeDefinition.expand(), typeDefinition.expand()));
         }
       }
+    }
 
-      return LibraryInfo.newBuilder().addAllType(typeInfosByName.values()).build();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    return callGraphFiles.stream().map(f -> f.libraryInfo).collect(toImmutableList());
+  }
+
+  /** A parsed call graph file and the content digests of its TypeInfos. */
+  private static final class CallGraphFile {
+    private final CompactLibraryInfo libraryInfo;
+    private final List<HashCode> typeInfoDigests;
+
+    private static CallGraphFile read(String callGraphPath) {
+      try (FileInputStream inputStream = new FileInputStream(callGraphPath)) {
+        return new CallGraphFile(LibraryInfoCompactor.parseFrom(inputStream));
+      } catch (IOException e) {
+        throw new RuntimeException("Could not read " + callGraphPath, e);
+      }
+    }
+
+    private CallGraphFile(CompactLibraryInfo libraryInfo) {
+      this.libraryInfo = libraryInfo;
+      this.typeInfoDigests =
+          libraryInfo.getTypeList().stream()
+              .map(t -> digest(t, libraryInfo.getNameList()))
+              .collect(toImmutableList());
+    }
+
+    /**
+     * Returns a digest of the content of {@code typeInfo} that does not depend on the name table,
+     * so that TypeInfos from different files can be compared.
+     */
+    private static HashCode digest(CompactTypeInfo typeInfo, List<String> names) {
+      Hasher hasher = Hashing.murmur3_128().newHasher();
+      putName(hasher, names, typeInfo.getTypeId());
+      putName(hasher, names, typeInfo.getExtendsType());
+      putNames(hasher, names, typeInfo.getImplementsTypeList());
+      putName(hasher, names, typeInfo.getHeaderSourceFilePath());
+      putName(hasher, names, typeInfo.getImplSourceFilePath());
+      hasher.putInt(typeInfo.getMemberCount());
+      for (CompactMemberInfo memberInfo : typeInfo.getMemberList()) {
+        putName(hasher, names, memberInfo.getName());
+        hasher
+            .putBoolean(memberInfo.getPublic())
+            .putBoolean(memberInfo.getStatic())
+            .putBoolean(memberInfo.getJsAccessible());
+        hasher.putInt(memberInfo.getInvokedMethodsCount());
+        for (CompactMethodInvocation methodInvocation : memberInfo.getInvokedMethodsList()) {
+          putName(hasher, names, methodInvocation.getMethod());
+          putName(hasher, names, methodInvocation.getEnclosingType());
+          hasher.putInt(methodInvocation.getKindValue());
+        }
+        putNames(hasher, names, memberInfo.getReferencedTypesList());
+        putPosition(hasher, memberInfo.hasStartPosition(), memberInfo.getStartPosition());
+        putPosition(hasher, memberInfo.hasEndPosition(), memberInfo.getEndPosition());
+      }
+      return hasher.hash();
+    }
+
+    private static void putName(Hasher hasher, List<String> names, int index) {
+      String name = names.get(index);
+      hasher.putInt(name.length()).putString(name, StandardCharsets.UTF_8);
+    }
+
+    private static void putNames(Hasher hasher, List<String> names, List<Integer> indices) {
+      hasher.putInt(indices.size());
+      indices.forEach(i -> putName(hasher, names, i));
+    }
+
+    private static void putPosition(Hasher hasher, boolean present, FilePosition position) {
+      hasher.putBoolean(present);
+      if (present) {
+        hasher.putInt(position.getLine()).putInt(position.getColumn());
+      }
+    }
+  }
+
+  /** The first TypeInfo read for a type. */
+  private static final class TypeDefinition {
+    private final CompactTypeInfo typeInfo;
+    private final List<String> names;
+    private final HashCode digest;
+
+    private TypeDefinition(CompactTypeInfo typeInfo, List<String> names, HashCode digest) {
+      this.typeInfo = typeInfo;
+      this.names = names;
+      this.digest = digest;
+    }
+
+    private TypeInfo expand() {
+      return LibraryInfoCompactor.expand(typeInfo, names);
     }
   }
 
@@ -127,4 +234,12 @@ public class J2clRta {
       throw new RuntimeException(e);
     }
   }
+
+  private void writeCodeRemovalIndex(String filePath, CodeRemovalInfo codeRemovalInfo) {
+    try {
+      Files.write(CodeRemovalIndex.toByteArray(codeRemovalInfo), new File(filePath));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
 }
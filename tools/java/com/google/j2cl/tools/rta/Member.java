@@ -17,15 +17,15 @@ package com.google.j2cl.tools.rta;
 
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
+import com.google.j2cl.libraryinfo.CompactMemberInfo;
 import com.google.j2cl.libraryinfo.InvocationKind;
-import com.google.j2cl.libraryinfo.MemberInfo;
 import java.util.ArrayList;
 import java.util.List;
 
 final class Member {
-  static Member buildFrom(MemberInfo memberInfo, Type declaringType) {
+  static Member buildFrom(CompactMemberInfo memberInfo, List<String> names, Type declaringType) {
     Member member = new Member();
-    member.name = memberInfo.getName();
+    member.name = names.get(memberInfo.getName());
     member.isStatic = memberInfo.getStatic();
     member.jsAccessible = memberInfo.getJsAccessible();
     member.declaringType = declaringType;
@@ -43,13 +43,13 @@ final class Member {
   private boolean isStatic;
   private int startLine = -1;
   private int endLine = -1;
+  // Dense id of the member in the RapidTypeAnalyser arrays.
+  private int id;
 
-  private boolean fullyTraversed;
-  private boolean live;
   private List<Type> referencedTypes;
   private final Multimap<InvocationKind, Member> referencedMembers =
       MultimapBuilder.enumKeys(InvocationKind.class).arrayListValues().build();
-  private final List<Type> overridingTypes = new ArrayList<>();
+  private final List<Member> overridingMembers = new ArrayList<>();
   private final List<Type> inheritingTypes = new ArrayList<>();
 
   private Member() {}
@@ -74,6 +74,14 @@ final class Member {
     return endLine;
   }
 
+  int getId() {
+    return id;
+  }
+
+  void setId(int id) {
+    this.id = id;
+  }
+
   InvocationKind getDefaultInvocationKind() {
     if (isStatic) {
       return InvocationKind.STATIC;
@@ -84,22 +92,6 @@ final class Member {
     }
   }
 
-  boolean isLive() {
-    return live;
-  }
-
-  void markLive() {
-    this.live = true;
-  }
-
-  boolean isFullyTraversed() {
-    return fullyTraversed;
-  }
-
-  void markFullyTraversed() {
-    this.fullyTraversed = true;
-  }
-
   List<Type> getReferencedTypes() {
     return referencedTypes;
   }
@@ -116,13 +108,13 @@ final class Member {
     referencedMembers.put(invocationKind, referencedMember);
   }
 
-  /** Returns the list of types overriding the implementation of this member. */
-  List<Type> getOverridingTypes() {
-    return overridingTypes;
+  /** Returns the list of members overriding the implementation of this member. */
+  List<Member> getOverridingMembers() {
+    return overridingMembers;
   }
 
-  void addOverridingType(Type type) {
-    overridingTypes.add(type);
+  void addOverridingMember(Member member) {
+    overridingMembers.add(member);
   }
 
   /**
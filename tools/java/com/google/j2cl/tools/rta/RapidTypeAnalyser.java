@@ -15,123 +15,284 @@
  */
 package com.google.j2cl.tools.rta;
 
-import static com.google.common.base.Predicates.not;
-import static java.util.stream.Collectors.toSet;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
+import com.google.common.collect.ImmutableList;
+import com.google.j2cl.libraryinfo.CompactLibraryInfo;
 import com.google.j2cl.libraryinfo.InvocationKind;
-import com.google.j2cl.libraryinfo.LibraryInfo;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
+/**
+ * Computes the live types and members of an application.
+ *
+ * <p>The type graph is flattened into arrays indexed by dense type and member ids, where the
+ * adjacency lists of all the types (or members) are stored back to back (compressed sparse row
+ * format). The traversal uses an explicit worklist instead of recursion, so it does not overflow
+ * the stack on long call chains and does not allocate once the arrays are built.
+ */
 final class RapidTypeAnalyser {
 
-  static RtaResult analyse(LibraryInfo libraryInfo) {
-    List<Type> types = TypeGraphBuilder.build(libraryInfo);
+  static RtaResult analyse(List<CompactLibraryInfo> libraryInfos) {
+    return new RapidTypeAnalyser(TypeGraphBuilder.build(libraryInfos)).analyse();
+  }
+
+  // Operations in the worklist are encoded as (id << OPERATION_BITS) | operation.
+  private static final int OPERATION_BITS = 2;
+  private static final int OPERATION_MASK = (1 << OPERATION_BITS) - 1;
+  private static final int MARK_MEMBER_LIVE = 0;
+  private static final int TRAVERSE_POLYMORPHIC_REFERENCE = 1;
+  private static final int MARK_TYPE_LIVE = 2;
+  private static final int INSTANTIATE = 3;
 
-    // Go over the entry points to start the traversal.
-    types.stream()
-        .flatMap(t -> t.getMembers().stream())
-        .filter(Member::isJsAccessible)
-        .forEach(m -> onMemberReference(m.getDefaultInvocationKind(), m));
+  // Member references are encoded as (member id << INVOCATION_KIND_BITS) | invocation kind number.
+  private static final int INVOCATION_KIND_BITS = 2;
+  private static final int INVOCATION_KIND_MASK = (1 << INVOCATION_KIND_BITS) - 1;
 
-    return RtaResult.build(getUnusedTypes(types), getUnusedMembers(types));
-  }
+  private final ImmutableList<Type> types;
+  private final ImmutableList<Member> members;
 
-  private static Set<Type> getUnusedTypes(List<Type> types) {
-    return types.stream().filter(not(Type::isLive)).collect(toSet());
+  private final int[] declaringTypeByMember;
+  // The types referenced by member i are referencedTypes[referencedTypesStart[i]] up to
+  // referencedTypes[referencedTypesStart[i + 1] - 1], and similarly for the other relations.
+  private final int[] referencedTypesStart;
+  private final int[] referencedTypes;
+  private final int[] referencedMembersStart;
+  private final int[] referencedMembers;
+  // The members overriding member i.
+  private final int[] overridingMembersStart;
+  private final int[] overridingMembers;
+  private final int[] inheritingTypesStart;
+  private final int[] inheritingTypes;
+  private final int[] superTypesStart;
+  private final int[] superTypes;
+  // The declared and inherited members of type i.
+  private final int[] typeMembersStart;
+  private final int[] typeMembers;
+
+  private final BitSet liveTypes;
+  private final BitSet instantiatedTypes;
+  private final BitSet liveMembers;
+  private final BitSet fullyTraversedMembers;
+
+  private int[] worklist = new int[64];
+  private int worklistSize = 0;
+
+  private RapidTypeAnalyser(List<Type> types) {
+    this.types = ImmutableList.copyOf(types);
+    // Inherited members are shared with the super types, collect them from their declaring type.
+    this.members =
+        types.stream()
+            .flatMap(t -> t.getMembers().stream().filter(m -> m.getDeclaringType() == t))
+            .collect(toImmutableList());
+
+    // Looking up ids in maps is slow on large applications, store them in the types and members.
+    for (int i = 0; i < this.types.size(); i++) {
+      this.types.get(i).setId(i);
+    }
+    for (int i = 0; i < members.size(); i++) {
+      members.get(i).setId(i);
+    }
+    ToIntFunction<Type> typeId = Type::getId;
+    ToIntFunction<Member> memberId = Member::getId;
+
+    declaringTypeByMember =
+        members.stream().mapToInt(m -> typeId.applyAsInt(m.getDeclaringType())).toArray();
+
+    referencedTypesStart = new int[members.size() + 1];
+    referencedTypes = flatten(members, Member::getReferencedTypes, typeId, referencedTypesStart);
+
+    referencedMembersStart = new int[members.size() + 1];
+    referencedMembers =
+        flatten(
+            members,
+            m -> m.getReferencedMembers().entries(),
+            e ->
+                (memberId.applyAsInt(e.getValue()) << INVOCATION_KIND_BITS)
+                    | e.getKey().getNumber(),
+            referencedMembersStart);
+
+    overridingMembersStart = new int[members.size() + 1];
+    overridingMembers =
+        flatten(members, Member::getOverridingMembers, memberId, overridingMembersStart);
+
+    inheritingTypesStart = new int[members.size() + 1];
+    inheritingTypes = flatten(members, Member::getInheritingTypes, typeId, inheritingTypesStart);
+
+    superTypesStart = new int[types.size() + 1];
+    superTypes = flatten(this.types, Type::getSuperTypes, typeId, superTypesStart);
+
+    typeMembersStart = new int[types.size() + 1];
+    typeMembers = flatten(this.types, Type::getMembers, memberId, typeMembersStart);
+
+    liveTypes = new BitSet(types.size());
+    instantiatedTypes = new BitSet(types.size());
+    liveMembers = new BitSet(members.size());
+    fullyTraversedMembers = new BitSet(members.size());
   }
 
-  private static Set<Member> getUnusedMembers(List<Type> types) {
-    return types.stream()
-        .flatMap(t -> t.getMembers().stream())
-        .filter(not(Member::isLive))
-        .collect(toSet());
+  private RtaResult analyse() {
+    // Go over the entry points to start the traversal.
+    for (int member = 0; member < members.size(); member++) {
+      if (members.get(member).isJsAccessible()) {
+        onMemberReference(members.get(member).getDefaultInvocationKind().getNumber(), member);
+      }
+    }
+
+    while (worklistSize > 0) {
+      int operation = worklist[--worklistSize];
+      int id = operation >>> OPERATION_BITS;
+      switch (operation & OPERATION_MASK) {
+        case MARK_MEMBER_LIVE:
+          markMemberLive(id);
+          break;
+        case TRAVERSE_POLYMORPHIC_REFERENCE:
+          traversePolymorphicReference(id);
+          break;
+        case MARK_TYPE_LIVE:
+          markTypeLive(id);
+          break;
+        case INSTANTIATE:
+          instantiate(id);
+          break;
+        default:
+          throw new AssertionError(operation);
+      }
+    }
+
+    Set<Type> unusedTypes = new HashSet<>();
+    for (int type = liveTypes.nextClearBit(0);
+        type < types.size();
+        type = liveTypes.nextClearBit(type + 1)) {
+      unusedTypes.add(types.get(type));
+    }
+    Set<Member> unusedMembers = new HashSet<>();
+    for (int member = liveMembers.nextClearBit(0);
+        member < members.size();
+        member = liveMembers.nextClearBit(member + 1)) {
+      unusedMembers.add(members.get(member));
+    }
+    return RtaResult.build(unusedTypes, unusedMembers);
   }
 
-  private static void onMemberReference(InvocationKind invocationKind, Member member) {
+  private void onMemberReference(int invocationKind, int member) {
     switch (invocationKind) {
-      case DYNAMIC:
-        traversePolymorphicReference(member);
+      case InvocationKind.DYNAMIC_VALUE:
+        push(TRAVERSE_POLYMORPHIC_REFERENCE, member);
         break;
-      case STATIC:
-        markTypeLive(member.getDeclaringType());
-        markMemberLive(member);
+      case InvocationKind.STATIC_VALUE:
+        push(MARK_TYPE_LIVE, declaringTypeByMember[member]);
+        push(MARK_MEMBER_LIVE, member);
         break;
-      case INSTANTIATION:
-        instantiate(member.getDeclaringType());
-        markMemberLive(member);
+      case InvocationKind.INSTANTIATION_VALUE:
+        push(INSTANTIATE, declaringTypeByMember[member]);
+        push(MARK_MEMBER_LIVE, member);
         break;
       default:
         throw new AssertionError(invocationKind);
     }
   }
 
-  private static void onTypeReference(Type type) {
-    markTypeLive(type);
-  }
-
-  private static void markMemberLive(Member member) {
-    if (member.isLive()) {
+  private void markMemberLive(int member) {
+    if (liveMembers.get(member)) {
       return;
     }
+    liveMembers.set(member);
 
-    member.markLive();
-
-    member.getReferencedTypes().forEach(RapidTypeAnalyser::onTypeReference);
-    member.getReferencedMembers().forEach(RapidTypeAnalyser::onMemberReference);
+    for (int i = referencedTypesStart[member]; i < referencedTypesStart[member + 1]; i++) {
+      push(MARK_TYPE_LIVE, referencedTypes[i]);
+    }
+    for (int i = referencedMembersStart[member]; i < referencedMembersStart[member + 1]; i++) {
+      int reference = referencedMembers[i];
+      onMemberReference(reference & INVOCATION_KIND_MASK, reference >>> INVOCATION_KIND_BITS);
+    }
   }
 
-  private static void traversePolymorphicReference(Member member) {
-    if (member.isFullyTraversed()) {
+  private void traversePolymorphicReference(int member) {
+    if (fullyTraversedMembers.get(member)) {
       return;
     }
-    member.markFullyTraversed();
+    fullyTraversedMembers.set(member);
 
-    markMemberPotentiallyLive(member);
-
-    // Recursively unfold the overriding chain.
-    for (Type overridingType : member.getOverridingTypes()) {
-      Member newTargetMember = overridingType.getMemberByName(member.getName());
-      traversePolymorphicReference(newTargetMember);
+    // The member is potentially live, it is live as soon as one of the types inheriting it is
+    // instantiated (see instantiate()).
+    for (int i = inheritingTypesStart[member]; i < inheritingTypesStart[member + 1]; i++) {
+      if (instantiatedTypes.get(inheritingTypes[i])) {
+        push(MARK_MEMBER_LIVE, member);
+        break;
+      }
     }
-  }
-
-  private static void markMemberPotentiallyLive(Member member) {
-    // Set of types inheriting this member
-    List<Type> inheritingTypes = member.getInheritingTypes();
 
-    if (containsInstantiatedTypes(inheritingTypes)) {
-      markMemberLive(member);
-    } else {
-      // None of the types inheriting this polymorphic member is instantiated.
-      // Register this member so that it gets marked live once an inheriting type is instantiated.
-      inheritingTypes.forEach(t -> t.addPotentiallyLiveMember(member));
+    // Unfold the overriding chain.
+    for (int i = overridingMembersStart[member]; i < overridingMembersStart[member + 1]; i++) {
+      push(TRAVERSE_POLYMORPHIC_REFERENCE, overridingMembers[i]);
     }
   }
 
-  private static void markTypeLive(Type type) {
-    if (type.isLive()) {
+  private void markTypeLive(int type) {
+    if (liveTypes.get(type)) {
       return;
     }
-
-    type.markLive();
+    liveTypes.set(type);
 
     // When a type is marked as live, we need to mark the super types as live too because their are
     // referred to in the class declaration (as supertypes or encoded as implementing interfaces).
-    type.getSuperTypes().forEach(RapidTypeAnalyser::markTypeLive);
+    for (int i = superTypesStart[type]; i < superTypesStart[type + 1]; i++) {
+      push(MARK_TYPE_LIVE, superTypes[i]);
+    }
   }
 
-  private static void instantiate(Type type) {
-    if (type.isInstantiated()) {
+  private void instantiate(int type) {
+    if (instantiatedTypes.get(type)) {
       return;
     }
-    type.instantiate();
+    instantiatedTypes.set(type);
 
-    type.getPotentiallyLiveMembers().forEach(RapidTypeAnalyser::markMemberLive);
+    // The members of the type that were polymorphically referenced are now live. The type is one of
+    // the inheriting types of all its members.
+    for (int i = typeMembersStart[type]; i < typeMembersStart[type + 1]; i++) {
+      if (fullyTraversedMembers.get(typeMembers[i])) {
+        push(MARK_MEMBER_LIVE, typeMembers[i]);
+      }
+    }
   }
 
-  private static boolean containsInstantiatedTypes(Collection<Type> types) {
-    return types.stream().anyMatch(Type::isInstantiated);
+  private void push(int operation, int id) {
+    if (worklistSize == worklist.length) {
+      worklist = Arrays.copyOf(worklist, worklistSize * 2);
+    }
+    worklist[worklistSize++] = (id << OPERATION_BITS) | operation;
+  }
+
+  /**
+   * Returns the ids of the elements adjacent to each element stored back to back, and fills in
+   * {@code start} with the position of the adjacent ids of each element.
+   */
+  private static <E, T> int[] flatten(
+      List<E> elements,
+      Function<E, ? extends Collection<T>> getAdjacentElements,
+      ToIntFunction<? super T> getId,
+      int[] start) {
+    int size = 0;
+    for (int i = 0; i < elements.size(); i++) {
+      start[i] = size;
+      size += getAdjacentElements.apply(elements.get(i)).size();
+    }
+    start[elements.size()] = size;
+
+    int[] adjacentIds = new int[size];
+    int position = 0;
+    for (E element : elements) {
+      for (T adjacentElement : getAdjacentElements.apply(element)) {
+        adjacentIds[position++] = getId.applyAsInt(adjacentElement);
+      }
+    }
+    return adjacentIds;
   }
 }
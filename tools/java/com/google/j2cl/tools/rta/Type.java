@@ -18,40 +18,44 @@ package com.google.j2cl.tools.rta;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.collect.ImmutableList;
-import com.google.j2cl.libraryinfo.TypeInfo;
-import java.util.ArrayList;
+import com.google.j2cl.libraryinfo.CompactTypeInfo;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 final class Type {
+  static final int NO_TOPOLOGICAL_INDEX = -1;
+
   private String name;
   private List<Type> superTypes;
   private boolean isInterface;
-  private final LinkedHashMap<String, Member> membersByName = new LinkedHashMap<>();
+  private Map<String, Member> membersByName = new LinkedHashMap<>();
+  // Whether membersByName is shared with other types and needs to be copied before it is modified.
+  private boolean membersShared;
+  private int topologicalIndex = NO_TOPOLOGICAL_INDEX;
+  // Dense id of the type in the RapidTypeAnalyser arrays.
+  private int id;
   private String implSourceFile;
   private String headerSourceFile;
-  private boolean live;
-  private boolean instantiated;
-  private final List<Member> potentiallyLiveMembers = new ArrayList<>();
 
-  static Type buildFrom(TypeInfo typeInfo) {
+  static Type buildFrom(CompactTypeInfo typeInfo, List<String> names) {
     Type type = new Type();
 
-    type.name = typeInfo.getTypeId();
-    type.isInterface = isInterfaceType(typeInfo);
-    type.headerSourceFile = typeInfo.getHeaderSourceFilePath();
-    type.implSourceFile = typeInfo.getImplSourceFilePath();
+    type.name = names.get(typeInfo.getTypeId());
+    type.isInterface = isInterfaceType(typeInfo, type.name);
+    type.headerSourceFile = names.get(typeInfo.getHeaderSourceFilePath());
+    type.implSourceFile = names.get(typeInfo.getImplSourceFilePath());
     typeInfo
         .getMemberList()
-        .forEach(memberInfo -> type.addMember(Member.buildFrom(memberInfo, type)));
+        .forEach(memberInfo -> type.addMember(Member.buildFrom(memberInfo, names, type)));
 
     return type;
   }
 
-  private static boolean isInterfaceType(TypeInfo typeInfo) {
-    // All classes extends at least j.l.Object except j.l.Object itself
-    return typeInfo.getExtendsType().isEmpty() && !"java.lang.Object".equals(typeInfo.getTypeId());
+  private static boolean isInterfaceType(CompactTypeInfo typeInfo, String typeId) {
+    // All classes extends at least j.l.Object except j.l.Object itself. Index 0 is the empty name.
+    return typeInfo.getExtendsType() == 0 && !"java.lang.Object".equals(typeId);
   }
 
   private Type() {}
@@ -78,6 +82,10 @@ final class Type {
 
   void addMember(Member member) {
     checkState(!membersByName.containsKey(member.getName()));
+    if (membersShared) {
+      membersByName = new LinkedHashMap<>(membersByName);
+      membersShared = false;
+    }
     membersByName.put(member.getName(), member);
   }
 
@@ -85,6 +93,14 @@ final class Type {
     members.forEach(this::addMember);
   }
 
+  /** Makes this type, which does not have members yet, have the same members as {@code type}. */
+  void shareMembersOf(Type type) {
+    checkState(membersByName.isEmpty());
+    membersByName = type.membersByName;
+    membersShared = true;
+    type.membersShared = true;
+  }
+
   String getName() {
     return name;
   }
@@ -97,28 +113,19 @@ final class Type {
     return superTypes;
   }
 
-  void markLive() {
-    this.live = true;
-  }
-
-  boolean isLive() {
-    return live;
-  }
-
-  boolean isInstantiated() {
-    return instantiated;
+  int getTopologicalIndex() {
+    return topologicalIndex;
   }
 
-  void instantiate() {
-    this.instantiated = true;
+  void setTopologicalIndex(int topologicalIndex) {
+    this.topologicalIndex = topologicalIndex;
   }
 
-  /** Returns the list of members that need to mark as live when the type becomes live. */
-  List<Member> getPotentiallyLiveMembers() {
-    return potentiallyLiveMembers;
+  int getId() {
+    return id;
   }
 
-  void addPotentiallyLiveMember(Member member) {
-    potentiallyLiveMembers.add(member);
+  void setId(int id) {
+    this.id = id;
   }
 }
@@ -17,84 +17,103 @@ package com.google.j2cl.tools.rta;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.Streams.concat;
-import static java.util.stream.Collectors.toSet;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.LinkedHashMultiset;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multiset;
-import com.google.j2cl.libraryinfo.LibraryInfo;
-import com.google.j2cl.libraryinfo.MemberInfo;
-import com.google.j2cl.libraryinfo.MethodInvocation;
-import com.google.j2cl.libraryinfo.TypeInfo;
+import com.google.j2cl.libraryinfo.CompactLibraryInfo;
+import com.google.j2cl.libraryinfo.CompactMemberInfo;
+import com.google.j2cl.libraryinfo.CompactMethodInvocation;
+import com.google.j2cl.libraryinfo.CompactTypeInfo;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 /** Give information about inheritance relationships between types. */
 public class TypeGraphBuilder {
 
-  static List<Type> build(LibraryInfo libraryInfo) {
-    List<Type> types = createTypes(libraryInfo);
+  static List<Type> build(List<CompactLibraryInfo> libraryInfos) {
+    List<Type> types = createTypes(libraryInfos);
 
-    LinkedHashMultiset<Type> typesInTopologicalOrder = sortTypesInTopologicalOrder(types);
+    List<Type> typesInTopologicalOrder = sortTypesInTopologicalOrder(types);
 
     addInheritedMembers(typesInTopologicalOrder);
 
-    computeOverrideFrontier(ImmutableList.copyOf(typesInTopologicalOrder.elementSet()));
+    computeOverrideFrontier(typesInTopologicalOrder);
 
     return types;
   }
 
-  private static List<Type> createTypes(LibraryInfo libraryInfo) {
+  private static List<Type> createTypes(List<CompactLibraryInfo> libraryInfos) {
     Map<String, Type> typesByName = new HashMap<>();
+    // A type might be defined in several libraries, only its first definition is used.
+    List<List<CompactTypeInfo>> definingTypeInfosByLibrary = new ArrayList<>();
 
     // Create all types and members.
-    for (TypeInfo typeInfo : libraryInfo.getTypeList()) {
-      Type type = Type.buildFrom(typeInfo);
-      typesByName.put(type.getName(), type);
+    for (CompactLibraryInfo libraryInfo : libraryInfos) {
+      List<String> names = libraryInfo.getNameList();
+      List<CompactTypeInfo> definingTypeInfos = new ArrayList<>();
+      for (CompactTypeInfo typeInfo : libraryInfo.getTypeList()) {
+        if (typesByName.containsKey(names.get(typeInfo.getTypeId()))) {
+          continue;
+        }
+        Type type = Type.buildFrom(typeInfo, names);
+        typesByName.put(type.getName(), type);
+        definingTypeInfos.add(typeInfo);
+      }
+      definingTypeInfosByLibrary.add(definingTypeInfos);
     }
 
     // Build cross-references between types and members
-    for (TypeInfo typeInfo : libraryInfo.getTypeList()) {
-      Type type = typesByName.get(typeInfo.getTypeId());
-      type.setSuperTypes(
-          concat(Stream.of(typeInfo.getExtendsType()), typeInfo.getImplementsTypeList().stream())
-              .map(typesByName::get)
-              // Filter supertypes that don't have code generated by J2CL like native types or
-              // JsFunction
-              .filter(Objects::nonNull)
-              .collect(toImmutableList()));
-
-      for (MemberInfo memberInfo : typeInfo.getMemberList()) {
-        Member member = type.getMemberByName(memberInfo.getName());
-        member.setReferencedTypes(
-            memberInfo.getReferencedTypesList().stream()
-                .map(typesByName::get)
+    for (int libraryIndex = 0; libraryIndex < libraryInfos.size(); libraryIndex++) {
+      List<String> names = libraryInfos.get(libraryIndex).getNameList();
+      // Resolve every name of the library once, names that are not types resolve to null.
+      Type[] typesByNameIndex = names.stream().map(typesByName::get).toArray(Type[]::new);
+
+      for (CompactTypeInfo typeInfo : definingTypeInfosByLibrary.get(libraryIndex)) {
+        Type type = typesByNameIndex[typeInfo.getTypeId()];
+        type.setSuperTypes(
+            IntStream.concat(
+                    IntStream.of(typeInfo.getExtendsType()),
+                    typeInfo.getImplementsTypeList().stream().mapToInt(Integer::intValue))
+                .mapToObj(i -> typesByNameIndex[i])
+                // Filter supertypes that don't have code generated by J2CL like native types or
+                // JsFunction
                 .filter(Objects::nonNull)
                 .collect(toImmutableList()));
 
-        addMethodReferences(memberInfo.getInvokedMethodsList(), member, typesByName);
+        for (CompactMemberInfo memberInfo : typeInfo.getMemberList()) {
+          Member member = type.getMemberByName(names.get(memberInfo.getName()));
+          member.setReferencedTypes(
+              memberInfo.getReferencedTypesList().stream()
+                  .map(i -> typesByNameIndex[i])
+                  .filter(Objects::nonNull)
+                  .collect(toImmutableList()));
+
+          addMethodReferences(memberInfo.getInvokedMethodsList(), member, names, typesByNameIndex);
+        }
       }
     }
     return ImmutableList.copyOf(typesByName.values());
   }
 
   private static void addMethodReferences(
-      List<MethodInvocation> methodInvocations, Member member, Map<String, Type> typesByName) {
-    for (MethodInvocation methodInvocation : methodInvocations) {
-      Type enclosingType = typesByName.get(methodInvocation.getEnclosingType());
+      List<CompactMethodInvocation> methodInvocations,
+      Member member,
+      List<String> names,
+      Type[] typesByNameIndex) {
+    for (CompactMethodInvocation methodInvocation : methodInvocations) {
+      Type enclosingType = typesByNameIndex[methodInvocation.getEnclosingType()];
 
       if (enclosingType == null) {
         // reference of a member of a type not generated by J2CL
         continue;
       }
 
-      Member referenceMember = enclosingType.getMemberByName(methodInvocation.getMethod());
+      Member referenceMember =
+          enclosingType.getMemberByName(names.get(methodInvocation.getMethod()));
 
       if (referenceMember == null) {
         // reference of a member that is not in the J2CL ast.
@@ -106,16 +125,24 @@ public class TypeGraphBuilder {
   }
 
   /** Add inherited members to all types. */
-  private static void addInheritedMembers(LinkedHashMultiset<Type> typesInTopologicalOrder) {
-    for (Type type : typesInTopologicalOrder.elementSet()) {
-      Set<String> declaredMemberNames =
-          type.getMembers().stream().map(Member::getName).collect(toSet());
-      Map<String, Member> inheritedMemberByName = new HashMap<>();
+  private static void addInheritedMembers(List<Type> typesInTopologicalOrder) {
+    Map<String, Member> inheritedMemberByName = new HashMap<>();
+    for (Type type : typesInTopologicalOrder) {
+      List<Type> superTypes = type.getSuperTypes();
+      if (superTypes.size() == 1 && type.getMembers().isEmpty()) {
+        // The type inherits all the members of its only super type, which is common in deep
+        // interface hierarchies, and can share its member table.
+        type.shareMembersOf(superTypes.get(0));
+        continue;
+      }
 
-      for (Type superType : type.getSuperTypes()) {
+      inheritedMemberByName.clear();
+      for (Type superType : superTypes) {
         for (Member member : superType.getMembers()) {
           String memberName = member.getName();
-          if (declaredMemberNames.contains(memberName)) {
+          // Inherited members have not been added yet, so the members of the type are the ones it
+          // declares.
+          if (type.getMemberByName(memberName) != null) {
             // Member declared in the type, not inherited.
             continue;
           }
@@ -131,14 +158,11 @@ public class TypeGraphBuilder {
           //
           // IFooBar can inherits f() from either IFoo or IBar. We choose IBar::f because IBar
           // is topologically greater than IFoo (IFoo being a parent of IBar)
-          inheritedMemberByName.putIfAbsent(memberName, member);
-
-          Member priorCandidateMember = inheritedMemberByName.get(memberName);
+          Member priorCandidateMember = inheritedMemberByName.putIfAbsent(memberName, member);
 
-          if (isTopologicallyGreater(
-              typesInTopologicalOrder,
-              member.getDeclaringType(),
-              priorCandidateMember.getDeclaringType())) {
+          if (priorCandidateMember != null
+              && member.getDeclaringType().getTopologicalIndex()
+                  > priorCandidateMember.getDeclaringType().getTopologicalIndex()) {
             inheritedMemberByName.put(memberName, member);
           }
         }
@@ -148,11 +172,6 @@ public class TypeGraphBuilder {
     }
   }
 
-  private static boolean isTopologicallyGreater(
-      Multiset<Type> typesInTopologicalOrder, Type type, Type priorCandidate) {
-    return typesInTopologicalOrder.count(type) > typesInTopologicalOrder.count(priorCandidate);
-  }
-
   private static void computeOverrideFrontier(List<Type> typesInTopologicalOrder) {
     // Build the overrides set by starting from children and check if a member with same name exist
     // on the parent with a different member identifiers.
@@ -174,17 +193,17 @@ public class TypeGraphBuilder {
           if (!member.equals(parentMember)) {
             // Member is overridden by the current type.
 
-            // We register the type defining the member as the overriding type of the parent member.
+            // We register the member as overriding the parent member, even if it is inherited.
             // Let's take the following example:
             //
             // class A {      class B extends A implements I {}     interface I {
             //   foo();                                               foo();
             // }                                                    }
             //
-            // in this case A needs to be registered as a type that provides an implementation of
-            // I:foo() because A:foo() is inherited by B.
+            // in this case A:foo() needs to be registered as an implementation of I:foo() because
+            // A:foo() is inherited by B.
 
-            parentMember.addOverridingType(member.getDeclaringType());
+            parentMember.addOverridingMember(member);
           }
         }
       }
@@ -192,9 +211,8 @@ public class TypeGraphBuilder {
   }
 
   /**
-   * Returns a LinkedHashMultiset where elements are the types sorted in order such as for every
-   * types, its super types comes first and implementation class comes after any interface that is
-   * its sibling.
+   * Returns the types sorted in order such as for every types, its super types comes first and
+   * implementation class comes after any interface that is its sibling.
    *
    * <pre>
    *   class B {}
@@ -204,39 +222,40 @@ public class TypeGraphBuilder {
    *  The types could be sorted as: IA, B, ID, A, D
    * </pre>
    *
-   * <p>The getCount() member on the returned MultiSet can be used to know the topological number of
-   * a type.
+   * <p>The topological number of each type, i.e. its position in the returned list, is recorded in
+   * the type and can be retrieved with {@link Type#getTopologicalIndex}.
    */
-  private static LinkedHashMultiset<Type> sortTypesInTopologicalOrder(List<Type> types) {
-    LinkedHashMultiset<Type> topologicalSortedSet = LinkedHashMultiset.create();
+  private static List<Type> sortTypesInTopologicalOrder(List<Type> types) {
+    List<Type> topologicalSortedList = new ArrayList<>(types.size());
 
     // Insert all interfaces first so that they have a smaller topological number than any class.
     for (Type type : types) {
       if (!type.isInterface()) {
         continue;
       }
-      insertInTopologicalOrder(type, topologicalSortedSet);
+      insertInTopologicalOrder(type, topologicalSortedList);
     }
 
     // Now insert all classes.
     for (Type type : types) {
-      insertInTopologicalOrder(type, topologicalSortedSet);
+      insertInTopologicalOrder(type, topologicalSortedList);
     }
 
-    checkState(topologicalSortedSet.elementSet().size() == types.size());
+    checkState(topologicalSortedList.size() == types.size());
 
-    return topologicalSortedSet;
+    return topologicalSortedList;
   }
 
-  private static void insertInTopologicalOrder(Type type, Multiset<Type> topologicalSortedSet) {
-    if (topologicalSortedSet.contains(type)) {
+  private static void insertInTopologicalOrder(Type type, List<Type> topologicalSortedList) {
+    if (type.getTopologicalIndex() != Type.NO_TOPOLOGICAL_INDEX) {
       return;
     }
 
     for (Type supertype : type.getSuperTypes()) {
-      insertInTopologicalOrder(supertype, topologicalSortedSet);
+      insertInTopologicalOrder(supertype, topologicalSortedList);
     }
 
-    topologicalSortedSet.add(type, topologicalSortedSet.elementSet().size() + 1);
+    type.setTopologicalIndex(topologicalSortedList.size());
+    topologicalSortedList.add(type);
   }
 }
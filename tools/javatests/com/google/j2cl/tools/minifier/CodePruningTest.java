@@ -21,10 +21,16 @@ import static org.junit.Assert.assertThrows;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.j2cl.tools.rta.CodeRemovalIndex;
 import com.google.j2cl.tools.rta.CodeRemovalInfo;
 import com.google.j2cl.tools.rta.LineRange;
 import com.google.j2cl.tools.rta.UnusedLines;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -33,6 +39,8 @@ import org.junit.runners.JUnit4;
 public class CodePruningTest {
   private static final String EMPTY_LINE = "";
 
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Test
   public void testFilePruning() {
     CodeRemovalInfo codeRemovalInfo =
@@ -146,6 +154,29 @@ public class CodePruningTest {
         () -> j2clMinifier.setupRtaCodeRemoval(codeRemovalInfoWithoutLineRange));
   }
 
+  @Test
+  public void testPruningWithMappedIndex() throws IOException {
+    CodeRemovalInfo codeRemovalInfo =
+        createFileLinesRemoval("Foo.java.js", from(1, 2)).toBuilder()
+            .addUnusedFiles("Bar.java.js")
+            .build();
+    Path indexPath = temporaryFolder.newFile().toPath();
+    Files.write(indexPath, CodeRemovalIndex.toByteArray(codeRemovalInfo));
+
+    J2clMinifier j2clMinifier = new J2clMinifier();
+    j2clMinifier.setupRtaCodeRemoval(CodeRemovalIndex.load(indexPath));
+
+    assertThat(j2clMinifier.minify("Bar.java.js", "Bar.java.js file content")).isEmpty();
+
+    String fileContent =
+        createFileContent("line 0: not pruned", "line 1: pruned", "line 2: not pruned");
+    String expectedFileContent =
+        createFileContent("line 0: not pruned", EMPTY_LINE, "line 2: not pruned");
+
+    assertThat(j2clMinifier.minify("Foo.java.js", fileContent)).isEqualTo(expectedFileContent);
+    assertThat(j2clMinifier.minify("Baz.java.js", fileContent)).isEqualTo(fileContent);
+  }
+
   private static CodeRemovalInfo createFileLinesRemoval(String fileKey, LineRange... lineRanges) {
     return CodeRemovalInfo.newBuilder()
         .addUnusedLines(
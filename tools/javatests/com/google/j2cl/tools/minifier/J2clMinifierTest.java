@@ -13,6 +13,13 @@
  */
 package com.google.j2cl.tools.minifier;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /** Tests for {@link J2clMinifier}. */
@@ -186,6 +193,85 @@ public class J2clMinifierTest extends TestCase {
     assertNoChange("'\"/* */\"'");
   }
 
+  public void testStreaming() throws IOException {
+    String input = "/* é */this.m_foo__(); // 日本\n'm_bar__'; this.m_foo__();";
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    minifier.minify(
+        "Foo.java.js", new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output);
+
+    assertEquals(
+        "this.foo＿1(); // 日本\n'm_bar__'; this.foo＿1();",
+        new String(output.toByteArray(), StandardCharsets.UTF_8));
+    // Identifiers are minified consistently with the String API.
+    assertChange("this.m_foo__();", "this.foo＿1();");
+  }
+
+  public void testStreamingMatchesStringApiOnRandomInputs() throws IOException {
+    // Pieces of JavaScript with identifiers, comments, strings and multi-byte characters, which are
+    // concatenated at random.
+    String[] pieces = {
+      "m_foo__java_lang_String", "f_bar__com_Baz", "$create__int", "$ctor__x_y", "$init__q",
+      "$implements__a", "$f_x__y", "m___weird", "m_nouscore", "m_foo__int_$create__int", "hello",
+      "x", "_", "$", "1", " ", "\t", "\n", "/", "*", "/*", "*/", "//", "'", "\"", "\\", "é",
+      "ÿ", "日本", "😀"
+    };
+    Random random = new Random(42);
+    for (int i = 0; i < 3000; i++) {
+      StringBuilder input = new StringBuilder();
+      for (int j = random.nextInt(200); j > 0; j--) {
+        input.append(pieces[random.nextInt(pieces.length)]);
+      }
+      byte[] inputBytes = input.toString().getBytes(StandardCharsets.UTF_8);
+      byte[] expected =
+          new J2clMinifier()
+              .minify("Foo.java.js", input.toString())
+              .getBytes(StandardCharsets.UTF_8);
+
+      // Reads of a few bytes split the tokens and the multi-byte characters across chunks.
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      new J2clMinifier()
+          .minify("Foo.java.js", new SmallReadsInputStream(inputBytes, random), output);
+      assertTrue("Input: " + input, Arrays.equals(expected, output.toByteArray()));
+
+      ByteArrayOutputStream bufferOutput = new ByteArrayOutputStream();
+      new J2clMinifier().minify("Foo.java.js", ByteBuffer.wrap(inputBytes), bufferOutput);
+      assertTrue("Input: " + input, Arrays.equals(expected, bufferOutput.toByteArray()));
+    }
+  }
+
+  public void testSourceMap() {
+    // Maps "this" and "m_foo__" on the first line and "m_bar__" and "m_foo__" on the second one.
+    String sourceMap =
+        "{\"version\":3,\"sources\":[\"Foo.java\"],\"names\":[],"
+            + "\"mappings\":\"OAAA,KAAK;AACA,mBAAmB\"}";
+
+    J2clMinifier.MinifiedFile minifiedFile =
+        minifier.minify(
+            "Foo.java.js", "/* c */this.m_foo__();\nm_bar__(); /* c */ m_foo__();", sourceMap);
+
+    assertEquals("this.foo＿1();\nbar＿1();  foo＿1();", minifiedFile.getContent());
+    assertEquals(
+        "{\"version\":3,\"sources\":[\"Foo.java\"],\"names\":[],"
+            + "\"mappings\":\"AAAA,KAAK;AACA,UAAmB\"}",
+        minifiedFile.getSourceMap());
+  }
+
+  /** An input stream that returns at most a few random bytes per read. */
+  private static class SmallReadsInputStream extends ByteArrayInputStream {
+    private final Random random;
+
+    SmallReadsInputStream(byte[] bytes, Random random) {
+      super(bytes);
+      this.random = random;
+    }
+
+    @Override
+    public synchronized int read(byte[] bytes, int offset, int length) {
+      return super.read(bytes, offset, Math.min(length, 1 + random.nextInt(8)));
+    }
+  }
+
   private void assertChange(String input, String output) {
     assertEquals(output, minifier.minify(input));
   }
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.j2cl.tools.rta;
+
+import com.google.common.collect.ImmutableList;
+import com.google.j2cl.libraryinfo.CompactLibraryInfo;
+import com.google.j2cl.libraryinfo.CompactMemberInfo;
+import com.google.j2cl.libraryinfo.CompactMethodInvocation;
+import com.google.j2cl.libraryinfo.CompactTypeInfo;
+import com.google.j2cl.libraryinfo.FilePosition;
+import com.google.j2cl.libraryinfo.InvocationKind;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the time and the memory RapidTypeAnalyser takes on a synthetic application.
+ *
+ * <p>The application has 100 libraries of 1000 types with 10 members each, i.e. 1M members. Most
+ * references stay in their library and a few go to the libraries before it, like in a real
+ * application. Run it with:
+ *
+ * <pre>
+ *   bazel run //tools/javatests/com/google/j2cl/tools/rta:RapidTypeAnalyserBenchmark
+ * </pre>
+ *
+ * <p>The sizes can be changed with the arguments: number of libraries, types per library and
+ * members per type.
+ */
+public final class RapidTypeAnalyserBenchmark {
+  private static final int WARMUP_RUNS = 3;
+  private static final int MEASURED_RUNS = 5;
+  // Every INTERFACE_FREQUENCY-th type is an interface.
+  private static final int INTERFACE_FREQUENCY = 10;
+  // Classes extend the class before them in their library, except every HIERARCHY_DEPTH-th one.
+  private static final int HIERARCHY_DEPTH = 20;
+  private static final int INVOCATIONS_PER_MEMBER = 2;
+  private static final double TYPE_REFERENCE_RATE = 0.1;
+  private static final double EXTERNAL_REFERENCE_RATE = 0.2;
+  private static final double JS_ACCESSIBLE_RATE = 0.01;
+
+  public static void main(String[] args) {
+    int libraryCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int typesPerLibrary = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int membersPerType = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    List<CompactLibraryInfo> libraryInfos =
+        createApplication(libraryCount, typesPerLibrary, membersPerType, new Random(42));
+
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      RapidTypeAnalyser.analyse(libraryInfos);
+    }
+
+    com.sun.management.ThreadMXBean threadMxBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long[] timesMs = new long[MEASURED_RUNS];
+    long allocatedBytes = 0;
+    RtaResult result = null;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      long allocatedBytesBefore = threadMxBean.getThreadAllocatedBytes(threadId);
+      long start = System.nanoTime();
+      result = RapidTypeAnalyser.analyse(libraryInfos);
+      timesMs[i] = (System.nanoTime() - start) / 1_000_000;
+      allocatedBytes = threadMxBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+    }
+    Arrays.sort(timesMs);
+
+    // Building the type graph from the library infos is part of the analysis, measure it on its own
+    // to tell it apart from the traversal.
+    long[] typeGraphTimesMs = new long[MEASURED_RUNS];
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      long start = System.nanoTime();
+      TypeGraphBuilder.build(libraryInfos);
+      typeGraphTimesMs[i] = (System.nanoTime() - start) / 1_000_000;
+    }
+    Arrays.sort(typeGraphTimesMs);
+
+    System.out.printf(
+        "%d types, %d members: %d unused types, %d unused members%n",
+        libraryCount * typesPerLibrary,
+        libraryCount * typesPerLibrary * membersPerType,
+        result.getUnusedTypes().size(),
+        result.getUnusedMembers().size());
+    System.out.printf(
+        "median %d ms (min %d ms, max %d ms), %d MB allocated per run%n",
+        timesMs[MEASURED_RUNS / 2],
+        timesMs[0],
+        timesMs[MEASURED_RUNS - 1],
+        allocatedBytes >> 20);
+    System.out.printf(
+        "of which building the type graph: median %d ms%n", typeGraphTimesMs[MEASURED_RUNS / 2]);
+  }
+
+  private static List<CompactLibraryInfo> createApplication(
+      int libraryCount, int typesPerLibrary, int membersPerType, Random random) {
+    List<CompactLibraryInfo> libraryInfos = new ArrayList<>();
+    for (int library = 0; library < libraryCount; library++) {
+      libraryInfos.add(
+          new LibraryInfoGenerator(library, typesPerLibrary, membersPerType, random)
+              .createLibraryInfo());
+    }
+    return ImmutableList.copyOf(libraryInfos);
+  }
+
+  /** Generates the library info of one of the libraries of the synthetic application. */
+  private static final class LibraryInfoGenerator {
+    private final int library;
+    private final int typesPerLibrary;
+    private final int membersPerType;
+    private final Random random;
+    private final CompactLibraryInfo.Builder libraryInfoBuilder = CompactLibraryInfo.newBuilder();
+    private final Map<String, Integer> indexByName = new HashMap<>();
+
+    private LibraryInfoGenerator(
+        int library, int typesPerLibrary, int membersPerType, Random random) {
+      this.library = library;
+      this.typesPerLibrary = typesPerLibrary;
+      this.membersPerType = membersPerType;
+      this.random = random;
+      getNameIndex("");
+    }
+
+    private CompactLibraryInfo createLibraryInfo() {
+      if (library == 0) {
+        libraryInfoBuilder.addType(createJavaLangObject());
+      }
+      for (int type = 0; type < typesPerLibrary; type++) {
+        libraryInfoBuilder.addType(createType(type));
+      }
+      return libraryInfoBuilder.build();
+    }
+
+    private CompactTypeInfo createJavaLangObject() {
+      CompactTypeInfo.Builder typeInfoBuilder =
+          CompactTypeInfo.newBuilder()
+              .setTypeId(getNameIndex("java.lang.Object"))
+              .setHeaderSourceFilePath(getNameIndex("java/lang/Object.java.js"))
+              .setImplSourceFilePath(getNameIndex("java/lang/Object.impl.java.js"));
+      for (String name : new String[] {"constructor", "m_equals__", "m_hashCode__"}) {
+        typeInfoBuilder.addMember(
+            CompactMemberInfo.newBuilder().setName(getNameIndex(name)).setPublic(true));
+      }
+      return typeInfoBuilder.build();
+    }
+
+    private CompactTypeInfo createType(int type) {
+      String typeName = getTypeName(library, type);
+      CompactTypeInfo.Builder typeInfoBuilder =
+          CompactTypeInfo.newBuilder()
+              .setTypeId(getNameIndex(typeName))
+              .setHeaderSourceFilePath(getNameIndex(typeName + ".java.js"))
+              .setImplSourceFilePath(getNameIndex(typeName + ".impl.java.js"));
+      boolean isInterface = type % INTERFACE_FREQUENCY == 0;
+      if (isInterface) {
+        if (type > 0) {
+          typeInfoBuilder.addImplementsType(
+              getNameIndex(getTypeName(library, type - INTERFACE_FREQUENCY)));
+        }
+      } else {
+        typeInfoBuilder
+            .setExtendsType(
+                getNameIndex(
+                    type % HIERARCHY_DEPTH == 1
+                        ? "java.lang.Object"
+                        : getTypeName(library, getClassBefore(type))))
+            .addImplementsType(getNameIndex(getTypeName(library, getInterfaceBefore(type))));
+      }
+
+      int line = 0;
+      for (int member = 0; member < membersPerType; member++) {
+        // Interfaces only have instance methods, classes have a constructor, instance methods that
+        // override the ones of their super types and a static method.
+        String memberName =
+            isInterface
+                ? getInstanceMethodName(member)
+                : member == 0
+                    ? "constructor"
+                    : member == membersPerType - 1 ? "f_static__" : getInstanceMethodName(member);
+        CompactMemberInfo.Builder memberInfoBuilder =
+            CompactMemberInfo.newBuilder()
+                .setName(getNameIndex(memberName))
+                .setPublic(true)
+                .setStatic(memberName.startsWith("f_"))
+                .setJsAccessible(random.nextDouble() < JS_ACCESSIBLE_RATE)
+                .setStartPosition(FilePosition.newBuilder().setLine(line))
+                .setEndPosition(FilePosition.newBuilder().setLine(line + 5));
+        line += 6;
+        if (!isInterface) {
+          for (int i = 0; i < INVOCATIONS_PER_MEMBER; i++) {
+            memberInfoBuilder.addInvokedMethods(createInvocation());
+          }
+          if (random.nextDouble() < TYPE_REFERENCE_RATE) {
+            memberInfoBuilder.addReferencedTypes(getNameIndex(getReferencedTypeName()));
+          }
+        }
+        typeInfoBuilder.addMember(memberInfoBuilder);
+      }
+      return typeInfoBuilder.build();
+    }
+
+    private CompactMethodInvocation createInvocation() {
+      String referencedTypeName = getReferencedTypeName();
+      InvocationKind kind = InvocationKind.forNumber(random.nextInt(3));
+      String methodName;
+      switch (kind) {
+        case STATIC:
+          methodName = "f_static__";
+          break;
+        case INSTANTIATION:
+          methodName = "constructor";
+          break;
+        default:
+          methodName = getInstanceMethodName(1 + random.nextInt(membersPerType - 2));
+      }
+      return CompactMethodInvocation.newBuilder()
+          .setMethod(getNameIndex(methodName))
+          .setEnclosingType(getNameIndex(referencedTypeName))
+          .setKind(kind)
+          .build();
+    }
+
+    /** Returns the name of a class of this library or, less often, of a library before it. */
+    private String getReferencedTypeName() {
+      int referencedLibrary =
+          library > 0 && random.nextDouble() < EXTERNAL_REFERENCE_RATE
+              ? random.nextInt(library)
+              : library;
+      int referencedType = random.nextInt(typesPerLibrary);
+      if (referencedType % INTERFACE_FREQUENCY == 0) {
+        referencedType = referencedType + 1 < typesPerLibrary ? referencedType + 1 : 1;
+      }
+      return getTypeName(referencedLibrary, referencedType);
+    }
+
+    private static int getClassBefore(int type) {
+      return (type - 1) % INTERFACE_FREQUENCY == 0 ? type - 2 : type - 1;
+    }
+
+    private static int getInterfaceBefore(int type) {
+      return type - type % INTERFACE_FREQUENCY;
+    }
+
+    private static String getTypeName(int library, int type) {
+      return "lib" + library + ".T" + type;
+    }
+
+    private static String getInstanceMethodName(int member) {
+      return "m_method" + member + "__";
+    }
+
+    private int getNameIndex(String name) {
+      return indexByName.computeIfAbsent(
+          name,
+          n -> {
+            libraryInfoBuilder.addName(n);
+            return libraryInfoBuilder.getNameCount() - 1;
+          });
+    }
+  }
+}
@@ -16,14 +16,15 @@
 package com.google.j2cl.ast;
 
 import com.google.j2cl.ast.annotations.Visitable;
+import com.google.j2cl.common.SharedThreadLocal;
 
 /** Boolean literal node. */
 @Visitable
 public class BooleanLiteral extends Literal {
-  private static final ThreadLocal<BooleanLiteral> FALSE =
-      ThreadLocal.withInitial(() -> new BooleanLiteral(false));
-  private static final ThreadLocal<BooleanLiteral> TRUE =
-      ThreadLocal.withInitial(() -> new BooleanLiteral(true));
+  private static final SharedThreadLocal<BooleanLiteral> FALSE =
+      SharedThreadLocal.withInitial(() -> new BooleanLiteral(false));
+  private static final SharedThreadLocal<BooleanLiteral> TRUE =
+      SharedThreadLocal.withInitial(() -> new BooleanLiteral(true));
   private final boolean value;
 
   private BooleanLiteral(boolean value) {
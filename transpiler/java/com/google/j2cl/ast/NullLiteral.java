@@ -16,13 +16,14 @@
 package com.google.j2cl.ast;
 
 import com.google.j2cl.ast.annotations.Visitable;
+import com.google.j2cl.common.SharedThreadLocal;
 
 /** Null literal node. */
 @Visitable
 public class NullLiteral extends Literal {
 
-  private static final ThreadLocal<NullLiteral> NULL_INSTANCE =
-      ThreadLocal.withInitial(() -> new NullLiteral());
+  private static final SharedThreadLocal<NullLiteral> NULL_INSTANCE =
+      SharedThreadLocal.withInitial(() -> new NullLiteral());
 
   public static NullLiteral get() {
     return NULL_INSTANCE.get();
@@ -21,6 +21,7 @@ import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.j2cl.ast.TypeDescriptors.BootstrapType;
+import com.google.j2cl.common.SharedThreadLocal;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -302,9 +303,9 @@ public class RuntimeMethods {
         BootstrapType.NATIVE_UTIL.getDescriptor(), methodName, arguments);
   }
 
-  private static final ThreadLocal<Map<TypeDescriptor, Map<String, MethodInfo>>>
+  private static final SharedThreadLocal<Map<TypeDescriptor, Map<String, MethodInfo>>>
       runtimeMethodInfoByMethodNameByType =
-          ThreadLocal.withInitial(
+          SharedThreadLocal.withInitial(
               () ->
                   ImmutableMap.<TypeDescriptor, Map<String, MethodInfo>>builder()
                       .put(
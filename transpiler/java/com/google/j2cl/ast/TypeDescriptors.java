@@ -24,6 +24,8 @@ import com.google.common.collect.HashBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.j2cl.common.SharedThreadLocal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -74,11 +76,15 @@ public class TypeDescriptors {
    */
   public final DeclaredTypeDescriptor globalNamespace = createGlobalNativeTypeDescriptor("");
 
+  /** The well known reference types, including the boxed types, in the order they were added. */
+  private final List<DeclaredTypeDescriptor> referenceTypes = new ArrayList<>();
+
   /** Primitive type descriptors and boxed type descriptors mapping. */
   private final BiMap<PrimitiveTypeDescriptor, DeclaredTypeDescriptor> boxedTypeByPrimitiveType =
       HashBiMap.create();
 
-  private static final ThreadLocal<TypeDescriptors> typeDescriptors = new ThreadLocal<>();
+  private static final SharedThreadLocal<TypeDescriptors> typeDescriptors =
+      new SharedThreadLocal<>();
 
   private static void set(TypeDescriptors typeDescriptors) {
     checkState(
@@ -96,6 +102,14 @@ public class TypeDescriptors {
     return typeDescriptors.get() != null;
   }
 
+  /** Returns all the type descriptors held here, which passes may reference at any point. */
+  public ImmutableList<TypeDescriptor> getWellKnownTypeDescriptors() {
+    return ImmutableList.<TypeDescriptor>builder()
+        .addAll(referenceTypes)
+        .add(javaLangObjectArray, nativeFunction, nativeObject, nativeArray, globalNamespace)
+        .build();
+  }
+
   static DeclaredTypeDescriptor getBoxTypeFromPrimitiveType(PrimitiveTypeDescriptor primitiveType) {
     return get().boxedTypeByPrimitiveType.get(primitiveType);
   }
@@ -450,6 +464,7 @@ public class TypeDescriptors {
           !referenceType.isPrimitive(),
           "%s is not a reference type",
           referenceType.getQualifiedSourceName());
+      typeDescriptors.referenceTypes.add(referenceType);
       String name = referenceType.getQualifiedSourceName();
       switch (name) {
         case "java.io.Serializable":
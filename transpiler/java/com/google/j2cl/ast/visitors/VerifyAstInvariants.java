@@ -0,0 +1,305 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.ast.visitors;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.ImmutableList;
+import com.google.j2cl.ast.AbstractVisitor;
+import com.google.j2cl.ast.Block;
+import com.google.j2cl.ast.BooleanLiteral;
+import com.google.j2cl.ast.CatchClause;
+import com.google.j2cl.ast.CompilationUnit;
+import com.google.j2cl.ast.Expression;
+import com.google.j2cl.ast.ForStatement;
+import com.google.j2cl.ast.FunctionExpression;
+import com.google.j2cl.ast.MemberDescriptor;
+import com.google.j2cl.ast.Method;
+import com.google.j2cl.ast.MethodCall;
+import com.google.j2cl.ast.MethodDescriptor;
+import com.google.j2cl.ast.NewInstance;
+import com.google.j2cl.ast.Node;
+import com.google.j2cl.ast.NullLiteral;
+import com.google.j2cl.ast.NumberLiteral;
+import com.google.j2cl.ast.Statement;
+import com.google.j2cl.ast.StringLiteral;
+import com.google.j2cl.ast.TryStatement;
+import com.google.j2cl.ast.TypeDeclaration;
+import com.google.j2cl.ast.TypeDescriptor;
+import com.google.j2cl.ast.Variable;
+import com.google.j2cl.ast.VariableReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Verifies the structural invariants of the AST in a single traversal:
+ *
+ * <ul>
+ *   <li>Nodes only appear once in the AST. AST nodes with mutable state need to appear only once
+ *       in the tree, otherwise rewriting might be not correct. Descriptors, singleton literals and
+ *       value literals are exempt, as are VariableReferences which are allowed to point to the same
+ *       Variable.
+ *   <li>Method call argument counts match the method descriptor parameter counts and method
+ *       declaration parameter counts match the method descriptor.
+ *   <li>Variables are defined only once and referenced within their scopes.
+ * </ul>
+ */
+public class VerifyAstInvariants extends AbstractVisitor {
+
+  public static void applyTo(CompilationUnit compilationUnit) {
+    compilationUnit.accept(new VerifyAstInvariants());
+  }
+
+  // Keeps track of the nodes that have been found so far in the AST as well as the context of
+  // their first appearance for better error reporting. Nodes are compared by identity.
+  private final Map<Node, Node> contextByNode = new IdentityHashMap<>();
+  // Keep track of current statement for nicer error messages.
+  private final Deque<Statement> statementStack = new ArrayDeque<>();
+  // Variables that are accessible in each of the enclosing scopes. Each scope includes all the
+  // variables defined in parent scopes to make checking simpler.
+  private final Deque<Set<Variable>> scopeStack = new ArrayDeque<>();
+
+  private VerifyAstInvariants() {
+    scopeStack.push(new HashSet<>());
+  }
+
+  @Override
+  public boolean enterNode(Node node) {
+    Node context = getContext();
+    // Context might be null (e.g. for Type nodes), so an explicit check for containsKey is needed
+    // here.
+    checkState(
+        !contextByNode.containsKey(node),
+        "%s %s in %s was already seen in %s",
+        node.getClass().getSimpleName(),
+        node,
+        context,
+        contextByNode.get(node));
+    contextByNode.put(node, context);
+    return true;
+  }
+
+  @Override
+  public boolean enterMemberDescriptor(MemberDescriptor memberDescriptor) {
+    return false;
+  }
+
+  // NullLiteral is a singleton and does not need to be unique in the ast.
+  @Override
+  public boolean enterNullLiteral(NullLiteral nullLiteral) {
+    return false;
+  }
+
+  // StringLiterals is a value type and does not need to be unique in the ast.
+  @Override
+  public boolean enterStringLiteral(StringLiteral stringLiteral) {
+    return false;
+  }
+
+  // NumberLiterals are value types they need not be unique in the ast.
+  @Override
+  public boolean enterNumberLiteral(NumberLiteral numberLiteral) {
+    return false;
+  }
+
+  // BooleanLiterals true and false are singleton and does not need to be unique in the ast.
+  @Override
+  public boolean enterBooleanLiteral(BooleanLiteral booleanLiteral) {
+    return false;
+  }
+
+  // TypeDeclarations are references and can appear multiple times in the ast.
+  @Override
+  public boolean enterTypeDeclaration(TypeDeclaration typeDeclaration) {
+    return false;
+  }
+
+  // TypeDescriptors are references and can appear multiple times in the ast.
+  @Override
+  public boolean enterTypeDescriptor(TypeDescriptor typeDescriptor) {
+    return false;
+  }
+
+  @Override
+  public boolean enterVariableReference(VariableReference variableReference) {
+    // Verify that the reference is unique and that it references a variable that is in scope.
+    enterNode(variableReference);
+    checkState(
+        scopeStack.peek().contains(variableReference.getTarget()),
+        "%s in %s not defined in enclosing scope.",
+        variableReference.getTarget(),
+        getContext());
+    return false;
+  }
+
+  @Override
+  public boolean enterVariable(Variable variable) {
+    // Check that the variable is defined only once.
+    checkState(
+        scopeStack.peek().add(variable), "Variable %s already in scope.", variable.getName());
+    return super.enterVariable(variable);
+  }
+
+  @Override
+  public boolean enterStatement(Statement statement) {
+    statementStack.push(statement);
+    return true;
+  }
+
+  @Override
+  public void exitStatement(Statement statement) {
+    checkState(statementStack.pop() == statement);
+  }
+
+  @Override
+  public boolean enterForStatement(ForStatement statement) {
+    enterScope();
+    return super.enterForStatement(statement);
+  }
+
+  @Override
+  public void exitForStatement(ForStatement statement) {
+    exitScope();
+    super.exitForStatement(statement);
+  }
+
+  @Override
+  public boolean enterBlock(Block block) {
+    enterScope();
+    return super.enterBlock(block);
+  }
+
+  @Override
+  public void exitBlock(Block block) {
+    exitScope();
+    super.exitBlock(block);
+  }
+
+  @Override
+  public boolean enterTryStatement(TryStatement statement) {
+    enterScope();
+    return super.enterTryStatement(statement);
+  }
+
+  @Override
+  public void exitTryStatement(TryStatement statement) {
+    exitScope();
+    super.exitTryStatement(statement);
+  }
+
+  @Override
+  public boolean enterMethod(Method method) {
+    enterScope();
+    return super.enterMethod(method);
+  }
+
+  @Override
+  public void exitMethod(Method method) {
+    verifyParameters(method.getParameters(), method.getDescriptor());
+    exitScope();
+  }
+
+  @Override
+  public boolean enterCatchClause(CatchClause catchClause) {
+    enterScope();
+    return super.enterCatchClause(catchClause);
+  }
+
+  @Override
+  public void exitCatchClause(CatchClause catchClause) {
+    exitScope();
+  }
+
+  @Override
+  public boolean enterFunctionExpression(FunctionExpression expression) {
+    enterScope();
+    return super.enterFunctionExpression(expression);
+  }
+
+  @Override
+  public void exitFunctionExpression(FunctionExpression expression) {
+    exitScope();
+  }
+
+  @Override
+  public void exitMethodCall(MethodCall methodCall) {
+    verifyArguments(methodCall.getArguments(), methodCall.getTarget());
+  }
+
+  @Override
+  public void exitNewInstance(NewInstance newInstance) {
+    verifyArguments(newInstance.getArguments(), newInstance.getTarget());
+  }
+
+  private Node getContext() {
+    return !statementStack.isEmpty()
+        ? statementStack.peek()
+        : getCurrentMember() != null ? getCurrentMember() : getCurrentType();
+  }
+
+  private void enterScope() {
+    // Some AST nodes define scopes, i.e. blocks, for statements, method definitions.
+    scopeStack.push(new HashSet<>(scopeStack.peek()));
+  }
+
+  private void exitScope() {
+    scopeStack.pop();
+  }
+
+  private void verifyArguments(
+      List<Expression> passedArguments, MethodDescriptor methodDescriptor) {
+    ImmutableList<TypeDescriptor> declaredParameterTypes =
+        methodDescriptor.getParameterTypeDescriptors();
+    if (methodDescriptor.isJsMethodVarargs()) {
+      checkState(
+          passedArguments.size() >= declaredParameterTypes.size() - 1,
+          "Invalid method call argument count. Expected at least %s arguments but received "
+              + "%s in call to method '%s() from compilation unit %s",
+          declaredParameterTypes.size(),
+          passedArguments.size(),
+          methodDescriptor.getName(),
+          getCurrentCompilationUnit().getName());
+    } else {
+      checkState(
+          passedArguments.size() == declaredParameterTypes.size(),
+          "Invalid method call argument count. Expected %s arguments but received "
+              + "%s in call to method '%s() from compilation unit %s",
+          declaredParameterTypes.size(),
+          passedArguments.size(),
+          methodDescriptor.getName(),
+          getCurrentCompilationUnit().getName());
+    }
+  }
+
+  private void verifyParameters(
+      List<Variable> declaredParameters, MethodDescriptor methodDescriptor) {
+    ImmutableList<TypeDescriptor> declaredParameterTypes =
+        methodDescriptor.getParameterTypeDescriptors();
+    checkState(
+        declaredParameters.size() == declaredParameterTypes.size(),
+        "Invalid method call argument count. Expected %s arguments but received "
+            + "%s in call to method '%s() from compilation unit %s",
+        declaredParameterTypes.size(),
+        declaredParameters.size(),
+        methodDescriptor.getName(),
+        getCurrentCompilationUnit().getName());
+  }
+}
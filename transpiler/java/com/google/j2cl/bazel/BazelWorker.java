@@ -17,8 +17,12 @@ package com.google.j2cl.bazel;
 
 
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.io.BaseEncoding;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.devtools.build.lib.worker.WorkerProtocol.Input;
 import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
 import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
 import com.google.j2cl.common.Problems;
@@ -30,6 +34,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -44,6 +53,25 @@ public abstract class BazelWorker {
 
   protected abstract Problems run();
 
+  /**
+   * Fraction of the maximum heap size above which a gc is requested between persistent worker
+   * requests. Below it, the garbage left by a request is collected as part of normal allocation.
+   */
+  private static final double GC_HEAP_USAGE_THRESHOLD = 0.7;
+
+  /** Maximum number of multiplex requests that are processed concurrently. */
+  private static final int MAX_CONCURRENT_REQUESTS = Runtime.getRuntime().availableProcessors();
+
+  private Map<String, String> inputDigestByPath = ImmutableMap.of();
+
+  /**
+   * Returns the opaque content digests, encoded as hex strings, of the inputs of the current
+   * request keyed by path. Only available when running as a persistent worker, empty otherwise.
+   */
+  protected Map<String, String> getInputDigestByPath() {
+    return inputDigestByPath;
+  }
+
   /**
    * Process the request described by the arguments. Note that you must output errors and warnings
    * via {@link Problems} to avoid interrupting the worker protocol which occurs over stdout.
@@ -83,31 +111,117 @@ public abstract class BazelWorker {
   }
 
   private static void runPersistentWorker(Supplier<BazelWorker> workerSupplier) throws IOException {
-    while (true) {
-      WorkRequest request = WorkRequest.parseDelimitedFrom(System.in);
-
-      if (request == null) {
-        break;
+    ExecutorService multiplexExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS);
+    AtomicInteger requestsInFlight = new AtomicInteger();
+    try {
+      while (true) {
+        WorkRequest request = WorkRequest.parseDelimitedFrom(System.in);
+
+        if (request == null) {
+          break;
+        }
+
+        if (request.getRequestId() == 0) {
+          // Singleplex request, it must be processed alone.
+          writeResponse(processWorkRequest(request, workerSupplier));
+          collectGarbageIfNeeded();
+          continue;
+        }
+
+        // Multiplex request, run it concurrently with the others. Transpilations do not share
+        // mutable state, other than the caches that are explicitly safe for concurrent use.
+        requestsInFlight.incrementAndGet();
+        multiplexExecutor.execute(
+            () -> {
+              WorkResponse response;
+              try {
+                response = processWorkRequest(request, workerSupplier);
+              } catch (Throwable e) {
+                // An uncaught exception would leave Bazel waiting for a response forever.
+                response = createErrorResponse(request, e);
+              }
+              try {
+                writeResponse(response);
+              } catch (IOException e) {
+                // The response is lost and Bazel would wait for it forever. Exit instead, so that
+                // Bazel sees the worker die and restarts it.
+                System.err.println(
+                    "Could not write the response to request " + request.getRequestId() + ":");
+                e.printStackTrace();
+                System.exit(1);
+              }
+              if (requestsInFlight.decrementAndGet() == 0) {
+                collectGarbageIfNeeded();
+              }
+            });
       }
+    } finally {
+      // Let the requests in flight complete and send their responses.
+      MoreExecutors.shutdownAndAwaitTermination(
+          multiplexExecutor, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+  }
 
-      StringWriter sw = new StringWriter();
-      PrintWriter pw = new PrintWriter(sw);
-      String[] args = request.getArgumentsList().toArray(new String[0]);
-      int exitCode = workerSupplier.get().processRequest(args).reportAndGetExitCode(pw);
-      WorkResponse.newBuilder()
-          .setOutput(sw.toString())
-          .setExitCode(exitCode)
-          .build()
-          .writeDelimitedTo(System.out);
+  private static WorkResponse processWorkRequest(
+      WorkRequest request, Supplier<BazelWorker> workerSupplier) {
+    StringWriter sw = new StringWriter();
+    PrintWriter pw = new PrintWriter(sw);
+    String[] args = request.getArgumentsList().toArray(new String[0]);
+    BazelWorker worker = workerSupplier.get();
+    worker.inputDigestByPath = getInputDigestByPath(request);
+    int exitCode = worker.processRequest(args).reportAndGetExitCode(pw);
+    return WorkResponse.newBuilder()
+        .setOutput(sw.toString())
+        .setExitCode(exitCode)
+        .setRequestId(request.getRequestId())
+        .build();
+  }
+
+  private static WorkResponse createErrorResponse(WorkRequest request, Throwable e) {
+    StringWriter sw = new StringWriter();
+    e.printStackTrace(new PrintWriter(sw));
+    return WorkResponse.newBuilder()
+        .setOutput(sw.toString())
+        .setExitCode(1)
+        .setRequestId(request.getRequestId())
+        .build();
+  }
+
+  private static void writeResponse(WorkResponse response) throws IOException {
+    // Responses to multiplex requests are written from several threads.
+    synchronized (System.out) {
+      response.writeDelimitedTo(System.out);
       System.out.flush();
+    }
+  }
 
-      // Hint to the system that now would be a good time to run a gc.  After a compile
-      // completes lots of objects should be available for collection and it should be cheap to
-      // collect them.
+  private static void collectGarbageIfNeeded() {
+    // Hint to the system that now would be a good time to run a gc if the heap is getting full.
+    // After a compile completes lots of objects should be available for collection and it
+    // should be cheap to collect them; but forcing a full collection after every request is
+    // wasteful when there is plenty of headroom left.
+    if (isHeapUsageAboveThreshold()) {
       System.gc();
     }
   }
 
+  private static Map<String, String> getInputDigestByPath(WorkRequest request) {
+    ImmutableMap.Builder<String, String> inputDigestByPath = ImmutableMap.builder();
+    for (Input input : request.getInputsList()) {
+      if (!input.getDigest().isEmpty()) {
+        String digest = BaseEncoding.base16().lowerCase().encode(input.getDigest().toByteArray());
+        inputDigestByPath.put(input.getPath(), digest);
+      }
+    }
+    return inputDigestByPath.build();
+  }
+
+  private static boolean isHeapUsageAboveThreshold() {
+    Runtime runtime = Runtime.getRuntime();
+    long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+    return usedMemory > runtime.maxMemory() * GC_HEAP_USAGE_THRESHOLD;
+  }
+
   /**
    * Loads a potential flag file and returns the flags. Flag files are only allowed as the last
    * parameter and need to start with an '@'.
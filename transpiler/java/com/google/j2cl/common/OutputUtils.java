@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.j2cl.common;
+
+import com.google.j2cl.common.Problems.FatalError;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Utilities to write the output files of the tools either to a directory or to a zip file. */
+public class OutputUtils {
+
+  /** The destination of the output files. Files can be written concurrently. */
+  public interface Output extends Closeable {
+    /** Writes {@code content} to the file at {@code path}, relative to the output root. */
+    void write(String path, byte[] content, Problems problems);
+
+    default void write(String path, String content, Problems problems) {
+      write(path, content.getBytes(StandardCharsets.UTF_8), problems);
+    }
+
+    /** Copies the file at {@code from} to the file at {@code path}, relative to the output root. */
+    void copyFile(Path from, String path, Problems problems);
+
+    /** Completes the output; no more files can be written afterwards. */
+    @Override
+    void close() throws IOException;
+  }
+
+  /**
+   * Returns an output that writes to the zip file {@code output} if it ends in {@code .zip} or
+   * {@code .jar}, or to the directory {@code output} otherwise.
+   */
+  public static Output initOutput(String output, Problems problems) {
+    return output.endsWith(".zip") || output.endsWith(".jar")
+        ? initZipOutput(output, /* storeOnly= */ false, problems)
+        : initDirectoryOutput(output, problems);
+  }
+
+  public static Output initDirectoryOutput(String output, Problems problems) {
+    Path outputPath = Paths.get(output);
+    if (Files.isRegularFile(outputPath)) {
+      problems.fatal(FatalError.OUTPUT_LOCATION, outputPath);
+    }
+    return new DirectoryOutput(outputPath);
+  }
+
+  /**
+   * Returns an output that writes the zip file {@code output}.
+   *
+   * <p>Entries are written to the zip as soon as they are written to the output, in that order, so
+   * the zip is deterministic as long as the files are written in a deterministic order; all entries
+   * have the same timestamp. With {@code storeOnly} the entries are not compressed, which is faster
+   * when the zip is only an intermediate artifact.
+   */
+  public static Output initZipOutput(String output, boolean storeOnly, Problems problems) {
+    Path outputPath = Paths.get(output);
+    if (Files.isDirectory(outputPath)) {
+      problems.fatal(FatalError.OUTPUT_LOCATION, outputPath);
+    }
+    try {
+      return new ZipOutput(
+          new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(outputPath))),
+          storeOnly);
+    } catch (IOException e) {
+      problems.fatal(FatalError.CANNOT_CREATE_ZIP, outputPath, e.getMessage());
+      return null;
+    }
+  }
+
+  /** Paths are always relative to the output root, even if they start with a '/'. */
+  private static String toRelativePath(String path) {
+    return path.startsWith("/") ? path.substring(1) : path;
+  }
+
+  private static class DirectoryOutput implements Output {
+    private final Path root;
+
+    private DirectoryOutput(Path root) {
+      this.root = root;
+    }
+
+    @Override
+    public void write(String path, byte[] content, Problems problems) {
+      J2clUtils.writeToFile(root.resolve(toRelativePath(path)), content, problems);
+    }
+
+    @Override
+    public void copyFile(Path from, String path, Problems problems) {
+      J2clUtils.copyFile(from, root.resolve(toRelativePath(path)), problems);
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /**
+   * Streams the files to a zip file. Unlike a zip file system there are no directories to create
+   * or timestamps to reset per file, and the content is not buffered until the zip is closed.
+   */
+  private static class ZipOutput implements Output {
+    /**
+     * The timestamp of all entries; the same one used by Bazel for the jars it creates. DOS
+     * timestamps are in local time, hence the use of the default time zone.
+     */
+    private static final long ENTRY_TIMESTAMP =
+        LocalDateTime.of(2010, 1, 1, 0, 0, 0)
+            .atZone(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli();
+
+    private static final byte[] DIRECTORY = new byte[0];
+
+    private final ZipOutputStream zipOutputStream;
+    private final boolean storeOnly;
+    // The CRC of the entries that were written, to tell apart the duplicate entries that can be
+    // dropped from the ones that would need to replace an entry that was already written.
+    private final Map<String, Long> crcByEntryName = new HashMap<>();
+
+    private ZipOutput(ZipOutputStream zipOutputStream, boolean storeOnly) {
+      this.zipOutputStream = zipOutputStream;
+      this.storeOnly = storeOnly;
+    }
+
+    @Override
+    public synchronized void write(String path, byte[] content, Problems problems) {
+      String entryName = toRelativePath(path);
+      Long previousCrc = crcByEntryName.get(entryName);
+      if (previousCrc != null) {
+        if (previousCrc != computeCrc(content)) {
+          problems.error("Output file '%s' was written twice with different content.", entryName);
+        }
+        return;
+      }
+
+      // Zip file systems create entries for the directories, keep doing so for consumers that
+      // might rely on them.
+      for (int i = entryName.indexOf('/'); i != -1; i = entryName.indexOf('/', i + 1)) {
+        String directoryName = entryName.substring(0, i + 1);
+        if (!crcByEntryName.containsKey(directoryName)) {
+          writeEntry(directoryName, DIRECTORY, problems);
+        }
+      }
+      writeEntry(entryName, content, problems);
+    }
+
+    private void writeEntry(String entryName, byte[] content, Problems problems) {
+      long crc = computeCrc(content);
+      crcByEntryName.put(entryName, crc);
+      try {
+        zipOutputStream.putNextEntry(createZipEntry(entryName, content, crc));
+        zipOutputStream.write(content);
+        zipOutputStream.closeEntry();
+      } catch (IOException e) {
+        problems.fatal(FatalError.CANNOT_WRITE_FILE, e.toString());
+      }
+    }
+
+    @Override
+    public void copyFile(Path from, String path, Problems problems) {
+      try {
+        write(path, Files.readAllBytes(from), problems);
+      } catch (IOException e) {
+        problems.fatal(FatalError.CANNOT_COPY_FILE, e.toString());
+      }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      zipOutputStream.close();
+    }
+
+    private ZipEntry createZipEntry(String name, byte[] content, long crc) {
+      ZipEntry zipEntry = new ZipEntry(name);
+      zipEntry.setTime(ENTRY_TIMESTAMP);
+      if (storeOnly || content == DIRECTORY) {
+        zipEntry.setMethod(ZipEntry.STORED);
+        zipEntry.setSize(content.length);
+        zipEntry.setCompressedSize(content.length);
+        zipEntry.setCrc(crc);
+      }
+      return zipEntry;
+    }
+
+    private static long computeCrc(byte[] content) {
+      CRC32 crc = new CRC32();
+      crc.update(content);
+      return crc.getValue();
+    }
+  }
+}
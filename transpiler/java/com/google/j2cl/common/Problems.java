@@ -19,6 +19,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.Collection;
@@ -87,7 +88,10 @@ public class Problems {
     }
   }
 
-  private final Multimap<Severity, String> problemsBySeverity = LinkedHashMultimap.create();
+  // Problems can be reported from the worker threads of a transpilation. Iterating over the
+  // synchronized multimap requires holding its lock.
+  private final Multimap<Severity, String> problemsBySeverity =
+      Multimaps.synchronizedSetMultimap(LinkedHashMultimap.create());
 
   public void fatal(FatalError fatalError, Object... args) {
     checkArgument(fatalError.getNumberOfArguments() == args.length);
@@ -144,6 +148,13 @@ public class Problems {
     problemsBySeverity.put(Severity.INFO, String.format(detailMessage, args));
   }
 
+  /** Reports all the problems in {@code other}, in the order they were reported there. */
+  public void addAll(Problems other) {
+    synchronized (other.problemsBySeverity) {
+      problemsBySeverity.putAll(other.problemsBySeverity);
+    }
+  }
+
   /** Prints all problems to provided output and returns the exit code. */
   public int reportAndGetExitCode(PrintStream output) {
     return reportAndGetExitCode(new PrintWriter(output, true));
@@ -151,17 +162,19 @@ public class Problems {
 
   /** Prints all problems to provided output and returns the exit code. */
   public int reportAndGetExitCode(PrintWriter output) {
-    for (Map.Entry<Severity, String> severityMessagePair : problemsBySeverity.entries()) {
-      output.println(severityMessagePair.getValue());
+    synchronized (problemsBySeverity) {
+      for (Map.Entry<Severity, String> severityMessagePair : problemsBySeverity.entries()) {
+        output.println(severityMessagePair.getValue());
+      }
+      if (hasErrors() || hasWarnings()) {
+        output.printf(
+            "%d error(s), %d warning(s).\n",
+            problemsBySeverity.get(Severity.ERROR).size(),
+            problemsBySeverity.get(Severity.WARNING).size());
+      }
+
+      return hasErrors() ? 1 : 0;
     }
-    if (hasErrors() || hasWarnings()) {
-      output.printf(
-          "%d error(s), %d warning(s).\n",
-          problemsBySeverity.get(Severity.ERROR).size(),
-          problemsBySeverity.get(Severity.WARNING).size());
-    }
-
-    return hasErrors() ? 1 : 0;
   }
 
   public boolean hasWarnings() {
@@ -207,12 +220,14 @@ public class Problems {
   }
 
   private List<String> getMessages(Collection<Severity> severities) {
-    return problemsBySeverity
-        .entries()
-        .stream()
-        .filter(e -> severities.contains(e.getKey()))
-        .map(Map.Entry::getValue)
-        .collect(Collectors.toList());
+    synchronized (problemsBySeverity) {
+      return problemsBySeverity
+          .entries()
+          .stream()
+          .filter(e -> severities.contains(e.getKey()))
+          .map(Map.Entry::getValue)
+          .collect(Collectors.toList());
+    }
   }
 
   /**
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.common;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A thread local variable whose values can be shared with worker threads.
+ *
+ * <p>The transpiler keeps its global state (interners, well known type descriptors, etc) in thread
+ * locals so that independent transpilations can run concurrently in the same JVM. Work that is
+ * split across several threads within a single transpilation needs to see the same state; tasks
+ * wrapped with {@link #propagate} run with the values of the thread that created them.
+ */
+public final class SharedThreadLocal<T> {
+
+  private static final ThreadLocal<Map<SharedThreadLocal<?>, Object>> valuesByThreadLocal =
+      ThreadLocal.withInitial(ConcurrentHashMap::new);
+
+  public static <T> SharedThreadLocal<T> withInitial(Supplier<? extends T> initialValueSupplier) {
+    return new SharedThreadLocal<>(initialValueSupplier);
+  }
+
+  private final Supplier<? extends T> initialValueSupplier;
+
+  public SharedThreadLocal() {
+    this(() -> null);
+  }
+
+  private SharedThreadLocal(Supplier<? extends T> initialValueSupplier) {
+    this.initialValueSupplier = initialValueSupplier;
+  }
+
+  @SuppressWarnings("unchecked")
+  public T get() {
+    Map<SharedThreadLocal<?>, Object> values = valuesByThreadLocal.get();
+    Object value = values.get(this);
+    if (value != null) {
+      return (T) value;
+    }
+
+    // Do not use computeIfAbsent, initial value suppliers might access other shared thread locals
+    // and recursive updates are not allowed in ConcurrentHashMap.
+    T initialValue = initialValueSupplier.get();
+    if (initialValue == null) {
+      return null;
+    }
+    value = values.putIfAbsent(this, initialValue);
+    return value != null ? (T) value : initialValue;
+  }
+
+  public void set(T value) {
+    if (value == null) {
+      remove();
+      return;
+    }
+    valuesByThreadLocal.get().put(this, value);
+  }
+
+  public void remove() {
+    valuesByThreadLocal.get().remove(this);
+  }
+
+  /**
+   * Returns a task that runs {@code callable} sharing the values of all shared thread locals with
+   * the current thread.
+   */
+  public static <V> Callable<V> propagate(Callable<V> callable) {
+    Map<SharedThreadLocal<?>, Object> values = valuesByThreadLocal.get();
+    return () -> {
+      Map<SharedThreadLocal<?>, Object> previousValues = valuesByThreadLocal.get();
+      valuesByThreadLocal.set(values);
+      try {
+        return callable.call();
+      } finally {
+        valuesByThreadLocal.set(previousValues);
+      }
+    };
+  }
+
+  /**
+   * Returns a task that runs {@code runnable} sharing the values of all shared thread locals with
+   * the current thread.
+   */
+  public static Runnable propagate(Runnable runnable) {
+    Callable<Void> callable =
+        propagate(
+            () -> {
+              runnable.run();
+              return null;
+            });
+    return () -> {
+      try {
+        callable.call();
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+    };
+  }
+}
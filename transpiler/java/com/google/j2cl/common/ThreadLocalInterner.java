@@ -18,12 +18,17 @@ package com.google.j2cl.common;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
 
-/** An interner that provides per thread isolation. */
+/**
+ * An interner that provides per thread isolation.
+ *
+ * <p>Interned instances are shared with the worker threads of a transpilation (see {@link
+ * SharedThreadLocal#propagate}) so that reference equality holds across those threads.
+ */
 // TODO(rlubble): This class should extend com.google.common.collect.Interner<T> but that class
 // is marked @GwtIncompatible.
 public class ThreadLocalInterner<T> {
-  private final ThreadLocal<Interner<T>> interner =
-      ThreadLocal.withInitial(Interners::newStrongInterner);
+  private final SharedThreadLocal<Interner<T>> interner =
+      SharedThreadLocal.withInitial(Interners::newStrongInterner);
 
   public T intern(T t) {
     return interner.get().intern(t);
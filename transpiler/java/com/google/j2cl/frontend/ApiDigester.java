@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.frontend;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.IAnnotationBinding;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.Type;
+
+/**
+ * Computes digests of the APIs that a compilation unit depends on.
+ *
+ * <p>The translation of a compilation unit is determined by its own source and by the API of the
+ * types it references, directly or through their super types and enclosing types, whether they are
+ * in the same library or in the class path. Two units with the same source and the same dependency
+ * digest translate to the same output, which allows reusing the output of previous transpilations.
+ */
+public final class ApiDigester {
+
+  private final Iterable<ITypeBinding> wellKnownTypeBindings;
+  private final Map<String, HashCode> apiDigestByTypeKey = new HashMap<>();
+
+  public ApiDigester(CompilationUnitsAndTypeBindings compilationUnitsAndTypeBindings) {
+    this.wellKnownTypeBindings = compilationUnitsAndTypeBindings.getTypeBindings();
+  }
+
+  /** Returns the digest of the APIs {@code compilationUnit} depends on. */
+  public HashCode digestDependencies(CompilationUnit compilationUnit) {
+    Set<ITypeBinding> referencedTypes = new LinkedHashSet<>();
+    wellKnownTypeBindings.forEach(referencedTypes::add);
+    compilationUnit.accept(
+        new ASTVisitor() {
+          @Override
+          public void preVisit(ASTNode node) {
+            if (node instanceof Expression) {
+              Expression expression = (Expression) node;
+              referencedTypes.add(expression.resolveTypeBinding());
+              if (expression.resolveBoxing() || expression.resolveUnboxing()) {
+                // The boxed type is only implicitly referenced.
+                ITypeBinding typeBinding = expression.resolveTypeBinding();
+                if (typeBinding != null) {
+                  referencedTypes.add(
+                      node.getAST().resolveWellKnownType(getBoxedTypeName(typeBinding)));
+                }
+              }
+            }
+            if (node instanceof Type) {
+              referencedTypes.add(((Type) node).resolveBinding());
+            }
+            if (node instanceof Name) {
+              addReferencedTypes(((Name) node).resolveBinding(), referencedTypes);
+            }
+          }
+        });
+
+    // Sort by key so that the digest does not depend on the traversal order.
+    Map<String, HashCode> apiDigestByReferencedTypeKey = new TreeMap<>();
+    Deque<ITypeBinding> pendingTypes = new ArrayDeque<>(referencedTypes);
+    while (!pendingTypes.isEmpty()) {
+      ITypeBinding typeBinding = toDeclaration(pendingTypes.pop());
+      if (typeBinding == null
+          || typeBinding.isLocal()
+          || typeBinding.isAnonymous()
+          || apiDigestByReferencedTypeKey.containsKey(typeBinding.getKey())) {
+        // Local and anonymous types are only referenced from within the unit that declares them.
+        continue;
+      }
+      apiDigestByReferencedTypeKey.put(typeBinding.getKey(), getApiDigest(typeBinding));
+
+      pendingTypes.add(typeBinding.getSuperclass());
+      pendingTypes.addAll(Arrays.asList(typeBinding.getInterfaces()));
+      pendingTypes.add(typeBinding.getDeclaringClass());
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    apiDigestByReferencedTypeKey.forEach(
+        (key, digest) -> hasher.putString(key, UTF_8).putBytes(digest.asBytes()));
+    return hasher.hash();
+  }
+
+  private static void addReferencedTypes(IBinding binding, Set<ITypeBinding> referencedTypes) {
+    if (binding instanceof ITypeBinding) {
+      referencedTypes.add((ITypeBinding) binding);
+    } else if (binding instanceof IMethodBinding) {
+      IMethodBinding methodBinding = (IMethodBinding) binding;
+      referencedTypes.add(methodBinding.getDeclaringClass());
+      referencedTypes.add(methodBinding.getReturnType());
+      referencedTypes.addAll(Arrays.asList(methodBinding.getParameterTypes()));
+    } else if (binding instanceof IVariableBinding) {
+      IVariableBinding variableBinding = (IVariableBinding) binding;
+      referencedTypes.add(variableBinding.getDeclaringClass());
+      referencedTypes.add(variableBinding.getType());
+    }
+  }
+
+  /** Returns the declaration of the type whose API determines the uses of {@code typeBinding}. */
+  private static ITypeBinding toDeclaration(ITypeBinding typeBinding) {
+    if (typeBinding == null || typeBinding.isPrimitive() || typeBinding.isNullType()) {
+      return null;
+    }
+    if (typeBinding.isArray()) {
+      return toDeclaration(typeBinding.getElementType());
+    }
+    if (typeBinding.isTypeVariable()
+        || typeBinding.isCapture()
+        || typeBinding.isWildcardType()
+        || typeBinding.isIntersectionType()) {
+      return toDeclaration(typeBinding.getErasure());
+    }
+    return typeBinding.getTypeDeclaration();
+  }
+
+  private HashCode getApiDigest(ITypeBinding typeBinding) {
+    return apiDigestByTypeKey.computeIfAbsent(
+        typeBinding.getKey(), k -> computeApiDigest(typeBinding));
+  }
+
+  private static HashCode computeApiDigest(ITypeBinding typeBinding) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(typeBinding.getKey(), UTF_8).putInt(typeBinding.getModifiers());
+    putAnnotations(hasher, typeBinding.getAnnotations());
+    if (!typeBinding.isFromSource()) {
+      // The namespace of types in the class path might be set in a package-info class. Source
+      // package-info files are part of the sources, which are accounted for separately.
+      ITypeBinding topLevelTypeBinding = JdtUtils.toTopLevelTypeBinding(typeBinding);
+      putString(
+          hasher,
+          PackageInfoCache.get()
+              .getJsNamespace(JdtUtils.getBinaryNameFromTypeBinding(topLevelTypeBinding)));
+    }
+    for (ITypeBinding superTypeBinding : typeBinding.getInterfaces()) {
+      hasher.putString(superTypeBinding.getKey(), UTF_8);
+    }
+    if (typeBinding.getSuperclass() != null) {
+      hasher.putString(typeBinding.getSuperclass().getKey(), UTF_8);
+    }
+    for (ITypeBinding typeParameter : typeBinding.getTypeParameters()) {
+      hasher.putString(typeParameter.getKey(), UTF_8);
+      for (ITypeBinding bound : typeParameter.getTypeBounds()) {
+        hasher.putString(bound.getKey(), UTF_8);
+      }
+    }
+    for (ITypeBinding memberType : typeBinding.getDeclaredTypes()) {
+      hasher.putString(memberType.getKey(), UTF_8).putInt(memberType.getModifiers());
+    }
+    for (IVariableBinding fieldBinding : typeBinding.getDeclaredFields()) {
+      hasher.putString(fieldBinding.getKey(), UTF_8).putInt(fieldBinding.getModifiers());
+      putAnnotations(hasher, fieldBinding.getAnnotations());
+      // Compile time constants are inlined at their uses.
+      putString(hasher, String.valueOf(fieldBinding.getConstantValue()));
+    }
+    for (IMethodBinding methodBinding : typeBinding.getDeclaredMethods()) {
+      hasher.putString(methodBinding.getKey(), UTF_8).putInt(methodBinding.getModifiers());
+      putAnnotations(hasher, methodBinding.getAnnotations());
+      for (int i = 0; i < methodBinding.getParameterTypes().length; i++) {
+        putAnnotations(hasher, methodBinding.getParameterAnnotations(i));
+      }
+      putString(hasher, String.valueOf(methodBinding.getDefaultValue()));
+    }
+    return hasher.hash();
+  }
+
+  private static void putAnnotations(Hasher hasher, IAnnotationBinding[] annotations) {
+    hasher.putInt(annotations.length);
+    for (IAnnotationBinding annotation : annotations) {
+      // The string representation includes the annotation type and the values of its elements.
+      putString(hasher, annotation.toString());
+    }
+  }
+
+  private static void putString(Hasher hasher, String string) {
+    if (string == null) {
+      hasher.putInt(-1);
+      return;
+    }
+    hasher.putInt(string.length()).putString(string, UTF_8);
+  }
+
+  private static String getBoxedTypeName(ITypeBinding typeBinding) {
+    switch (typeBinding.getName()) {
+      case "boolean":
+        return "java.lang.Boolean";
+      case "byte":
+        return "java.lang.Byte";
+      case "char":
+        return "java.lang.Character";
+      case "double":
+        return "java.lang.Double";
+      case "float":
+        return "java.lang.Float";
+      case "int":
+        return "java.lang.Integer";
+      case "long":
+        return "java.lang.Long";
+      case "short":
+        return "java.lang.Short";
+      default:
+        // Unboxing expressions have the boxed type already.
+        return typeBinding.getQualifiedName();
+    }
+  }
+}
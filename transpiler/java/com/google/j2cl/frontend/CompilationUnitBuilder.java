@@ -99,6 +99,7 @@ import com.google.j2cl.common.SourcePosition;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -2010,20 +2011,22 @@ public class CompilationUnitBuilder {
 
   private static void sortPackageInfoFirst(
       List<Entry<String, org.eclipse.jdt.core.dom.CompilationUnit>> entries) {
-    // Ensure that all source package-info classes come before all other classes so that the
-    // freshness of the PackageInfoCache can be trusted.
-    Collections.sort(
-        entries,
-        comparingByKey(
-            (thisFilePath, thatFilePath) -> {
-              boolean thisIsPackageInfo = thisFilePath.endsWith("package-info.java");
-              boolean thatIsPackageInfo = thatFilePath.endsWith("package-info.java");
-              return ComparisonChain.start()
-                  .compareTrueFirst(thisIsPackageInfo, thatIsPackageInfo)
-                  .compare(thisFilePath, thatFilePath)
-                  .result();
-            }));
+    Collections.sort(entries, comparingByKey(BUILD_ORDER));
   }
 
+  /**
+   * The order in which compilation units are built, by file path. Source package-info classes come
+   * before all other classes so that the freshness of the PackageInfoCache can be trusted.
+   */
+  public static final Comparator<String> BUILD_ORDER =
+      (thisFilePath, thatFilePath) -> {
+        boolean thisIsPackageInfo = thisFilePath.endsWith("package-info.java");
+        boolean thatIsPackageInfo = thatFilePath.endsWith("package-info.java");
+        return ComparisonChain.start()
+            .compareTrueFirst(thisIsPackageInfo, thatIsPackageInfo)
+            .compare(thisFilePath, thatFilePath)
+            .result();
+      };
+
   private CompilationUnitBuilder() {}
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.frontend;
+
+import com.google.j2cl.ast.AbstractVisitor;
+import com.google.j2cl.ast.ArrayTypeDescriptor;
+import com.google.j2cl.ast.CompilationUnit;
+import com.google.j2cl.ast.DeclaredTypeDescriptor;
+import com.google.j2cl.ast.FieldDescriptor;
+import com.google.j2cl.ast.IntersectionTypeDescriptor;
+import com.google.j2cl.ast.MemberDescriptor;
+import com.google.j2cl.ast.MethodDescriptor;
+import com.google.j2cl.ast.TypeDeclaration;
+import com.google.j2cl.ast.TypeDescriptor;
+import com.google.j2cl.ast.TypeDescriptors;
+import com.google.j2cl.ast.TypeVariable;
+import com.google.j2cl.ast.UnionTypeDescriptor;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Forces the lazily computed properties of all the descriptors that are reachable from a set of
+ * compilation units or from the well known types in {@link TypeDescriptors}.
+ *
+ * <p>Some descriptor properties are computed on demand from JDT bindings (see {@link
+ * TypeDeclaration.DescriptorFactory}), and JDT bindings are not safe to use from multiple threads.
+ * Once the descriptors are preloaded the compilation units can be processed concurrently without
+ * reaching back into JDT. The well known types are included since passes synthesize references to
+ * them and their members (e.g. {@code Integer.valueOf} when inserting boxing conversions) even if
+ * the units do not refer to them.
+ *
+ * <p>The preloading must cover every descriptor the workers can reach. Computing a property from
+ * JDT bindings on a thread other than the one that parsed the sources fails.
+ */
+public final class DescriptorPreloader {
+
+  public static void preload(List<CompilationUnit> compilationUnits) {
+    DescriptorPreloader preloader = new DescriptorPreloader();
+    preloader.enqueueAll(TypeDescriptors.get().getWellKnownTypeDescriptors());
+    for (CompilationUnit compilationUnit : compilationUnits) {
+      compilationUnit.accept(
+          new AbstractVisitor() {
+            @Override
+            public boolean enterTypeDeclaration(TypeDeclaration typeDeclaration) {
+              preloader.enqueue(typeDeclaration);
+              return false;
+            }
+
+            @Override
+            public boolean enterTypeDescriptor(TypeDescriptor typeDescriptor) {
+              preloader.enqueue(typeDescriptor);
+              return false;
+            }
+
+            @Override
+            public boolean enterMemberDescriptor(MemberDescriptor memberDescriptor) {
+              preloader.enqueue(memberDescriptor);
+              return false;
+            }
+          });
+    }
+    preloader.preloadPending();
+  }
+
+  private final Set<Object> seen = new HashSet<>();
+  private final Deque<Object> pending = new ArrayDeque<>();
+
+  private void enqueue(Object descriptor) {
+    if (descriptor != null && seen.add(descriptor)) {
+      pending.add(descriptor);
+    }
+  }
+
+  private void enqueueAll(Collection<?> descriptors) {
+    descriptors.forEach(this::enqueue);
+  }
+
+  private void preloadPending() {
+    while (!pending.isEmpty()) {
+      Object descriptor = pending.poll();
+      if (descriptor instanceof TypeDeclaration) {
+        preload((TypeDeclaration) descriptor);
+      } else if (descriptor instanceof DeclaredTypeDescriptor) {
+        preload((DeclaredTypeDescriptor) descriptor);
+      } else if (descriptor instanceof ArrayTypeDescriptor) {
+        enqueue(((ArrayTypeDescriptor) descriptor).getComponentTypeDescriptor());
+      } else if (descriptor instanceof TypeVariable) {
+        enqueue(((TypeVariable) descriptor).getBoundTypeDescriptor());
+      } else if (descriptor instanceof IntersectionTypeDescriptor) {
+        enqueueAll(((IntersectionTypeDescriptor) descriptor).getIntersectionTypeDescriptors());
+      } else if (descriptor instanceof UnionTypeDescriptor) {
+        enqueueAll(((UnionTypeDescriptor) descriptor).getUnionTypeDescriptors());
+      } else if (descriptor instanceof MethodDescriptor) {
+        preload((MethodDescriptor) descriptor);
+      } else if (descriptor instanceof FieldDescriptor) {
+        FieldDescriptor fieldDescriptor = (FieldDescriptor) descriptor;
+        enqueue(fieldDescriptor.getEnclosingTypeDescriptor());
+        enqueue(fieldDescriptor.getTypeDescriptor());
+        enqueue(fieldDescriptor.getDeclarationDescriptor());
+      }
+    }
+  }
+
+  private void preload(TypeDeclaration typeDeclaration) {
+    enqueue(typeDeclaration.getEnclosingTypeDeclaration());
+    enqueue(typeDeclaration.toUnparameterizedTypeDescriptor());
+    enqueue(typeDeclaration.getSuperTypeDescriptor());
+    enqueueAll(typeDeclaration.getInterfaceTypeDescriptors());
+    enqueueAll(typeDeclaration.getTypeParameterDescriptors());
+    enqueueAll(typeDeclaration.getDeclaredMethodDescriptors());
+    enqueueAll(typeDeclaration.getDeclaredFieldDescriptors());
+  }
+
+  private void preload(DeclaredTypeDescriptor typeDescriptor) {
+    enqueue(typeDescriptor.getTypeDeclaration());
+    enqueue(typeDescriptor.getEnclosingTypeDescriptor());
+    enqueue(typeDescriptor.getSuperTypeDescriptor());
+    enqueueAll(typeDescriptor.getInterfaceTypeDescriptors());
+    enqueueAll(typeDescriptor.getTypeArgumentDescriptors());
+    enqueueAll(typeDescriptor.getDeclaredMethodDescriptors());
+    enqueueAll(typeDescriptor.getDeclaredFieldDescriptors());
+    enqueue(typeDescriptor.getSingleAbstractMethodDescriptor());
+    enqueue(typeDescriptor.getJsFunctionMethodDescriptor());
+  }
+
+  private void preload(MethodDescriptor methodDescriptor) {
+    enqueue(methodDescriptor.getEnclosingTypeDescriptor());
+    enqueue(methodDescriptor.getDeclarationDescriptor());
+    enqueue(methodDescriptor.getReturnTypeDescriptor());
+    enqueueAll(methodDescriptor.getParameterTypeDescriptors());
+    enqueueAll(methodDescriptor.getTypeParameterTypeDescriptors());
+  }
+
+  private DescriptorPreloader() {}
+}
@@ -15,21 +15,33 @@
  */
 package com.google.j2cl.frontend;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.stream.Collectors.toMap;
+
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.MoreFiles;
+import com.google.j2cl.common.J2clUtils;
 import com.google.j2cl.common.Problems;
 import com.google.j2cl.common.Problems.FatalError;
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * This class contains reusable utilities for tools needing to read from zip files and write from
@@ -46,7 +58,13 @@ public class FrontendUtils {
     }
 
     private static FileInfo create(String sourcePath, String originalPath, String targetPath) {
-      return new AutoValue_FrontendUtils_FileInfo(sourcePath, originalPath, targetPath);
+      return new AutoValue_FrontendUtils_FileInfo(
+          sourcePath, originalPath, targetPath, Optional.empty());
+    }
+
+    private static FileInfo createInMemory(String sourcePath, String originalPath, String content) {
+      return new AutoValue_FrontendUtils_FileInfo(
+          sourcePath, originalPath, originalPath, Optional.of(content));
     }
 
     public abstract String sourcePath();
@@ -55,56 +73,110 @@ public class FrontendUtils {
 
     public abstract String targetPath();
 
+    /** The contents of files that were read from a source jar; these do not exist on disk. */
+    abstract Optional<String> inMemoryContent();
+
+    /** Returns whether the file only exists in memory, i.e. it was read from a source jar. */
+    public boolean isInMemory() {
+      return inMemoryContent().isPresent();
+    }
+
+    /** Returns the contents of the file. */
+    public String readContent() throws IOException {
+      if (isInMemory()) {
+        return inMemoryContent().get();
+      }
+      return MoreFiles.asCharSource(Paths.get(sourcePath()), StandardCharsets.UTF_8).read();
+    }
+
     @Override
     public int compareTo(FileInfo o) {
       return targetPath().compareTo(o.targetPath());
     }
   }
 
-  /** Returns all individual sources where source jars extracted and flattened. */
+  /**
+   * Returns all individual sources where source jars are flattened.
+   *
+   * <p>Files in source jars are read directly from the jar and kept in memory (see {@link
+   * FileInfo#readContent}); their source path is of the form {@code <jar path>!/<entry name>}. When
+   * several source jars contain the same entry only the one from the last jar is kept.
+   */
   public static Stream<FileInfo> getAllSources(List<String> sources, Problems problems) {
-    // Make sure to extract all of the Jars into a single temp dir so that when later sorting
-    // sourceFilePaths there is no instability introduced by differences in randomly generated
-    // temp dir prefixes.
-    Path sourcesDir;
-    try {
-      sourcesDir = Files.createTempDirectory("j2cl_sources");
-    } catch (IOException e) {
-      problems.fatal(FatalError.CANNOT_CREATE_TEMP_DIR, e.getMessage());
-      return null;
-    }
+    List<FileInfo> fileInfos =
+        sources
+            .stream()
+            .flatMap(
+                f ->
+                    f.endsWith("jar") || f.endsWith("zip")
+                        ? readZip(f, problems).stream()
+                        : Stream.of(FileInfo.create(f, f, getJavaPath(f))))
+            .collect(toImmutableList());
+
+    // Some source jars contain the same files (e.g. proto generated sources, see b/36486919).
+    // Source jars used to be extracted into the same directory, where the later jars overwrote
+    // these files, so keep the entry from the last jar.
+    Map<String, FileInfo> lastJarEntryByTargetPath =
+        fileInfos
+            .stream()
+            .filter(FileInfo::isInMemory)
+            .collect(toMap(FileInfo::targetPath, f -> f, (first, last) -> last));
 
     // Sort source file paths so that our input is always in a stable order. If this is not done
     // and you can't trust the input to have been provided already in a stable order then the result
     // is that you will create an output Foo.js.zip with randomly ordered entries, and this will
     // cause unstable optimization in JSCompiler.
-    return sources
+    return fileInfos
         .stream()
-        .flatMap(
-            f ->
-                f.endsWith("jar") || f.endsWith("zip")
-                    ? extractZip(f, sourcesDir, problems).stream()
-                    : Stream.of(FileInfo.create(f, f, getJavaPath(f))))
+        .filter(f -> !f.isInMemory() || lastJarEntryByTargetPath.get(f.targetPath()) == f)
         .sorted()
         .distinct();
   }
 
-  private static ImmutableList<FileInfo> extractZip(
-      String zipPath, Path sourcesDir, Problems problems) {
-    try {
-      ZipFiles.unzipFile(new File(zipPath), sourcesDir.toFile());
-      try (Stream<Path> stream = Files.walk(sourcesDir)) {
-        return stream
-            .filter(Files::isRegularFile)
-            .map(p -> FileInfo.create(p.toString(), sourcesDir.relativize(p).toString()))
-            .collect(ImmutableList.toImmutableList());
+  private static ImmutableList<FileInfo> readZip(String zipPath, Problems problems) {
+    try (ZipFile zipFile = new ZipFile(zipPath)) {
+      ImmutableList.Builder<FileInfo> fileInfos = ImmutableList.builder();
+      for (ZipEntry entry : Collections.list(zipFile.entries())) {
+        if (entry.isDirectory()) {
+          continue;
+        }
+        String content;
+        try (InputStream inputStream = zipFile.getInputStream(entry)) {
+          content = new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        }
+        fileInfos.add(
+            FileInfo.createInMemory(zipPath + "!/" + entry.getName(), entry.getName(), content));
       }
+      return fileInfos.build();
     } catch (IOException e) {
       problems.fatal(FatalError.CANNOT_EXTRACT_ZIP, zipPath);
       return null;
     }
   }
 
+  /**
+   * Returns the sources with the ones that only exist in memory written into {@code directory},
+   * for consumers that can only read sources from disk.
+   */
+  public static ImmutableList<FileInfo> writeInMemorySources(
+      List<FileInfo> sources, Path directory, Problems problems) {
+    ImmutableList.Builder<FileInfo> writtenSources = ImmutableList.builder();
+    for (FileInfo source : sources) {
+      if (!source.isInMemory()) {
+        writtenSources.add(source);
+        continue;
+      }
+      Path path = directory.resolve(source.originalPath()).normalize();
+      if (!path.startsWith(directory)) {
+        // Do not write outside the directory for entries like "../Foo.java".
+        problems.fatal(FatalError.CANNOT_EXTRACT_ZIP, source.sourcePath());
+      }
+      J2clUtils.writeToFile(path, source.inMemoryContent().get(), problems);
+      writtenSources.add(FileInfo.create(path.toString(), source.originalPath()));
+    }
+    return writtenSources.build();
+  }
+
   /**
    * Returns the relative path from java source root.
    *
@@ -51,8 +51,8 @@ import com.google.j2cl.common.SourcePosition;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -391,7 +391,8 @@ class JdtUtils {
   }
 
   private static TypeDescriptor createTypeVariable(ITypeBinding typeBinding) {
-    Supplier<TypeDescriptor> boundTypeDescriptorFactory = () -> getTypeBound(typeBinding);
+    Supplier<TypeDescriptor> boundTypeDescriptorFactory =
+        fromBindings(() -> getTypeBound(typeBinding));
 
     return TypeVariable.newBuilder()
         .setBoundTypeDescriptorSupplier(boundTypeDescriptorFactory)
@@ -456,7 +457,7 @@ class JdtUtils {
   /**
    * In case the given type binding is nested, return the outermost possible enclosing type binding.
    */
-  private static ITypeBinding toTopLevelTypeBinding(ITypeBinding typeBinding) {
+  static ITypeBinding toTopLevelTypeBinding(ITypeBinding typeBinding) {
     ITypeBinding topLevelClass = typeBinding;
     while (topLevelClass.getDeclaringClass() != null) {
       topLevelClass = topLevelClass.getDeclaringClass();
@@ -501,7 +502,7 @@ class JdtUtils {
    * <p>NOTE: This accounts for the cases that JDT does not assign binary names, which are those of
    * unreachable local or anonymous classes.
    */
-  private static String getBinaryNameFromTypeBinding(ITypeBinding typeBinding) {
+  static String getBinaryNameFromTypeBinding(ITypeBinding typeBinding) {
     String binaryName = typeBinding.getBinaryName();
     if (binaryName == null && (typeBinding.isLocal() || typeBinding.isAnonymous())) {
       // Local and anonymous classes in unreachable code have null binary name.
@@ -889,7 +890,8 @@ class JdtUtils {
     return createTypeDescriptors(Arrays.asList(typeBindings), clazz);
   }
 
-  private static ThreadLocal<ITypeBinding> javaLangObjectTypeBinding = new ThreadLocal<>();
+  // Only set on the thread that parses the sources, see fromBindings().
+  private static final ThreadLocal<ITypeBinding> javaLangObjectTypeBinding = new ThreadLocal<>();
 
   public static void initWellKnownTypes(AST ast, Iterable<ITypeBinding> typeBindings) {
     javaLangObjectTypeBinding.set(ast.resolveWellKnownType("java.lang.Object"));
@@ -930,19 +932,21 @@ class JdtUtils {
   }
 
   /**
-   * This cache is a Hashtable so is already synchronized and safe to use from multiple threads. We
-   * don't need a separate cache for each thread (like interners have) since JDT's ITypeBinding
-   * instances (which we are using as keys) are unique per JDT parse.
+   * JDT's ITypeBinding instances (which we are using as keys) are unique per JDT parse, so the
+   * cache is kept per parsing thread to avoid retaining the bindings of previous parses when
+   * running in a long lived process, e.g. a persistent worker.
    */
-  @SuppressWarnings("JdkObsolete")
-  private static Map<ITypeBinding, DeclaredTypeDescriptor>
-      cachedDeclaredTypeDescriptorByTypeBinding = new Hashtable<>();
+  private static final ThreadLocal<Map<ITypeBinding, DeclaredTypeDescriptor>>
+      cachedDeclaredTypeDescriptorByTypeBinding = ThreadLocal.withInitial(HashMap::new);
 
   // This is only used by TypeProxyUtils, and cannot be used elsewhere. Because to create a
   // TypeDescriptor from a TypeBinding, it should go through the path to check array type.
   private static DeclaredTypeDescriptor createDeclaredType(final ITypeBinding typeBinding) {
-    if (cachedDeclaredTypeDescriptorByTypeBinding.containsKey(typeBinding)) {
-      return cachedDeclaredTypeDescriptorByTypeBinding.get(typeBinding);
+    Map<ITypeBinding, DeclaredTypeDescriptor> cachedDeclaredTypeDescriptors =
+        cachedDeclaredTypeDescriptorByTypeBinding.get();
+    DeclaredTypeDescriptor cachedTypeDescriptor = cachedDeclaredTypeDescriptors.get(typeBinding);
+    if (cachedTypeDescriptor != null) {
+      return cachedTypeDescriptor;
     }
 
     checkArgument(!typeBinding.isArray());
@@ -986,22 +990,26 @@ class JdtUtils {
             .setEnclosingTypeDescriptor(
                 createDeclaredTypeDescriptor(typeBinding.getDeclaringClass()))
             .setInterfaceTypeDescriptorsFactory(
-                () ->
-                    createTypeDescriptors(
-                        typeBinding.getInterfaces(), DeclaredTypeDescriptor.class))
+                fromBindings(
+                    () ->
+                        createTypeDescriptors(
+                            typeBinding.getInterfaces(), DeclaredTypeDescriptor.class)))
             .setSingleAbstractMethodDescriptorFactory(
-                () -> createMethodDescriptor(typeBinding.getFunctionalInterfaceMethod()))
-            .setJsFunctionMethodDescriptorFactory(() -> getJsFunctionMethodDescriptor(typeBinding))
+                fromBindings(
+                    () -> createMethodDescriptor(typeBinding.getFunctionalInterfaceMethod())))
+            .setJsFunctionMethodDescriptorFactory(
+                fromBindings(() -> getJsFunctionMethodDescriptor(typeBinding)))
             .setSuperTypeDescriptorFactory(
-                () ->
-                    (typeDeclaration.isJsEnum()
-                        ? TypeDescriptors.get().javaLangObject
-                        : createDeclaredTypeDescriptor(typeBinding.getSuperclass())))
+                fromBindings(
+                    () ->
+                        (typeDeclaration.isJsEnum()
+                            ? TypeDescriptors.get().javaLangObject
+                            : createDeclaredTypeDescriptor(typeBinding.getSuperclass()))))
             .setTypeArgumentDescriptors(getTypeArgumentTypeDescriptors(typeBinding))
-            .setDeclaredFieldDescriptorsFactory(declaredFields)
-            .setDeclaredMethodDescriptorsFactory(declaredMethods)
+            .setDeclaredFieldDescriptorsFactory(fromBindings(declaredFields))
+            .setDeclaredMethodDescriptorsFactory(fromBindings(declaredMethods))
             .build();
-    cachedDeclaredTypeDescriptorByTypeBinding.put(typeBinding, typeDescriptor);
+    cachedDeclaredTypeDescriptors.put(typeBinding, typeDescriptor);
     return typeDescriptor;
   }
 
@@ -1133,8 +1141,12 @@ class JdtUtils {
         .setClassComponents(getClassComponents(typeBinding))
         .setEnclosingTypeDeclaration(createDeclarationForType(typeBinding.getDeclaringClass()))
         .setInterfaceTypeDescriptorsFactory(
-            () -> createTypeDescriptors(typeBinding.getInterfaces(), DeclaredTypeDescriptor.class))
-        .setUnparameterizedTypeDescriptorFactory(() -> createDeclaredTypeDescriptor(typeBinding))
+            fromBindings(
+                () ->
+                    createTypeDescriptors(
+                        typeBinding.getInterfaces(), DeclaredTypeDescriptor.class)))
+        .setUnparameterizedTypeDescriptorFactory(
+            fromBindings(() -> createDeclaredTypeDescriptor(typeBinding)))
         .setHasAbstractModifier(isAbstract)
         .setKind(getKindFromTypeBinding(typeBinding))
         .setCapturingEnclosingInstance(capturesEnclosingInstance(typeBinding))
@@ -1150,19 +1162,37 @@ class JdtUtils {
         .setCustomizedJsNamespace(getJsNamespace(typeBinding, packageInfoCache))
         .setPackageName(packageName)
         .setSuperTypeDescriptorFactory(
-            () ->
-                (jsEnumInfo != null
-                    ? TypeDescriptors.get().javaLangObject
-                    : createDeclaredTypeDescriptor(typeBinding.getSuperclass())))
+            fromBindings(
+                () ->
+                    (jsEnumInfo != null
+                        ? TypeDescriptors.get().javaLangObject
+                        : createDeclaredTypeDescriptor(typeBinding.getSuperclass()))))
         .setTypeParameterDescriptors(
             getTypeArgumentTypeDescriptors(typeBinding, TypeVariable.class))
         .setVisibility(getVisibility(typeBinding))
-        .setDeclaredMethodDescriptorsFactory(declaredMethods)
-        .setDeclaredFieldDescriptorsFactory(declaredFields)
+        .setDeclaredMethodDescriptorsFactory(fromBindings(declaredMethods))
+        .setDeclaredFieldDescriptorsFactory(fromBindings(declaredFields))
         .setUnusableByJsSuppressed(JsInteropAnnotationUtils.isUnusableByJsSuppressed(typeBinding))
         .setDeprecated(isDeprecated(typeBinding))
         .build();
   }
 
+  /**
+   * Returns a factory for a descriptor property that is computed lazily from JDT bindings.
+   *
+   * <p>JDT bindings are not thread safe and must only be used on the thread that parsed the
+   * sources. The properties are preloaded (see {@link DescriptorPreloader}) before compilation
+   * units are processed on other threads, so computing one on another thread means the preloading
+   * missed it. That fails here rather than racing on the bindings.
+   */
+  private static <T> Supplier<T> fromBindings(Supplier<T> factory) {
+    return () -> {
+      checkState(
+          javaLangObjectTypeBinding.get() != null,
+          "JDT bindings used outside of the parsing thread, the descriptors were not preloaded.");
+      return factory.get();
+    };
+  }
+
   private JdtUtils() {}
 }
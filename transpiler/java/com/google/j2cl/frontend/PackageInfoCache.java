@@ -19,13 +19,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.j2cl.common.Problems;
 import com.google.j2cl.common.Problems.FatalError;
+import com.google.j2cl.common.SharedThreadLocal;
 import java.lang.annotation.Annotation;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -63,7 +68,8 @@ public class PackageInfoCache {
   private static final PackageReport defaultPackageReport = new PackageReport();
 
   /** Allows for the initialization/retrieval of one shared PackageInfoCache instance per thread. */
-  private static final ThreadLocal<PackageInfoCache> packageInfoCacheStorage = new ThreadLocal<>();
+  private static final SharedThreadLocal<PackageInfoCache> packageInfoCacheStorage =
+      new SharedThreadLocal<>();
 
   @VisibleForTesting
   public static void clear() {
@@ -75,6 +81,19 @@ public class PackageInfoCache {
   }
 
   public static void init(List<String> classPathEntries, Problems problems) {
+    init(classPathEntries, ImmutableMap.of(), problems);
+  }
+
+  /**
+   * Initializes the cache for the current thread.
+   *
+   * <p>{@code digestByClassPathEntry} provides content digests for class path entries; information
+   * parsed from entries with a known digest is reused by later initializations in the same JVM.
+   */
+  public static void init(
+      List<String> classPathEntries,
+      Map<String, String> digestByClassPathEntry,
+      Problems problems) {
     checkState(
         packageInfoCacheStorage.get() == null,
         "PackageInfoCache should only be initialized once per thread.");
@@ -93,7 +112,25 @@ public class PackageInfoCache {
         new URLClassLoader(
             Iterables.toArray(classPathUrls, URL.class), PackageInfoCache.class.getClassLoader());
 
-    packageInfoCacheStorage.set(new PackageInfoCache(resourcesClassLoader, problems));
+    Map<String, String> digestByAbsolutePath = new HashMap<>();
+    digestByClassPathEntry.forEach(
+        (classPathEntry, digest) ->
+            digestByAbsolutePath.put(toAbsolutePath(classPathEntry), digest));
+
+    packageInfoCacheStorage.set(
+        new PackageInfoCache(resourcesClassLoader, digestByAbsolutePath, problems));
+  }
+
+  /**
+   * Package reports parsed from package-info.class files, shared by all the transpilations that
+   * run in this JVM (e.g. in a persistent worker). Keyed by the class path entry content digest
+   * and package path, so stale information is never used.
+   */
+  private static final Cache<String, PackageReport> bytecodePackageReportByDigestAndPackagePath =
+      CacheBuilder.newBuilder().maximumSize(20_000).build();
+
+  private static String toAbsolutePath(String path) {
+    return Paths.get(path).toAbsolutePath().normalize().toString();
   }
 
   private static PackageReport toPackageReport(Annotation[] packageAnnotations) {
@@ -130,9 +167,14 @@ public class PackageInfoCache {
   private final Map<String, PackageReport> packageReportBySpecificPackagePath = new HashMap<>();
   private final Map<String, PackageReport> packageReportByTypeName = new HashMap<>();
   private final ClassLoader resourcesClassLoader;
+  private final Map<String, String> digestByAbsoluteClassPathEntry;
 
-  private PackageInfoCache(ClassLoader resourcesClassLoader, Problems problems) {
+  private PackageInfoCache(
+      ClassLoader resourcesClassLoader,
+      Map<String, String> digestByAbsoluteClassPathEntry,
+      Problems problems) {
     this.resourcesClassLoader = resourcesClassLoader;
+    this.digestByAbsoluteClassPathEntry = digestByAbsoluteClassPathEntry;
     this.problems = problems;
   }
 
@@ -258,13 +300,37 @@ public class PackageInfoCache {
 
   private void parsePackageInfo(
       String classPathEntry, String packagePath, String topLevelTypeSourceName) {
-    Annotation[] packageAnnotations = findBytecodePackageAnnotations(classPathEntry, packagePath);
-    PackageReport packageReport = toPackageReport(packageAnnotations);
+    PackageReport packageReport = getBytecodePackageReport(classPathEntry, packagePath);
 
     setReportForPackage(classPathEntry, packagePath, packageReport);
     propagateSpecificInfo(classPathEntry, topLevelTypeSourceName);
   }
 
+  private PackageReport getBytecodePackageReport(String classPathEntry, String packagePath) {
+    String digest = getDigest(classPathEntry);
+    if (digest == null) {
+      return toPackageReport(findBytecodePackageAnnotations(classPathEntry, packagePath));
+    }
+
+    String key = digest + ":" + packagePath;
+    PackageReport packageReport = bytecodePackageReportByDigestAndPackagePath.getIfPresent(key);
+    if (packageReport == null) {
+      packageReport =
+          toPackageReport(findBytecodePackageAnnotations(classPathEntry, packagePath));
+      bytecodePackageReportByDigestAndPackagePath.put(key, packageReport);
+    }
+    return packageReport;
+  }
+
+  /** Returns the content digest of a class path entry as found by the class loader, if known. */
+  private String getDigest(String classPathEntry) {
+    if (digestByAbsoluteClassPathEntry.isEmpty()) {
+      return null;
+    }
+    String path = classPathEntry.startsWith("file:") ? classPathEntry.substring(5) : classPathEntry;
+    return digestByAbsoluteClassPathEntry.get(toAbsolutePath(path));
+  }
+
   /**
    * Propagate cached info about a specific package path (which is a combination of a class path
    * entry and a package path) to apply to an exact type name. This saves the cost of needing to do
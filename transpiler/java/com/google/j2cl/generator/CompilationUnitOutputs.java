@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.generator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.j2cl.common.OutputUtils.Output;
+import com.google.j2cl.common.Problems;
+import com.google.j2cl.common.Problems.FatalError;
+import com.google.j2cl.libraryinfo.TypeInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outputs generated for a single compilation unit, which can be replayed by {@link
+ * OutputGeneratorStage#replayOutputs} instead of generating them again.
+ */
+public final class CompilationUnitOutputs {
+  private final ImmutableMap<String, byte[]> contentByPath;
+  private final ImmutableList<TypeInfo> typeInfos;
+  private final ImmutableSet<String> usedNativeFileKeys;
+  private final int size;
+
+  private CompilationUnitOutputs(
+      Map<String, byte[]> contentByPath, List<TypeInfo> typeInfos, Set<String> usedNativeFileKeys) {
+    this.contentByPath = ImmutableMap.copyOf(contentByPath);
+    this.typeInfos = ImmutableList.copyOf(typeInfos);
+    this.usedNativeFileKeys = ImmutableSet.copyOf(usedNativeFileKeys);
+    this.size =
+        contentByPath.values().stream().mapToInt(content -> content.length).sum()
+            + typeInfos.stream().mapToInt(TypeInfo::getSerializedSize).sum();
+  }
+
+  /** The contents of the output files, keyed by their path relative to the output root. */
+  ImmutableMap<String, byte[]> getContentByPath() {
+    return contentByPath;
+  }
+
+  /** The library info of the types in the compilation unit. */
+  ImmutableList<TypeInfo> getTypeInfos() {
+    return typeInfos;
+  }
+
+  /** The keys of the native files that were matched to types in the compilation unit. */
+  ImmutableSet<String> getUsedNativeFileKeys() {
+    return usedNativeFileKeys;
+  }
+
+  /** The approximate number of bytes retained by these outputs. */
+  public int getSize() {
+    return size;
+  }
+
+  /** Writes to an output while recording everything that is written. */
+  static final class Recorder implements Output {
+    private final Output output;
+    private final Map<String, byte[]> contentByPath = new LinkedHashMap<>();
+    private final List<TypeInfo> typeInfos = new ArrayList<>();
+    private final Set<String> usedNativeFileKeys = new LinkedHashSet<>();
+
+    Recorder(Output output) {
+      this.output = output;
+    }
+
+    @Override
+    public void write(String path, byte[] content, Problems problems) {
+      contentByPath.put(path, content);
+      output.write(path, content, problems);
+    }
+
+    @Override
+    public void copyFile(Path from, String path, Problems problems) {
+      try {
+        write(path, Files.readAllBytes(from), problems);
+      } catch (IOException e) {
+        problems.fatal(FatalError.CANNOT_COPY_FILE, e.toString());
+      }
+    }
+
+    void addTypeInfo(TypeInfo typeInfo) {
+      typeInfos.add(typeInfo);
+    }
+
+    void addUsedNativeFileKey(String key) {
+      usedNativeFileKeys.add(key);
+    }
+
+    CompilationUnitOutputs build() {
+      return new CompilationUnitOutputs(contentByPath, typeInfos, usedNativeFileKeys);
+    }
+
+    @Override
+    public void close() {
+      // The underlying output is owned by the caller.
+    }
+  }
+}
@@ -18,14 +18,12 @@ package com.google.j2cl.generator;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
-import com.google.j2cl.ast.HasName;
 import com.google.j2cl.ast.Member;
 import com.google.j2cl.ast.Type;
 import com.google.j2cl.common.Problems;
 import com.google.j2cl.common.SourcePosition;
 import com.google.j2cl.generator.ImportGatherer.ImportCategory;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -43,20 +41,27 @@ public abstract class JavaScriptGenerator {
   protected final boolean declareLegacyNamespace;
 
   public JavaScriptGenerator(Problems problems, boolean declareLegacyNamespace, Type type) {
+    this(problems, TypeGenerationContext.create(type, declareLegacyNamespace));
+  }
+
+  /** Creates a generator that shares the imports and names in {@code context} with others. */
+  public JavaScriptGenerator(Problems problems, TypeGenerationContext context) {
     this.problems = problems;
-    this.declareLegacyNamespace = declareLegacyNamespace;
-    this.type = type;
-    importsByCategory = ImportGatherer.gatherImports(type, declareLegacyNamespace);
-    Collection<Import> imports = importsByCategory.values();
-    Map<HasName, String> uniqueNameByVariable =
-        UniqueVariableNamesGatherer.computeUniqueVariableNames(imports, type);
-    environment = new GenerationEnvironment(imports, uniqueNameByVariable);
+    this.declareLegacyNamespace = context.getDeclareLegacyNamespace();
+    this.type = context.getType();
+    this.importsByCategory = context.getImportsByCategory();
+    this.environment = context.getEnvironment();
   }
 
   public Map<SourcePosition, SourcePosition> getSourceMappings() {
     return sourceBuilder.getMappings();
   }
 
+  /** Returns the mappings of the rendered output sorted by output position. */
+  SourceMappings getSortedSourceMappings() {
+    return sourceBuilder.getSourceMappings();
+  }
+
   public Map<Member, SourcePosition> getOutputSourceInfoByMember() {
     return sourceBuilder.getOutputSourceInfoByMember();
   }
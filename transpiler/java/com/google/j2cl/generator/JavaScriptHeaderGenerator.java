@@ -33,6 +33,10 @@ public class JavaScriptHeaderGenerator extends JavaScriptGenerator {
     super(problems, declareLegacyNamespace, type);
   }
 
+  public JavaScriptHeaderGenerator(Problems problems, TypeGenerationContext context) {
+    super(problems, context);
+  }
+
   @Override
   public String renderOutput() {
     renderFileOverview(
@@ -54,7 +54,11 @@ public class JavaScriptImplGenerator extends JavaScriptGenerator {
   public static final String FILE_SUFFIX = ".impl.java.js";
 
   public JavaScriptImplGenerator(Problems problems, boolean declareLegacyNamespace, Type type) {
-    super(problems, declareLegacyNamespace, type);
+    this(problems, TypeGenerationContext.create(type, declareLegacyNamespace));
+  }
+
+  public JavaScriptImplGenerator(Problems problems, TypeGenerationContext context) {
+    super(problems, context);
     this.statementTranspiler = new StatementTranspiler(sourceBuilder, environment);
     this.closureTypesGenerator = new ClosureTypesGenerator(environment);
   }
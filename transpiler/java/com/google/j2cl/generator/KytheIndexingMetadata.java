@@ -15,78 +15,20 @@
  */
 package com.google.j2cl.generator;
 
-import com.google.gson.Gson;
-import com.google.gson.annotations.SerializedName;
-import java.util.ArrayList;
-import java.util.List;
-
-/** Representation of Kythe indexing metadata */
-@SuppressWarnings("unused") // Fields are accessed through reflection by GSON.
+/**
+ * Representation of Kythe indexing metadata.
+ *
+ * <p>The metadata is written as JSON while the anchors are added, so that no object is kept per
+ * anchor. Anchors map an entity from the original .java file to the generated .js file; entities
+ * are things like class, method, field and similar. Offsets are byte offsets of the start and end
+ * positions of the identifiers.
+ */
 public class KytheIndexingMetadata {
 
-  /** Object that describes a file. */
-  private static class VName {
-    private final String corpus;
-
-    private final String path;
-
-    private final String root;
-
-    private VName(String corpus, String path, String root) {
-      this.corpus = corpus;
-      this.path = path;
-      this.root = root;
-    }
-  }
-
-  /**
-   * Mapping of an entity from the original .java file to the generated .js file. Entities are
-   * things like class, method, field and similar.
-   */
-  private static class AnchorAnchorMetadata {
-    private final String type = "anchor_anchor";
-
-    /** Byte offset of the start position of the identifier in .java file. */
-    @SerializedName("source_begin")
-    private final int sourceBegin;
-
-    /** Byte offset of the end position of the identifier in .java file. */
-    @SerializedName("source_end")
-    private final int sourceEnd;
-
-    /** Byte offset of the start position of the identifier in .js file. */
-    @SerializedName("target_begin")
-    private final int targetBegin;
-
-    /** Byte offset of the end position of the identifier in .js file. */
-    @SerializedName("target_end")
-    private final int targetEnd;
-
-    private final String edge = "/kythe/edge/imputes";
+  private static final String HEX_DIGITS = "0123456789abcdef";
 
-    /** Info about source .java file that contains current entity. */
-    @SerializedName("source_vname")
-    private final VName sourceVName;
-
-    private AnchorAnchorMetadata(
-        int sourceBegin,
-        int sourceEnd,
-        int targetBegin,
-        int targetEnd,
-        String corpus,
-        String path,
-        String root) {
-      this.sourceBegin = sourceBegin;
-      this.sourceEnd = sourceEnd;
-      this.targetBegin = targetBegin;
-      this.targetEnd = targetEnd;
-      this.sourceVName = new VName(corpus, path, root);
-    }
-  }
-
-  private final String type = "kythe0";
-
-  private final List<AnchorAnchorMetadata> meta = new ArrayList<>();
+  private final StringBuilder json = new StringBuilder("{\"type\":\"kythe0\",\"meta\":[");
+  private boolean hasAnchors = false;
 
   public void addAnchorAnchor(
       int sourcebegin,
@@ -99,12 +41,86 @@ public class KytheIndexingMetadata {
     if (sourceCorpus == null) {
       sourceCorpus = "google3";
     }
-    meta.add(
-        new AnchorAnchorMetadata(
-            sourcebegin, sourceend, targetbegin, targetend, sourceCorpus, sourcePath, sourceRoot));
+    if (hasAnchors) {
+      json.append(',');
+    }
+    hasAnchors = true;
+    json.append("{\"type\":\"anchor_anchor\"")
+        .append(",\"source_begin\":")
+        .append(sourcebegin)
+        .append(",\"source_end\":")
+        .append(sourceend)
+        .append(",\"target_begin\":")
+        .append(targetbegin)
+        .append(",\"target_end\":")
+        .append(targetend)
+        .append(",\"edge\":\"/kythe/edge/imputes\"")
+        .append(",\"source_vname\":{");
+    // Absent names are omitted.
+    String separator = "";
+    separator = appendStringField("corpus", sourceCorpus, separator);
+    separator = appendStringField("path", sourcePath, separator);
+    appendStringField("root", sourceRoot, separator);
+    json.append("}}");
   }
 
   public String toJson() {
-    return new Gson().toJson(this);
+    return json + "]}";
+  }
+
+  private String appendStringField(String name, String value, String separator) {
+    if (value == null) {
+      return separator;
+    }
+    json.append(separator).append('"').append(name).append("\":\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+          json.append('\\').append(c);
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        case '\b':
+          json.append("\\b");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\f':
+          json.append("\\f");
+          break;
+        case '<':
+        case '>':
+        case '&':
+        case '=':
+        case '\'':
+        case '\u2028':
+        case '\u2029':
+          // Escaped to keep the metadata safe to embed in HTML and JavaScript.
+          appendUnicodeEscape(c);
+          break;
+        default:
+          if (c < 0x20) {
+            appendUnicodeEscape(c);
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    json.append('"');
+    return ",";
+  }
+
+  private void appendUnicodeEscape(char c) {
+    json.append("\\u");
+    for (int shift = 12; shift >= 0; shift -= 4) {
+      json.append(HEX_DIGITS.charAt((c >> shift) & 0xf));
+    }
   }
 }
@@ -15,25 +15,37 @@
  */
 package com.google.j2cl.generator;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.j2cl.ast.CompilationUnit;
 import com.google.j2cl.ast.Type;
 import com.google.j2cl.ast.TypeDeclaration;
 import com.google.j2cl.common.J2clUtils;
+import com.google.j2cl.common.OutputUtils.Output;
 import com.google.j2cl.common.Problems;
 import com.google.j2cl.common.Problems.FatalError;
+import com.google.j2cl.common.SharedThreadLocal;
 import com.google.j2cl.common.SourcePosition;
 import com.google.j2cl.frontend.FrontendUtils;
 import com.google.j2cl.frontend.FrontendUtils.FileInfo;
 import com.google.j2cl.libraryinfo.LibraryInfo;
 import com.google.j2cl.libraryinfo.LibraryInfoBuilder;
-import java.io.File;
+import com.google.j2cl.libraryinfo.TypeInfo;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * The OutputGeneratorStage contains all necessary information for generating the JavaScript output
@@ -41,149 +53,325 @@ import java.util.Optional;
  * generating header, implementation and sourcemap files for each Java Type.
  */
 public class OutputGeneratorStage {
-  private final List<FileInfo> nativeJavaScriptFiles;
   private final Problems problems;
-  private final Path outputPath;
+  private final Output output;
   private final Optional<Path> libraryInfoOutputPath;
   private final boolean declareLegacyNamespace;
   private final boolean shouldGenerateReadableSourceMaps;
   private final boolean shouldGenerateReadableLibraryInfo;
   private final boolean generateKytheIndexingMetadata;
+  // The map must be ordered because it will be iterated over later and if it was not ordered then
+  // our output would be unstable. Actually this one can't actually destabilize output but since
+  // it's being safely iterated over now it's best to guard against it being unsafely iterated
+  // over in the future.
+  private final Map<String, NativeJavaScriptFile> nativeFilesByPath;
+  private final Executor renderingExecutor;
+  private final LibraryInfo.Builder libraryInfo = LibraryInfo.newBuilder();
 
   public OutputGeneratorStage(
       List<FileInfo> nativeJavaScriptFiles,
-      Path outputPath,
+      Output output,
       Optional<Path> libraryInfoOutputPath,
       boolean declareLegacyNamespace,
       boolean shouldGenerateReadableLibraryInfo,
       boolean shouldGenerateReadableSourceMaps,
       boolean generateKytheIndexingMetadata,
       Problems problems) {
-    this.nativeJavaScriptFiles = nativeJavaScriptFiles;
-    this.outputPath = outputPath;
+    this(
+        nativeJavaScriptFiles,
+        output,
+        libraryInfoOutputPath,
+        declareLegacyNamespace,
+        shouldGenerateReadableLibraryInfo,
+        shouldGenerateReadableSourceMaps,
+        generateKytheIndexingMetadata,
+        MoreExecutors.directExecutor(),
+        problems);
+  }
+
+  /**
+   * Creates a stage that renders types on {@code renderingExecutor}.
+   *
+   * <p>Rendering a type does not depend on any other type, so types can be rendered concurrently;
+   * their outputs are still written in order, from the thread that hands over the units, so that
+   * the output does not depend on which rendering finishes first.
+   */
+  public OutputGeneratorStage(
+      List<FileInfo> nativeJavaScriptFiles,
+      Output output,
+      Optional<Path> libraryInfoOutputPath,
+      boolean declareLegacyNamespace,
+      boolean shouldGenerateReadableLibraryInfo,
+      boolean shouldGenerateReadableSourceMaps,
+      boolean generateKytheIndexingMetadata,
+      Executor renderingExecutor,
+      Problems problems) {
+    this.output = output;
     this.libraryInfoOutputPath = libraryInfoOutputPath;
     this.declareLegacyNamespace = declareLegacyNamespace;
     this.shouldGenerateReadableLibraryInfo = shouldGenerateReadableLibraryInfo;
     this.shouldGenerateReadableSourceMaps = shouldGenerateReadableSourceMaps;
     this.generateKytheIndexingMetadata = generateKytheIndexingMetadata;
+    this.renderingExecutor = renderingExecutor;
     this.problems = problems;
+    this.nativeFilesByPath = NativeJavaScriptFile.getMap(nativeJavaScriptFiles, problems);
   }
 
   public void generateOutputs(List<CompilationUnit> j2clCompilationUnits) {
-    // The map must be ordered because it will be iterated over later and if it was not ordered then
-    // our output would be unstable. Actually this one can't actually destabilize output but since
-    // it's being safely iterated over now it's best to guard against it being unsafely iterated
-    // over in the future.
-    Map<String, NativeJavaScriptFile> nativeFilesByPath =
-        NativeJavaScriptFile.getMap(nativeJavaScriptFiles, problems);
-    LibraryInfo.Builder libraryInfo = LibraryInfo.newBuilder();
-
+    // Keep rendering the units that follow the one being written, so that types from different
+    // units are rendered concurrently, while bounding the outputs that are kept in memory.
+    List<List<Future<RenderedType>>> renderedTypesByUnit = new ArrayList<>();
+    int writtenUnits = 0;
     for (CompilationUnit j2clCompilationUnit : j2clCompilationUnits) {
-      for (Type type : j2clCompilationUnit.getTypes()) {
-        JavaScriptImplGenerator jsImplGenerator =
-            new JavaScriptImplGenerator(problems, declareLegacyNamespace, type);
-
-        // If the java type contains any native methods, search for matching native file.
-        String typeRelativePath = getRelativePath(type);
-        String typeAbsolutePath =
-            FrontendUtils.getJavaPath(getAbsolutePath(j2clCompilationUnit, type));
-
-        // Locate matching native files that either have the same relative package as their Java
-        // class (useful when Java and native.js files started in different directories on disk).
-        // TODO(goktug): reconsider matching with relative name.
-        NativeJavaScriptFile matchingNativeFile = nativeFilesByPath.get(typeRelativePath);
-        // or that are in the same absolute path folder on disk as their Java class.
-        if (matchingNativeFile == null) {
-          matchingNativeFile = nativeFilesByPath.get(typeAbsolutePath);
-        }
-
-        if (matchingNativeFile != null) {
-          jsImplGenerator.setNativeSource(matchingNativeFile);
-          matchingNativeFile.setUsed();
-        }
-
-        // If not matching native file is found, and the java type contains non-JsMethod native
-        // method, reports an error.
-        if (matchingNativeFile == null && type.containsNonJsNativeMethods()) {
-          problems.error(
-              "Cannot find matching native file '%s'.",
-              typeRelativePath + NativeJavaScriptFile.NATIVE_EXTENSION);
-          return;
-        }
-
-        String javaScriptImplementationSource = jsImplGenerator.renderOutput();
-
-        JavaScriptHeaderGenerator jsHeaderGenerator =
-            new JavaScriptHeaderGenerator(problems, declareLegacyNamespace, type);
-        String javaScriptHeaderSource = jsHeaderGenerator.renderOutput();
-
-        if (generateKytheIndexingMetadata) {
-          // Inline metadata so that Kythe can create edges between these files and the Java source
-          // file.
-          javaScriptHeaderSource +=
-              renderKytheIndexingMetadata(jsHeaderGenerator.getSourceMappings());
-          javaScriptImplementationSource +=
-              renderKytheIndexingMetadata(jsImplGenerator.getSourceMappings());
-        } else {
-          String sourceMap = renderSourceMap(type, jsImplGenerator.getSourceMappings());
-
-          if (sourceMap != null) {
-            javaScriptImplementationSource +=
-                String.format(
-                    "%n//# sourceMappingURL=%s",
-                    type.getDeclaration().getSimpleBinaryName() + SOURCE_MAP_SUFFIX);
-            Path absolutePathForSourceMap =
-                outputPath.resolve(getRelativePath(type) + SOURCE_MAP_SUFFIX);
-            J2clUtils.writeToFile(absolutePathForSourceMap, sourceMap, problems);
-          }
-        }
-
-        if (shouldGenerateReadableSourceMaps) {
-          outputReadableSourceMap(
-              j2clCompilationUnit,
-              type,
-              javaScriptImplementationSource,
-              jsImplGenerator.getSourceMappings(),
-              matchingNativeFile);
-        }
-
-        String implRelativePath = typeRelativePath + jsImplGenerator.getSuffix();
-        J2clUtils.writeToFile(
-            outputPath.resolve(implRelativePath), javaScriptImplementationSource, problems);
-
-        String headerRelativePath = typeRelativePath + jsHeaderGenerator.getSuffix();
-        J2clUtils.writeToFile(
-            outputPath.resolve(headerRelativePath), javaScriptHeaderSource, problems);
-
-        if (libraryInfoOutputPath.isPresent() || shouldGenerateReadableLibraryInfo) {
-          libraryInfo.addType(
-              LibraryInfoBuilder.build(
-                  type,
-                  headerRelativePath,
-                  implRelativePath,
-                  jsImplGenerator.getOutputSourceInfoByMember()));
-        }
-
-        if (matchingNativeFile != null) {
-          copyNativeJsFileToOutput(matchingNativeFile);
-        }
+      renderedTypesByUnit.add(renderTypes(j2clCompilationUnit));
+      if (renderedTypesByUnit.size() - writtenUnits > MAX_UNITS_RENDERED_AHEAD) {
+        writeOutputs(
+            j2clCompilationUnits.get(writtenUnits), renderedTypesByUnit.set(writtenUnits, null));
+        writtenUnits++;
       }
+    }
+    for (; writtenUnits < j2clCompilationUnits.size(); writtenUnits++) {
+      writeOutputs(
+          j2clCompilationUnits.get(writtenUnits), renderedTypesByUnit.set(writtenUnits, null));
+    }
+    finishOutputs();
+  }
+
+  /** The maximum number of units whose types are rendered but not written yet. */
+  private static final int MAX_UNITS_RENDERED_AHEAD = 64;
+
+  /**
+   * Generates and writes the outputs for the types in {@code j2clCompilationUnit}.
+   *
+   * <p>Units can be handed over one at a time as soon as they are ready; {@link #finishOutputs}
+   * needs to be called once all units were processed. Returns everything that was generated for
+   * the unit so that it can be replayed in a later transpilation (see {@link #replayOutputs}).
+   */
+  public CompilationUnitOutputs generateOutputs(CompilationUnit j2clCompilationUnit) {
+    return writeOutputs(j2clCompilationUnit, renderTypes(j2clCompilationUnit));
+  }
+
+  /** Matches the types of the unit with their native files and starts rendering them. */
+  private List<Future<RenderedType>> renderTypes(CompilationUnit j2clCompilationUnit) {
+    List<Future<RenderedType>> renderedTypes = new ArrayList<>();
+    for (Type type : j2clCompilationUnit.getTypes()) {
+      // If the java type contains any native methods, search for matching native file.
+      String typeRelativePath = getRelativePath(type);
+      String typeAbsolutePath =
+          FrontendUtils.getJavaPath(getAbsolutePath(j2clCompilationUnit, type));
+
+      // Locate matching native files that either have the same relative package as their Java
+      // class (useful when Java and native.js files started in different directories on disk).
+      // TODO(goktug): reconsider matching with relative name.
+      NativeJavaScriptFile matchingNativeFile = nativeFilesByPath.get(typeRelativePath);
+      String matchingNativeFileKey = typeRelativePath;
+      // or that are in the same absolute path folder on disk as their Java class.
+      if (matchingNativeFile == null) {
+        matchingNativeFile = nativeFilesByPath.get(typeAbsolutePath);
+        matchingNativeFileKey = typeAbsolutePath;
+      }
+
+      if (matchingNativeFile != null) {
+        matchingNativeFile.setUsed();
+      }
+
+      // If not matching native file is found, and the java type contains non-JsMethod native
+      // method, reports an error.
+      if (matchingNativeFile == null && type.containsNonJsNativeMethods()) {
+        problems.error(
+            "Cannot find matching native file '%s'.",
+            typeRelativePath + NativeJavaScriptFile.NATIVE_EXTENSION);
+        problems.abort();
+      }
+
+      RenderedType renderedType =
+          new RenderedType(matchingNativeFile == null ? null : matchingNativeFileKey);
+      NativeJavaScriptFile nativeFile = matchingNativeFile;
+      FutureTask<RenderedType> renderingTask =
+          new FutureTask<>(
+              SharedThreadLocal.propagate(
+                  () -> {
+                    try {
+                      renderType(j2clCompilationUnit, type, nativeFile, renderedType);
+                    } catch (Problems.Exit e) {
+                      renderedType.aborted = true;
+                    }
+                    return renderedType;
+                  }));
+      renderingExecutor.execute(renderingTask);
+      renderedTypes.add(renderingTask);
+    }
+    return renderedTypes;
+  }
+
+  /** Writes the rendered types of the unit in order, along with the unit sources. */
+  private CompilationUnitOutputs writeOutputs(
+      CompilationUnit j2clCompilationUnit, List<Future<RenderedType>> renderedTypes) {
+    CompilationUnitOutputs.Recorder unitOutput = new CompilationUnitOutputs.Recorder(output);
+    for (Future<RenderedType> renderingTask : renderedTypes) {
+      RenderedType renderedType = getDone(renderingTask);
+      // Report the problems of each type in order, regardless of which thread rendered it first.
+      problems.addAll(renderedType.problems);
+      if (renderedType.aborted) {
+        problems.abort();
+      }
+      renderedType.contentByPath.forEach(
+          (path, content) -> unitOutput.write(path, content, problems));
+      if (renderedType.nativeFileKey != null) {
+        unitOutput.addUsedNativeFileKey(renderedType.nativeFileKey);
+      }
+      if (renderedType.typeInfo != null) {
+        libraryInfo.addType(renderedType.typeInfo);
+        unitOutput.addTypeInfo(renderedType.typeInfo);
+      }
+    }
+
+    if (!generateKytheIndexingMetadata) {
+      copyJavaSourcesToOutput(unitOutput, j2clCompilationUnit);
+    }
+    return unitOutput.build();
+  }
+
+  private static <T> T getDone(Future<T> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new AssertionError(e.getCause());
+    }
+  }
+
+  /**
+   * Renders the outputs of {@code type}, possibly on a worker thread. Problems are reported to the
+   * rendered type and only handed over when the type is written.
+   */
+  private void renderType(
+      CompilationUnit j2clCompilationUnit,
+      Type type,
+      NativeJavaScriptFile matchingNativeFile,
+      RenderedType renderedType) {
+    Problems problems = renderedType.problems;
+    // Imports and variable names are computed once for both the impl and the header.
+    TypeGenerationContext context = TypeGenerationContext.create(type, declareLegacyNamespace);
+    JavaScriptImplGenerator jsImplGenerator = new JavaScriptImplGenerator(problems, context);
+    if (matchingNativeFile != null) {
+      jsImplGenerator.setNativeSource(matchingNativeFile);
+    }
+
+    String javaScriptImplementationSource = jsImplGenerator.renderOutput();
+
+    JavaScriptHeaderGenerator jsHeaderGenerator = new JavaScriptHeaderGenerator(problems, context);
+    String javaScriptHeaderSource = jsHeaderGenerator.renderOutput();
+
+    if (generateKytheIndexingMetadata) {
+      // Inline metadata so that Kythe can create edges between these files and the Java source
+      // file.
+      javaScriptHeaderSource +=
+          renderKytheIndexingMetadata(jsHeaderGenerator.getSortedSourceMappings());
+      javaScriptImplementationSource +=
+          renderKytheIndexingMetadata(jsImplGenerator.getSortedSourceMappings());
+    } else {
+      String sourceMap =
+          SourceMapGeneratorStage.generateSourceMaps(
+              type, jsImplGenerator.getSortedSourceMappings());
+      javaScriptImplementationSource +=
+          String.format(
+              "%n//# sourceMappingURL=%s",
+              type.getDeclaration().getSimpleBinaryName() + SOURCE_MAP_SUFFIX);
+      renderedType.write(getRelativePath(type) + SOURCE_MAP_SUFFIX, sourceMap, problems);
+    }
+
+    if (shouldGenerateReadableSourceMaps) {
+      outputReadableSourceMap(
+          renderedType,
+          j2clCompilationUnit,
+          type,
+          javaScriptImplementationSource,
+          jsImplGenerator.getSortedSourceMappings(),
+          matchingNativeFile);
+    }
 
-      if (!generateKytheIndexingMetadata) {
-        copyJavaSourcesToOutput(j2clCompilationUnit);
+    String typeRelativePath = getRelativePath(type);
+    String implRelativePath = typeRelativePath + jsImplGenerator.getSuffix();
+    renderedType.write(implRelativePath, javaScriptImplementationSource, problems);
+
+    String headerRelativePath = typeRelativePath + jsHeaderGenerator.getSuffix();
+    renderedType.write(headerRelativePath, javaScriptHeaderSource, problems);
+
+    if (shouldGenerateLibraryInfo()) {
+      renderedType.typeInfo =
+          LibraryInfoBuilder.build(
+              type,
+              headerRelativePath,
+              implRelativePath,
+              jsImplGenerator.getOutputSourceInfoByMember());
+    }
+
+    if (matchingNativeFile != null) {
+      copyNativeJsFileToOutput(renderedType, matchingNativeFile);
+    }
+  }
+
+  /** The outputs and problems of a type, which are kept until they can be written in order. */
+  private static final class RenderedType implements Output {
+    private final Map<String, byte[]> contentByPath = new LinkedHashMap<>();
+    private final Problems problems = new Problems();
+    private final String nativeFileKey;
+    private TypeInfo typeInfo;
+    private boolean aborted;
+
+    private RenderedType(String nativeFileKey) {
+      this.nativeFileKey = nativeFileKey;
+    }
+
+    @Override
+    public void write(String path, byte[] content, Problems problems) {
+      contentByPath.put(path, content);
+    }
+
+    @Override
+    public void copyFile(Path from, String path, Problems problems) {
+      try {
+        write(path, Files.readAllBytes(from), problems);
+      } catch (IOException e) {
+        problems.fatal(FatalError.CANNOT_COPY_FILE, e.toString());
       }
     }
 
+    @Override
+    public void close() {}
+  }
+
+  /**
+   * Writes the outputs that were generated for a compilation unit in a previous transpilation, as
+   * if the unit was handed over to {@link #generateOutputs(CompilationUnit)}.
+   */
+  public void replayOutputs(CompilationUnitOutputs compilationUnitOutputs) {
+    compilationUnitOutputs
+        .getContentByPath()
+        .forEach((path, content) -> output.write(path, content, problems));
+    if (shouldGenerateLibraryInfo()) {
+      compilationUnitOutputs.getTypeInfos().forEach(libraryInfo::addType);
+    }
+    for (String nativeFileKey : compilationUnitOutputs.getUsedNativeFileKeys()) {
+      nativeFilesByPath.get(nativeFileKey).setUsed();
+    }
+  }
+
+  private boolean shouldGenerateLibraryInfo() {
+    return libraryInfoOutputPath.isPresent() || shouldGenerateReadableLibraryInfo;
+  }
+
+  /** Writes the outputs that summarize all the compilation units and checks native file usage. */
+  public void finishOutputs() {
     if (libraryInfoOutputPath.isPresent()) {
       J2clUtils.writeToFile(
           libraryInfoOutputPath.get(), LibraryInfoBuilder.toByteArray(libraryInfo), problems);
     }
 
     if (shouldGenerateReadableLibraryInfo) {
-      J2clUtils.writeToFile(
-          outputPath.resolve("library_info_debug.json"),
-          LibraryInfoBuilder.toJson(libraryInfo, problems),
-          problems);
+      output.write(
+          "library_info_debug.json", LibraryInfoBuilder.toJson(libraryInfo, problems), problems);
     }
 
     // Error if any of the native implementation files were not used.
@@ -198,21 +386,17 @@ public class OutputGeneratorStage {
 
   private static final String READABLE_MAPPINGS_SUFFIX = ".js.mappings";
 
-  private String renderKytheIndexingMetadata(
-      Map<SourcePosition, SourcePosition> javaSourcePositionByOutputSourcePosition) {
+  private String renderKytheIndexingMetadata(SourceMappings sourceMappings) {
     KytheIndexingMetadata metadata = new KytheIndexingMetadata();
 
-    for (Entry<SourcePosition, SourcePosition> entry :
-        javaSourcePositionByOutputSourcePosition.entrySet()) {
-
-      SourcePosition javaSourcePosition = entry.getValue();
-      SourcePosition javaScriptSourcePosition = entry.getKey();
+    for (int mapping = 0; mapping < sourceMappings.size(); mapping++) {
+      SourcePosition javaSourcePosition = sourceMappings.getJavaSourcePosition(mapping);
 
       metadata.addAnchorAnchor(
           javaSourcePosition.getStartFilePosition().getByteOffset(),
           javaSourcePosition.getEndFilePosition().getByteOffset(),
-          javaScriptSourcePosition.getStartFilePosition().getByteOffset(),
-          javaScriptSourcePosition.getEndFilePosition().getByteOffset(),
+          sourceMappings.getOutputStartOffset(mapping),
+          sourceMappings.getOutputEndOffset(mapping),
           null, // sourceCorpus
           javaSourcePosition.getFilePath(),
           null // sourceRoot
@@ -224,35 +408,23 @@ public class OutputGeneratorStage {
         "%n// Kythe Indexing Metadata:%n// %s", metadata.toJson());
   }
 
-  private String renderSourceMap(
-      Type type,
-      Map<SourcePosition, SourcePosition> javaSourcePositionByOutputSourcePosition) {
-    try {
-      return SourceMapGeneratorStage.generateSourceMaps(
-          type, javaSourcePositionByOutputSourcePosition);
-    } catch (IOException e) {
-      problems.fatal(FatalError.CANNOT_WRITE_FILE, e.toString());
-      return null;
-    }
-  }
-
-  private void outputReadableSourceMap(
+  private static void outputReadableSourceMap(
+      RenderedType renderedType,
       CompilationUnit j2clUnit,
       Type type,
       String javaScriptImplementationFileContents,
-      Map<SourcePosition, SourcePosition> javaSourcePositionByOutputSourcePosition,
+      SourceMappings sourceMappings,
       NativeJavaScriptFile nativeJavaScriptFile) {
     String readableOutput =
         ReadableSourceMapGenerator.generate(
-            javaSourcePositionByOutputSourcePosition,
+            sourceMappings,
             javaScriptImplementationFileContents,
             nativeJavaScriptFile,
             j2clUnit.getFilePath(),
-            problems);
+            renderedType.problems);
     if (!readableOutput.isEmpty()) {
-      Path absolutePathForReadableSourceMap =
-          outputPath.resolve(getRelativePath(type) + READABLE_MAPPINGS_SUFFIX);
-      J2clUtils.writeToFile(absolutePathForReadableSourceMap, readableOutput, problems);
+      renderedType.write(
+          getRelativePath(type) + READABLE_MAPPINGS_SUFFIX, readableOutput, renderedType.problems);
     }
   }
 
@@ -260,18 +432,17 @@ public class OutputGeneratorStage {
    * Copy Java source files to the output. Sourcemaps reference locations in the Java source file,
    * and having it available as output simplifies the process of source debugging in the browser.
    */
-  private void copyJavaSourcesToOutput(CompilationUnit j2clUnit) {
-    String relativePath =
-        j2clUnit.getPackageName().replace(".", File.separator)
-            + File.separator
-            + j2clUnit.getName();
-    Path absolutePath = outputPath.resolve(relativePath + ".java");
-    J2clUtils.copyFile(Paths.get(j2clUnit.getFilePath()), absolutePath, problems);
+  private void copyJavaSourcesToOutput(Output output, CompilationUnit j2clUnit) {
+    String relativePath = j2clUnit.getPackageName().replace('.', '/') + '/' + j2clUnit.getName();
+    output.copyFile(Paths.get(j2clUnit.getFilePath()), relativePath + ".java", problems);
   }
 
-  private void copyNativeJsFileToOutput(NativeJavaScriptFile nativeJavaScriptFile) {
-    Path absolutePath = outputPath.resolve(nativeJavaScriptFile.getRelativeFilePath());
-    J2clUtils.writeToFile(absolutePath, nativeJavaScriptFile.getContent(), problems);
+  private static void copyNativeJsFileToOutput(
+      RenderedType renderedType, NativeJavaScriptFile nativeJavaScriptFile) {
+    renderedType.write(
+        nativeJavaScriptFile.getRelativeFilePath(),
+        nativeJavaScriptFile.getContent(),
+        renderedType.problems);
   }
 
   /** Returns the relative output path for a given type. */
@@ -26,14 +26,14 @@ import com.google.j2cl.common.Problems.FatalError;
 import com.google.j2cl.common.SourcePosition;
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * Generates a readable version of the sourcemap.
+ *
+ * <p>Fragments are copied directly from the generated JavaScript and the Java source lines into the
+ * output, without splitting the generated JavaScript into lines.
  */
 public class ReadableSourceMapGenerator {
   /** The source location of the ast node to print, input or output. */
@@ -43,32 +43,47 @@ public class ReadableSourceMapGenerator {
       NativeJavaScriptFile nativeJavaScriptFile,
       String j2clUnitFilePath,
       Problems problems) {
+    return generate(
+        SourceMappings.fromMap(javaSourcePositionByOutputSourcePosition),
+        javaScriptImplementationFileContents,
+        nativeJavaScriptFile,
+        j2clUnitFilePath,
+        problems);
+  }
+
+  static String generate(
+      SourceMappings sourceMappings,
+      String javaScriptImplementationFileContents,
+      NativeJavaScriptFile nativeJavaScriptFile,
+      String j2clUnitFilePath,
+      Problems problems) {
 
     Map<String, List<String>> sourceLinesByFileName =
         buildSourceLinesByFileName(nativeJavaScriptFile, j2clUnitFilePath, problems);
 
     StringBuilder sb = new StringBuilder();
 
-    List<Entry<SourcePosition, SourcePosition>> entries =
-        new ArrayList<>(javaSourcePositionByOutputSourcePosition.entrySet());
-    // remove the EOF marker.
-    SourcePosition eofMarker = entries.get(entries.size() - 1).getValue();
+    // Skip the EOF marker.
+    int mappingCount = sourceMappings.size() - 1;
+    SourcePosition eofMarker = sourceMappings.getJavaSourcePosition(mappingCount);
     // Make sure we are not removing a meaninful mapping instead of the eofMarker.
     checkState(eofMarker.getEndFilePosition().equals(eofMarker.getStartFilePosition()));
-    entries.remove(entries.size() - 1);
 
-    List<String> javaScriptSourceLines =
-        Arrays.asList(javaScriptImplementationFileContents.split("\n"));
-    for (Entry<SourcePosition, SourcePosition> entry : entries) {
-      SourcePosition javaSourcePosition = checkNotNull(entry.getValue());
-      SourcePosition javaScriptSourcePosition = checkNotNull(entry.getKey());
+    for (int mapping = 0; mapping < mappingCount; mapping++) {
+      SourcePosition javaSourcePosition =
+          checkNotNull(sourceMappings.getJavaSourcePosition(mapping));
       List<String> javaSourceLines = sourceLinesByFileName.get(javaSourcePosition.getFileName());
 
       boolean hasName = javaSourcePosition.getName() != null;
 
-      sb.append(extract(javaSourcePosition, javaSourceLines, hasName))
-          .append(" => ")
-          .append(extract(javaScriptSourcePosition, javaScriptSourceLines, hasName).trim());
+      appendJavaFragment(sb, javaSourcePosition, javaSourceLines, hasName);
+      sb.append(" => ");
+      appendJavaScriptFragment(
+          sb,
+          javaScriptImplementationFileContents,
+          sourceMappings.getOutputStartOffset(mapping),
+          sourceMappings.getOutputEndOffset(mapping),
+          hasName);
 
       if (hasName) {
         sb.append(" \"").append(javaSourcePosition.getName()).append("\"");
@@ -99,37 +114,96 @@ public class ReadableSourceMapGenerator {
     return contentsByFileNameBuilder.build();
   }
 
-  private static String extract(
-      SourcePosition sourcePosition, List<String> lines, boolean condense) {
+  private static void appendJavaFragment(
+      StringBuilder sb, SourcePosition sourcePosition, List<String> lines, boolean condense) {
     int startLine = sourcePosition.getStartFilePosition().getLine();
     int endLine = sourcePosition.getEndFilePosition().getLine();
     String fragment = lines.get(startLine);
     int endColumn = sourcePosition.getEndFilePosition().getColumn();
     int startColumn = sourcePosition.getStartFilePosition().getColumn();
+    sb.append("[");
     if (endLine != startLine || endColumn == -1) {
-      StringBuilder content =
-          new StringBuilder(trimTrailingWhitespace(fragment.substring(startColumn)));
+      appendTrimmingTrailingWhitespace(sb, fragment, startColumn, fragment.length());
       if (condense && startLine + 3 < endLine) {
-        content
-            .append("\n")
-            .append(trimTrailingWhitespace(lines.get(startLine + 1)))
-            .append("\n...")
-            .append(trimTrailingWhitespace(lines.get(endLine - 1)));
+        sb.append("\n");
+        appendTrimmingTrailingWhitespace(sb, lines.get(startLine + 1));
+        sb.append("\n...");
+        appendTrimmingTrailingWhitespace(sb, lines.get(endLine - 1));
       } else {
         for (int line = startLine + 1; line < endLine; line++) {
-          content.append("\n").append(trimTrailingWhitespace(lines.get(line)));
+          sb.append("\n");
+          appendTrimmingTrailingWhitespace(sb, lines.get(line));
         }
       }
-      content
-          .append("\n")
-          .append((trimTrailingWhitespace(lines.get(endLine).substring(0, endColumn))));
-      return "[" + content.toString() + "]";
+      sb.append("\n");
+      appendTrimmingTrailingWhitespace(sb, lines.get(endLine), 0, endColumn);
+    } else {
+      sb.append(fragment, startColumn, endColumn);
+    }
+    sb.append("]");
+  }
+
+  /**
+   * Appends the generated JavaScript between {@code startOffset} and {@code endOffset}, formatted
+   * like the Java fragments.
+   */
+  private static void appendJavaScriptFragment(
+      StringBuilder sb, String contents, int startOffset, int endOffset, boolean condense) {
+    int firstLineEnd = lineEnd(contents, startOffset);
+    sb.append("[");
+    if (firstLineEnd >= endOffset) {
+      sb.append(contents, startOffset, endOffset);
+      sb.append("]");
+      return;
+    }
+
+    int lastLineStart = contents.lastIndexOf('\n', endOffset - 1) + 1;
+    appendTrimmingTrailingWhitespace(sb, contents, startOffset, firstLineEnd);
+    int secondLineStart = firstLineEnd + 1;
+    if (condense && countLines(contents, secondLineStart, lastLineStart) > 2) {
+      int lineBeforeLastStart = contents.lastIndexOf('\n', lastLineStart - 2) + 1;
+      sb.append("\n");
+      appendTrimmingTrailingWhitespace(
+          sb, contents, secondLineStart, lineEnd(contents, secondLineStart));
+      sb.append("\n...");
+      appendTrimmingTrailingWhitespace(sb, contents, lineBeforeLastStart, lastLineStart - 1);
+    } else {
+      for (int lineStart = secondLineStart;
+          lineStart < lastLineStart;
+          lineStart = lineEnd(contents, lineStart) + 1) {
+        sb.append("\n");
+        appendTrimmingTrailingWhitespace(sb, contents, lineStart, lineEnd(contents, lineStart));
+      }
     }
+    sb.append("\n");
+    appendTrimmingTrailingWhitespace(sb, contents, lastLineStart, endOffset);
+    sb.append("]");
+  }
 
-    return "[" + fragment.substring(startColumn, endColumn) + "]";
+  /** Returns the offset of the line separator that ends the line containing {@code offset}. */
+  private static int lineEnd(String contents, int offset) {
+    int lineEnd = contents.indexOf('\n', offset);
+    return lineEnd == -1 ? contents.length() : lineEnd;
   }
 
-  private static String trimTrailingWhitespace(String string) {
-    return CharMatcher.whitespace().trimTrailingFrom(string);
+  /** Returns the number of lines that start between {@code start} and {@code end}. */
+  private static int countLines(String contents, int start, int end) {
+    int lineCount = 0;
+    for (int lineStart = start; lineStart < end; lineStart = lineEnd(contents, lineStart) + 1) {
+      lineCount++;
+    }
+    return lineCount;
+  }
+
+  private static void appendTrimmingTrailingWhitespace(StringBuilder sb, String string) {
+    appendTrimmingTrailingWhitespace(sb, string, 0, string.length());
+  }
+
+  private static void appendTrimmingTrailingWhitespace(
+      StringBuilder sb, String string, int start, int end) {
+    while (end > start && CharMatcher.whitespace().matches(string.charAt(end - 1))) {
+      end--;
+    }
+    sb.append(string, start, end);
   }
 }
@@ -18,7 +18,6 @@ package com.google.j2cl.generator;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
-import com.google.common.base.CharMatcher;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.j2cl.ast.Member;
@@ -28,7 +27,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.SortedMap;
-import java.util.TreeMap;
 
 /** Builds source and tracks line numbers using a StringBuilder. */
 class SourceBuilder {
@@ -40,13 +38,17 @@ class SourceBuilder {
   private static final char LINE_SEPARATOR_CHAR = '\n';
   private static final String LINE_SEPARATOR = String.valueOf(LINE_SEPARATOR_CHAR);
   private static final String INDENT = "  ";
+  /** Indentation appended in slices, so that no string is created per line. */
+  private static final String INDENTATION = Strings.repeat(INDENT, 32);
 
   private StringBuilder sb = new StringBuilder();
   private int currentLine = 0;
   private int currentColumn = 0;
   private int currentIndentation = 0;
-  private final SortedMap<SourcePosition, SourcePosition> javaSourceInfoByOutputSourceInfo =
-      new TreeMap<>();
+  // Mappings are recorded in the order they are completed and sorted once the source is built.
+  private final SourceMappings.Builder sourceMappingsBuilder = new SourceMappings.Builder();
+  private SourceMappings sourceMappings;
+  private SortedMap<SourcePosition, SourcePosition> javaSourceInfoByOutputSourceInfo;
   private final Map<Member, SourcePosition> outputSourceInfoByMember = new HashMap<>();
   private boolean finished = false;
 
@@ -61,13 +63,23 @@ class SourceBuilder {
   public void emitWithMapping(SourcePosition javaSourcePosition, Runnable codeEmitter) {
     checkNotNull(javaSourcePosition);
 
-    Optional<SourcePosition> jsSourcePosition = emit(codeEmitter);
+    int startLine = currentLine;
+    int startColumn = currentColumn;
+    int startOffset = sb.length();
+    codeEmitter.run();
 
-    if (!jsSourcePosition.isPresent()) {
+    if (sb.length() == startOffset) {
       // Do not record empty mappings.
       return;
     }
-    javaSourceInfoByOutputSourceInfo.put(jsSourcePosition.get(), javaSourcePosition);
+    sourceMappingsBuilder.addMapping(
+        startLine,
+        startColumn,
+        startOffset,
+        currentLine,
+        currentColumn,
+        sb.length(),
+        javaSourcePosition);
   }
 
   public void emitWithMemberMapping(Member member, Runnable codeEmitter) {
@@ -76,28 +88,20 @@ class SourceBuilder {
         "Output source info already exists for this member %s",
         member);
 
-    Optional<SourcePosition> jsSourcePosition = emit(codeEmitter);
+    int startLine = currentLine;
+    int startColumn = currentColumn;
+    int startOffset = sb.length();
+    codeEmitter.run();
 
-    if (!jsSourcePosition.isPresent()) {
+    if (sb.length() == startOffset) {
       // Do not record empty mappings.
       return;
     }
 
-    outputSourceInfoByMember.put(member, jsSourcePosition.get());
-  }
-
-  private Optional<SourcePosition> emit(Runnable codeEmitter) {
-    FilePosition startPosition = getCurrentPosition();
-    codeEmitter.run();
-    FilePosition endPosition = getCurrentPosition();
-    if (endPosition.equals(startPosition)) {
-      return Optional.empty();
-    }
-    return Optional.of(
-        SourcePosition.newBuilder()
-            .setStartFilePosition(startPosition)
-            .setEndFilePosition(endPosition)
-            .build());
+    outputSourceInfoByMember.put(
+        member,
+        createSourcePosition(
+            startLine, startColumn, startOffset, currentLine, currentColumn, sb.length()));
   }
 
   /**
@@ -120,7 +124,22 @@ class SourceBuilder {
     finished = true;
   }
 
+  /** Returns the mappings of the source, which needs to be built. */
+  SourceMappings getSourceMappings() {
+    checkState(finished);
+    if (sourceMappings == null) {
+      sourceMappings = sourceMappingsBuilder.build();
+    }
+    return sourceMappings;
+  }
+
   public SortedMap<SourcePosition, SourcePosition> getMappings() {
+    if (!finished) {
+      return sourceMappingsBuilder.build().toMap();
+    }
+    if (javaSourceInfoByOutputSourceInfo == null) {
+      javaSourceInfoByOutputSourceInfo = getSourceMappings().toMap();
+    }
     return javaSourceInfoByOutputSourceInfo;
   }
 
@@ -130,12 +149,28 @@ class SourceBuilder {
 
   public void append(String source) {
     checkState(!finished);
-    String indentedSource =
-        source.replace(LINE_SEPARATOR, LINE_SEPARATOR + Strings.repeat(INDENT, currentIndentation));
+    // Copy the source line by line, indenting the lines that follow a line separator, and keep
+    // track of the position without rescanning the output.
+    int lineStart = 0;
+    for (int lineEnd = source.indexOf(LINE_SEPARATOR_CHAR);
+        lineEnd != -1;
+        lineEnd = source.indexOf(LINE_SEPARATOR_CHAR, lineStart)) {
+      sb.append(source, lineStart, lineEnd + 1);
+      appendIndentation();
+      currentLine++;
+      currentColumn = currentIndentation * INDENT.length();
+      lineStart = lineEnd + 1;
+    }
+    sb.append(source, lineStart, source.length());
+    currentColumn += source.length() - lineStart;
+  }
 
-    sb.append(indentedSource);
-    currentLine += CharMatcher.is(LINE_SEPARATOR_CHAR).countIn(indentedSource);
-    currentColumn = sb.length() - sb.lastIndexOf(LINE_SEPARATOR) - 1;
+  private void appendIndentation() {
+    for (int remaining = currentIndentation * INDENT.length();
+        remaining > 0;
+        remaining -= INDENTATION.length()) {
+      sb.append(INDENTATION, 0, Math.min(remaining, INDENTATION.length()));
+    }
   }
 
   public void appendLines(String... lines) {
@@ -188,11 +223,21 @@ class SourceBuilder {
     append("}");
   }
 
-  private FilePosition getCurrentPosition() {
-    return FilePosition.newBuilder()
-        .setLine(currentLine)
-        .setColumn(currentColumn)
-        .setByteOffset(sb.length())
+  private static SourcePosition createSourcePosition(
+      int startLine, int startColumn, int startOffset, int endLine, int endColumn, int endOffset) {
+    return SourcePosition.newBuilder()
+        .setStartFilePosition(
+            FilePosition.newBuilder()
+                .setLine(startLine)
+                .setColumn(startColumn)
+                .setByteOffset(startOffset)
+                .build())
+        .setEndFilePosition(
+            FilePosition.newBuilder()
+                .setLine(endLine)
+                .setColumn(endColumn)
+                .setByteOffset(endOffset)
+                .build())
         .build();
   }
 }
@@ -15,57 +15,249 @@
  */
 package com.google.j2cl.generator;
 
-import com.google.debugging.sourcemap.FilePosition;
-import com.google.debugging.sourcemap.SourceMapFormat;
-import com.google.debugging.sourcemap.SourceMapGenerator;
-import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
 import com.google.j2cl.ast.Type;
 import com.google.j2cl.common.SourcePosition;
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * Generates the source maps.
+ *
+ * <p>The source maps are encoded in the V3 format directly from the sorted mappings. Mappings can
+ * be nested; the parts of a mapping that are not covered by the mappings it encloses are mapped
+ * to it, and the parts of the output that are not covered by any mapping are left unmapped.
  */
 public class SourceMapGeneratorStage {
 
   public static String generateSourceMaps(
-      Type type, Map<SourcePosition, SourcePosition> javaSourcePositionByOutputSourcePosition)
-      throws IOException {
-    return renderSourceMapToString(type, javaSourcePositionByOutputSourcePosition);
+      Type type, Map<SourcePosition, SourcePosition> javaSourcePositionByOutputSourcePosition) {
+    return generateSourceMaps(
+        type, SourceMappings.fromMap(javaSourcePositionByOutputSourcePosition));
   }
 
-  private static String renderSourceMapToString(
-      Type type, Map<SourcePosition, SourcePosition> javaSourcePositionByOutputSourcePosition)
-      throws IOException {
-    SourceMapGenerator sourceMapGenerator =
-        SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3);
-    for (Entry<SourcePosition, SourcePosition> entry :
-        javaSourcePositionByOutputSourcePosition.entrySet()) {
-      SourcePosition javaSourcePosition = entry.getValue();
-      SourcePosition javaScriptSourcePosition = entry.getKey();
-
-      sourceMapGenerator.addMapping(
-          javaSourcePosition.getFileName(),
-          javaSourcePosition.getName(),
-          toFilePosition(javaSourcePosition.getStartFilePosition()),
-          toFilePosition(javaScriptSourcePosition.getStartFilePosition()),
-          toFilePosition(javaScriptSourcePosition.getEndFilePosition()));
-    }
-    StringBuilder sb = new StringBuilder();
+  static String generateSourceMaps(Type type, SourceMappings sourceMappings) {
     String typeName = type.getDeclaration().getSimpleBinaryName();
-    sourceMapGenerator.appendTo(sb, typeName + JavaScriptImplGenerator.FILE_SUFFIX);
-    return sb.toString();
+    return generateSourceMap(typeName + JavaScriptImplGenerator.FILE_SUFFIX, sourceMappings);
   }
 
-  /**
-   * Converts a j2cl File Position to a JsCompiler sourcemap File Position.
-   *
-   * @param j2clFilePosition
-   * @return JsCompiler sourcemap File Position
-   */
-  private static FilePosition toFilePosition(com.google.j2cl.common.FilePosition j2clFilePosition) {
-    return new FilePosition(j2clFilePosition.getLine(), j2clFilePosition.getColumn());
+  /** Returns the source map of the output file {@code fileName}. */
+  static String generateSourceMap(String fileName, SourceMappings sourceMappings) {
+    return new SourceMapEncoder(sourceMappings).encode(fileName);
+  }
+
+  /** Encodes the mappings of a file in the Source Map V3 format. */
+  private static final class SourceMapEncoder {
+    private static final int NO_MAPPING = -1;
+    private static final String BASE64_DIGITS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int VLQ_BASE_SHIFT = 5;
+    private static final int VLQ_BASE_MASK = (1 << VLQ_BASE_SHIFT) - 1;
+    private static final int VLQ_CONTINUATION_BIT = 1 << VLQ_BASE_SHIFT;
+
+    private final SourceMappings sourceMappings;
+    private final StringBuilder encodedMappings = new StringBuilder();
+    private final Map<String, Integer> indexBySourceFileName = new LinkedHashMap<>();
+    private final Map<String, Integer> indexByName = new LinkedHashMap<>();
+
+    // Position in the output up to which the mappings have been encoded.
+    private int currentOffset = 0;
+    private int currentLine = 0;
+    private int currentColumn = 0;
+    private boolean currentLineHasSegments = false;
+    private int maxMappedLine = 0;
+
+    // Segment fields are encoded relative to the ones of the previous segment.
+    private int previousColumn = 0;
+    private int previousSourceFileIndex = 0;
+    private int previousSourceLine = 0;
+    private int previousSourceColumn = 0;
+    private int previousNameIndex = 0;
+
+    SourceMapEncoder(SourceMappings sourceMappings) {
+      this.sourceMappings = sourceMappings;
+    }
+
+    String encode(String fileName) {
+      encodeMappings();
+
+      StringBuilder sb = new StringBuilder();
+      sb.append("{\n\"version\":3");
+      sb.append(",\n\"file\":");
+      appendJsonString(sb, fileName);
+      sb.append(",\n\"lineCount\":").append(maxMappedLine + 1);
+      sb.append(",\n\"mappings\":\"").append(encodedMappings).append('"');
+      sb.append(",\n\"sources\":");
+      appendJsonArray(sb, indexBySourceFileName.keySet());
+      sb.append(",\n\"names\":");
+      appendJsonArray(sb, indexByName.keySet());
+      sb.append("\n}\n");
+      return sb.toString();
+    }
+
+    private void encodeMappings() {
+      // The mappings that enclose the current position, innermost last.
+      int[] openMappings = new int[16];
+      int openMappingCount = 0;
+      for (int mapping = 0; mapping < sourceMappings.size(); mapping++) {
+        SourcePosition javaSourcePosition = sourceMappings.getJavaSourcePosition(mapping);
+        if (javaSourcePosition.getFileName() == null
+            || javaSourcePosition.getStartFilePosition().getLine() < 0) {
+          // Not enough information to be useful.
+          continue;
+        }
+        int startOffset = sourceMappings.getOutputStartOffset(mapping);
+        while (openMappingCount > 0
+            && sourceMappings.getOutputEndOffset(openMappings[openMappingCount - 1])
+                < startOffset) {
+          closeMapping(openMappings[--openMappingCount]);
+        }
+        // Whatever precedes this mapping belongs to the mapping that encloses it, if any.
+        encodeSegment(
+            openMappingCount == 0 ? NO_MAPPING : openMappings[openMappingCount - 1],
+            startOffset,
+            sourceMappings.getOutputStartLine(mapping),
+            sourceMappings.getOutputStartColumn(mapping));
+
+        if (openMappingCount == openMappings.length) {
+          openMappings = Arrays.copyOf(openMappings, openMappings.length * 2);
+        }
+        openMappings[openMappingCount++] = mapping;
+      }
+      while (openMappingCount > 0) {
+        closeMapping(openMappings[--openMappingCount]);
+      }
+      trimUnmappedLines();
+    }
+
+    /**
+     * Leaves out the segments that follow the last mapped line, which are all unmapped, and
+     * terminates the mappings, as the Closure generator did.
+     */
+    private void trimUnmappedLines() {
+      int lineCount = 0;
+      for (int i = 0; i < encodedMappings.length(); i++) {
+        if (encodedMappings.charAt(i) == ';' && ++lineCount > maxMappedLine) {
+          encodedMappings.setLength(i + 1);
+          break;
+        }
+      }
+      encodedMappings.append(';');
+    }
+
+    /** Encodes the part of the mapping that follows the last mapping it encloses. */
+    private void closeMapping(int mapping) {
+      encodeSegment(
+          mapping,
+          sourceMappings.getOutputEndOffset(mapping),
+          sourceMappings.getOutputEndLine(mapping),
+          sourceMappings.getOutputEndColumn(mapping));
+    }
+
+    /**
+     * Encodes a segment that maps the output from the current position up to the given end
+     * position to {@code mapping}, or leaves it unmapped if there is no mapping.
+     */
+    private void encodeSegment(int mapping, int endOffset, int endLine, int endColumn) {
+      if (currentOffset >= endOffset) {
+        return;
+      }
+
+      if (currentLineHasSegments) {
+        encodedMappings.append(',');
+      }
+      currentLineHasSegments = true;
+      encodeVlq(currentColumn - previousColumn);
+      previousColumn = currentColumn;
+
+      if (mapping != NO_MAPPING) {
+        SourcePosition javaSourcePosition = sourceMappings.getJavaSourcePosition(mapping);
+        int sourceFileIndex = getIndex(indexBySourceFileName, javaSourcePosition.getFileName());
+        int sourceLine = javaSourcePosition.getStartFilePosition().getLine();
+        int sourceColumn = javaSourcePosition.getStartFilePosition().getColumn();
+        encodeVlq(sourceFileIndex - previousSourceFileIndex);
+        encodeVlq(sourceLine - previousSourceLine);
+        encodeVlq(sourceColumn - previousSourceColumn);
+        previousSourceFileIndex = sourceFileIndex;
+        previousSourceLine = sourceLine;
+        previousSourceColumn = sourceColumn;
+
+        if (javaSourcePosition.getName() != null) {
+          int nameIndex = getIndex(indexByName, javaSourcePosition.getName());
+          encodeVlq(nameIndex - previousNameIndex);
+          previousNameIndex = nameIndex;
+        }
+        maxMappedLine = Math.max(maxMappedLine, sourceMappings.getOutputEndLine(mapping));
+      }
+
+      for (; currentLine < endLine; currentLine++) {
+        encodedMappings.append(';');
+        previousColumn = 0;
+        currentLineHasSegments = false;
+      }
+      currentOffset = endOffset;
+      currentColumn = endColumn;
+    }
+
+    private void encodeVlq(int value) {
+      int vlq = value < 0 ? ((-value) << 1) + 1 : value << 1;
+      do {
+        int digit = vlq & VLQ_BASE_MASK;
+        vlq >>>= VLQ_BASE_SHIFT;
+        if (vlq > 0) {
+          digit |= VLQ_CONTINUATION_BIT;
+        }
+        encodedMappings.append(BASE64_DIGITS.charAt(digit));
+      } while (vlq > 0);
+    }
+
+    private static int getIndex(Map<String, Integer> indexByString, String string) {
+      Integer index = indexByString.get(string);
+      if (index == null) {
+        index = indexByString.size();
+        indexByString.put(string, index);
+      }
+      return index;
+    }
+
+    private static void appendJsonArray(StringBuilder sb, Iterable<String> strings) {
+      sb.append('[');
+      String separator = "";
+      for (String string : strings) {
+        sb.append(separator);
+        appendJsonString(sb, string);
+        separator = ",";
+      }
+      sb.append(']');
+    }
+
+    private static void appendJsonString(StringBuilder sb, String string) {
+      sb.append('"');
+      for (int i = 0; i < string.length(); i++) {
+        char c = string.charAt(i);
+        switch (c) {
+          case '"':
+          case '\\':
+            sb.append('\\').append(c);
+            break;
+          case '\n':
+            sb.append("\\n");
+            break;
+          case '\r':
+            sb.append("\\r");
+            break;
+          case '\t':
+            sb.append("\\t");
+            break;
+          default:
+            if (c < 0x20) {
+              sb.append(String.format("\\u%04x", (int) c));
+            } else {
+              sb.append(c);
+            }
+        }
+      }
+      sb.append('"');
+    }
   }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.generator;
+
+import com.google.j2cl.common.FilePosition;
+import com.google.j2cl.common.SourcePosition;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The mappings from output positions to Java source positions of a generated file, sorted by
+ * output start position.
+ *
+ * <p>Output positions are kept as ints, {@link SourcePosition}s for them are only created on
+ * demand.
+ */
+final class SourceMappings {
+  private static final int START_LINE = 0;
+  private static final int START_COLUMN = 1;
+  private static final int START_OFFSET = 2;
+  private static final int END_LINE = 3;
+  private static final int END_COLUMN = 4;
+  private static final int END_OFFSET = 5;
+  private static final int MAPPING_SIZE = 6;
+
+  /** Collects mappings in any order. */
+  static final class Builder {
+    private int[] outputPositions = new int[64 * MAPPING_SIZE];
+    private SourcePosition[] javaSourcePositions = new SourcePosition[64];
+    private int mappingCount = 0;
+
+    Builder addMapping(
+        int startLine,
+        int startColumn,
+        int startOffset,
+        int endLine,
+        int endColumn,
+        int endOffset,
+        SourcePosition javaSourcePosition) {
+      if (mappingCount == javaSourcePositions.length) {
+        outputPositions = Arrays.copyOf(outputPositions, outputPositions.length * 2);
+        javaSourcePositions = Arrays.copyOf(javaSourcePositions, javaSourcePositions.length * 2);
+      }
+      int offset = mappingCount * MAPPING_SIZE;
+      outputPositions[offset + START_LINE] = startLine;
+      outputPositions[offset + START_COLUMN] = startColumn;
+      outputPositions[offset + START_OFFSET] = startOffset;
+      outputPositions[offset + END_LINE] = endLine;
+      outputPositions[offset + END_COLUMN] = endColumn;
+      outputPositions[offset + END_OFFSET] = endOffset;
+      javaSourcePositions[mappingCount] = javaSourcePosition;
+      mappingCount++;
+      return this;
+    }
+
+    /**
+     * Returns the mappings sorted by output start position. Like in a map keyed by output
+     * position, when several mappings start at the same position the output position of the first
+     * one added is kept along with the Java position of the last one added.
+     */
+    SourceMappings build() {
+      long[] keys = new long[mappingCount];
+      for (int i = 0; i < mappingCount; i++) {
+        keys[i] = ((long) outputPositions[i * MAPPING_SIZE + START_OFFSET] << 32) | i;
+      }
+      Arrays.sort(keys);
+
+      int[] sortedOutputPositions = new int[mappingCount * MAPPING_SIZE];
+      SourcePosition[] sortedJavaSourcePositions = new SourcePosition[mappingCount];
+      int size = 0;
+      for (int i = 0; i < mappingCount; i++) {
+        int mapping = (int) keys[i];
+        int startOffset = outputPositions[mapping * MAPPING_SIZE + START_OFFSET];
+        if (size > 0
+            && sortedOutputPositions[(size - 1) * MAPPING_SIZE + START_OFFSET] == startOffset) {
+          sortedJavaSourcePositions[size - 1] = javaSourcePositions[mapping];
+          continue;
+        }
+        System.arraycopy(
+            outputPositions,
+            mapping * MAPPING_SIZE,
+            sortedOutputPositions,
+            size * MAPPING_SIZE,
+            MAPPING_SIZE);
+        sortedJavaSourcePositions[size] = javaSourcePositions[mapping];
+        size++;
+      }
+      return new SourceMappings(sortedOutputPositions, sortedJavaSourcePositions, size);
+    }
+  }
+
+  /** Creates the mappings from a map keyed by output position. */
+  static SourceMappings fromMap(Map<SourcePosition, SourcePosition> javaSourcePositionByOutput) {
+    Builder builder = new Builder();
+    javaSourcePositionByOutput.forEach(
+        (outputPosition, javaSourcePosition) ->
+            builder.addMapping(
+                outputPosition.getStartFilePosition().getLine(),
+                outputPosition.getStartFilePosition().getColumn(),
+                outputPosition.getStartFilePosition().getByteOffset(),
+                outputPosition.getEndFilePosition().getLine(),
+                outputPosition.getEndFilePosition().getColumn(),
+                outputPosition.getEndFilePosition().getByteOffset(),
+                javaSourcePosition));
+    return builder.build();
+  }
+
+  private final int[] outputPositions;
+  private final SourcePosition[] javaSourcePositions;
+  private final int size;
+
+  private SourceMappings(int[] outputPositions, SourcePosition[] javaSourcePositions, int size) {
+    this.outputPositions = outputPositions;
+    this.javaSourcePositions = javaSourcePositions;
+    this.size = size;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int getOutputStartLine(int mapping) {
+    return outputPositions[mapping * MAPPING_SIZE + START_LINE];
+  }
+
+  int getOutputStartColumn(int mapping) {
+    return outputPositions[mapping * MAPPING_SIZE + START_COLUMN];
+  }
+
+  int getOutputStartOffset(int mapping) {
+    return outputPositions[mapping * MAPPING_SIZE + START_OFFSET];
+  }
+
+  int getOutputEndLine(int mapping) {
+    return outputPositions[mapping * MAPPING_SIZE + END_LINE];
+  }
+
+  int getOutputEndColumn(int mapping) {
+    return outputPositions[mapping * MAPPING_SIZE + END_COLUMN];
+  }
+
+  int getOutputEndOffset(int mapping) {
+    return outputPositions[mapping * MAPPING_SIZE + END_OFFSET];
+  }
+
+  SourcePosition getJavaSourcePosition(int mapping) {
+    return javaSourcePositions[mapping];
+  }
+
+  SourcePosition getOutputSourcePosition(int mapping) {
+    return SourcePosition.newBuilder()
+        .setStartFilePosition(
+            FilePosition.newBuilder()
+                .setLine(getOutputStartLine(mapping))
+                .setColumn(getOutputStartColumn(mapping))
+                .setByteOffset(getOutputStartOffset(mapping))
+                .build())
+        .setEndFilePosition(
+            FilePosition.newBuilder()
+                .setLine(getOutputEndLine(mapping))
+                .setColumn(getOutputEndColumn(mapping))
+                .setByteOffset(getOutputEndOffset(mapping))
+                .build())
+        .build();
+  }
+
+  /** Returns the mappings keyed by output position. */
+  SortedMap<SourcePosition, SourcePosition> toMap() {
+    SortedMap<SourcePosition, SourcePosition> javaSourcePositionByOutputPosition = new TreeMap<>();
+    for (int i = 0; i < size; i++) {
+      javaSourcePositionByOutputPosition.put(getOutputSourcePosition(i), getJavaSourcePosition(i));
+    }
+    return javaSourcePositionByOutputPosition;
+  }
+}
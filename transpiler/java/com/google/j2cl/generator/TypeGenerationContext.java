@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.generator;
+
+import com.google.common.collect.Multimap;
+import com.google.j2cl.ast.HasName;
+import com.google.j2cl.ast.Type;
+import com.google.j2cl.generator.ImportGatherer.ImportCategory;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The imports and variable names of a type, which are computed once and shared by the generators
+ * of the header and impl files of the type.
+ */
+public final class TypeGenerationContext {
+  private final Type type;
+  private final boolean declareLegacyNamespace;
+  private final Multimap<ImportCategory, Import> importsByCategory;
+  private final GenerationEnvironment environment;
+
+  public static TypeGenerationContext create(Type type, boolean declareLegacyNamespace) {
+    Multimap<ImportCategory, Import> importsByCategory =
+        ImportGatherer.gatherImports(type, declareLegacyNamespace);
+    Collection<Import> imports = importsByCategory.values();
+    Map<HasName, String> uniqueNameByVariable =
+        UniqueVariableNamesGatherer.computeUniqueVariableNames(imports, type);
+    return new TypeGenerationContext(
+        type,
+        declareLegacyNamespace,
+        importsByCategory,
+        new GenerationEnvironment(imports, uniqueNameByVariable));
+  }
+
+  private TypeGenerationContext(
+      Type type,
+      boolean declareLegacyNamespace,
+      Multimap<ImportCategory, Import> importsByCategory,
+      GenerationEnvironment environment) {
+    this.type = type;
+    this.declareLegacyNamespace = declareLegacyNamespace;
+    this.importsByCategory = importsByCategory;
+    this.environment = environment;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public boolean getDeclareLegacyNamespace() {
+    return declareLegacyNamespace;
+  }
+
+  Multimap<ImportCategory, Import> getImportsByCategory() {
+    return importsByCategory;
+  }
+
+  GenerationEnvironment getEnvironment() {
+    return environment;
+  }
+}
@@ -55,8 +55,9 @@ public final class LibraryInfoBuilder {
     }
   }
 
+  /** Serialize a LibraryInfo object in its compact encoding, which is read by RTA. */
   public static byte[] toByteArray(LibraryInfo.Builder libraryInfo) {
-    return libraryInfo.build().toByteArray();
+    return LibraryInfoCompactor.compact(libraryInfo).toByteArray();
   }
 
   /** Gather information from a Type and create a TypeInfo object used to build the call graph. */
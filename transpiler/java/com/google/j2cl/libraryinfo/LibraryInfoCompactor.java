@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.j2cl.libraryinfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts between LibraryInfo and its compact encoding, in which names are stored once in a table.
+ *
+ * <p>The same type ids and member names are referenced many times in a library, storing them once
+ * makes the library info files several times smaller and faster to parse.
+ */
+public final class LibraryInfoCompactor {
+
+  /** The version of the compact encoding, to be bumped on every incompatible change. */
+  public static final int FORMAT_VERSION = 1;
+
+  /** Returns the compact encoding of {@code libraryInfo}. */
+  public static CompactLibraryInfo compact(LibraryInfoOrBuilder libraryInfo) {
+    return new LibraryInfoCompactor().compactLibraryInfo(libraryInfo);
+  }
+
+  /**
+   * Parses a library info file, failing if it was not written with the current version of the
+   * compact encoding.
+   */
+  public static CompactLibraryInfo parseFrom(InputStream inputStream) throws IOException {
+    CompactLibraryInfo libraryInfo = CompactLibraryInfo.parseFrom(inputStream);
+    if (libraryInfo.getFormatVersion() != FORMAT_VERSION) {
+      throw new IOException(
+          String.format(
+              "Unsupported library info format version %d, expected %d. The file was written by"
+                  + " an incompatible version of the transpiler.",
+              libraryInfo.getFormatVersion(), FORMAT_VERSION));
+    }
+    return libraryInfo;
+  }
+
+  /** Returns the TypeInfo encoded by {@code typeInfo}, whose names index into {@code names}. */
+  public static TypeInfo expand(CompactTypeInfo typeInfo, List<String> names) {
+    TypeInfo.Builder typeInfoBuilder =
+        TypeInfo.newBuilder()
+            .setTypeId(names.get(typeInfo.getTypeId()))
+            .setExtendsType(names.get(typeInfo.getExtendsType()))
+            .setHeaderSourceFilePath(names.get(typeInfo.getHeaderSourceFilePath()))
+            .setImplSourceFilePath(names.get(typeInfo.getImplSourceFilePath()));
+    typeInfo.getImplementsTypeList().forEach(i -> typeInfoBuilder.addImplementsType(names.get(i)));
+
+    for (CompactMemberInfo memberInfo : typeInfo.getMemberList()) {
+      MemberInfo.Builder memberInfoBuilder =
+          MemberInfo.newBuilder()
+              .setName(names.get(memberInfo.getName()))
+              .setPublic(memberInfo.getPublic())
+              .setStatic(memberInfo.getStatic())
+              .setJsAccessible(memberInfo.getJsAccessible());
+      for (CompactMethodInvocation methodInvocation : memberInfo.getInvokedMethodsList()) {
+        memberInfoBuilder.addInvokedMethods(
+            MethodInvocation.newBuilder()
+                .setMethod(names.get(methodInvocation.getMethod()))
+                .setEnclosingType(names.get(methodInvocation.getEnclosingType()))
+                .setKind(methodInvocation.getKind()));
+      }
+      memberInfo
+          .getReferencedTypesList()
+          .forEach(i -> memberInfoBuilder.addReferencedTypes(names.get(i)));
+      if (memberInfo.hasStartPosition()) {
+        memberInfoBuilder.setStartPosition(memberInfo.getStartPosition());
+      }
+      if (memberInfo.hasEndPosition()) {
+        memberInfoBuilder.setEndPosition(memberInfo.getEndPosition());
+      }
+      typeInfoBuilder.addMember(memberInfoBuilder);
+    }
+    return typeInfoBuilder.build();
+  }
+
+  private final CompactLibraryInfo.Builder libraryInfoBuilder = CompactLibraryInfo.newBuilder();
+  private final Map<String, Integer> indexByName = new HashMap<>();
+
+  private LibraryInfoCompactor() {
+    libraryInfoBuilder.setFormatVersion(FORMAT_VERSION);
+    // The empty string is the default value of absent names, make sure it is encoded as 0.
+    getNameIndex("");
+  }
+
+  private CompactLibraryInfo compactLibraryInfo(LibraryInfoOrBuilder libraryInfo) {
+    for (TypeInfo typeInfo : libraryInfo.getTypeList()) {
+      libraryInfoBuilder.addType(compactTypeInfo(typeInfo));
+    }
+    return libraryInfoBuilder.build();
+  }
+
+  private CompactTypeInfo compactTypeInfo(TypeInfo typeInfo) {
+    CompactTypeInfo.Builder typeInfoBuilder =
+        CompactTypeInfo.newBuilder()
+            .setTypeId(getNameIndex(typeInfo.getTypeId()))
+            .setExtendsType(getNameIndex(typeInfo.getExtendsType()))
+            .setHeaderSourceFilePath(getNameIndex(typeInfo.getHeaderSourceFilePath()))
+            .setImplSourceFilePath(getNameIndex(typeInfo.getImplSourceFilePath()));
+    typeInfo
+        .getImplementsTypeList()
+        .forEach(t -> typeInfoBuilder.addImplementsType(getNameIndex(t)));
+
+    for (MemberInfo memberInfo : typeInfo.getMemberList()) {
+      CompactMemberInfo.Builder memberInfoBuilder =
+          CompactMemberInfo.newBuilder()
+              .setName(getNameIndex(memberInfo.getName()))
+              .setPublic(memberInfo.getPublic())
+              .setStatic(memberInfo.getStatic())
+              .setJsAccessible(memberInfo.getJsAccessible());
+      for (MethodInvocation methodInvocation : memberInfo.getInvokedMethodsList()) {
+        memberInfoBuilder.addInvokedMethods(
+            CompactMethodInvocation.newBuilder()
+                .setMethod(getNameIndex(methodInvocation.getMethod()))
+                .setEnclosingType(getNameIndex(methodInvocation.getEnclosingType()))
+                .setKind(methodInvocation.getKind()));
+      }
+      memberInfo
+          .getReferencedTypesList()
+          .forEach(t -> memberInfoBuilder.addReferencedTypes(getNameIndex(t)));
+      if (memberInfo.hasStartPosition()) {
+        memberInfoBuilder.setStartPosition(memberInfo.getStartPosition());
+      }
+      if (memberInfo.hasEndPosition()) {
+        memberInfoBuilder.setEndPosition(memberInfo.getEndPosition());
+      }
+      typeInfoBuilder.addMember(memberInfoBuilder);
+    }
+    return typeInfoBuilder.build();
+  }
+
+  private int getNameIndex(String name) {
+    return indexByName.computeIfAbsent(
+        name,
+        n -> {
+          libraryInfoBuilder.addName(n);
+          return libraryInfoBuilder.getNameCount() - 1;
+        });
+  }
+}
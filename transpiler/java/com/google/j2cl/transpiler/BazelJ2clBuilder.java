@@ -15,13 +15,18 @@ package com.google.j2cl.transpiler;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.j2cl.bazel.BazelWorker;
-import com.google.j2cl.common.J2clUtils;
+import com.google.j2cl.common.OutputUtils;
+import com.google.j2cl.common.OutputUtils.Output;
 import com.google.j2cl.common.Problems;
 import com.google.j2cl.common.Problems.FatalError;
 import com.google.j2cl.frontend.FrontendUtils;
 import com.google.j2cl.frontend.FrontendUtils.FileInfo;
+import com.google.j2cl.transpiler.J2clTranspilerOptions.VerificationPolicy;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -79,6 +84,59 @@ final class BazelJ2clBuilder extends BazelWorker {
   @Option(name = "-generatekytheindexingmetadata", hidden = true)
   protected boolean generateKytheIndexingMetadata = false;
 
+  @Option(
+      name = "-storeonlyoutput",
+      usage = "Stores the files in the output zip without compressing them.",
+      hidden = true)
+  protected boolean storeOnlyOutput = false;
+
+  @Option(
+      name = "-normalizationthreads",
+      metaVar = "<number>",
+      usage = "Number of threads used to normalize compilation units in parallel.",
+      hidden = true)
+  protected int normalizationThreads = 1;
+
+  @Option(
+      name = "-generationthreads",
+      metaVar = "<number>",
+      usage = "Number of threads used to render the outputs of types in parallel.",
+      hidden = true)
+  protected int generationThreads = 1;
+
+  @Option(
+      name = "-pipelinedepth",
+      metaVar = "<number>",
+      usage =
+          "Number of normalized compilation units that can wait for output generation, 0 disables"
+              + " overlapping normalization and output generation.",
+      hidden = true)
+  protected int pipelineDepth = 0;
+
+  @Option(
+      name = "-incremental",
+      usage =
+          "Reuses the outputs of compilation units that did not change since a previous request"
+              + " to the same worker.",
+      hidden = true)
+  protected boolean incremental = false;
+
+  @Option(
+      name = "-verification",
+      metaVar = "<policy>",
+      usage = "Which compilation units to verify before and after normalization.",
+      hidden = true)
+  protected VerificationPolicy verificationPolicy = VerificationPolicy.ALWAYS;
+
+  @Option(
+      name = "-profileoutput",
+      metaVar = "<path>",
+      usage =
+          "Writes the time and allocations of the transpilation stages and passes to the file in"
+              + " the Chrome trace event format.",
+      hidden = true)
+  protected String profileOutput;
+
   @Override
   protected Problems run() {
     return J2clTranspiler.transpile(createOptions());
@@ -94,7 +152,12 @@ final class BazelJ2clBuilder extends BazelWorker {
       this.readableSourceMaps = false;
     }
 
-    Path outputPath = getZipOutput(this.output, problems);
+    if (this.incremental && (this.readableSourceMaps || this.generateKytheIndexingMetadata)) {
+      // The outputs depend on the location of the sources, which are not part of the cache key.
+      this.incremental = false;
+    }
+
+    Output zipOutput = OutputUtils.initZipOutput(this.output, this.storeOnlyOutput, problems);
     Path libraryInfoOutputPath = Paths.get(this.libraryInfoOutput);
 
     List<FileInfo> allSources =
@@ -114,24 +177,45 @@ final class BazelJ2clBuilder extends BazelWorker {
     // Directly put all supplied js sources into the zip file.
     allSources.stream()
         .filter(p -> p.sourcePath().endsWith(".js") && !p.sourcePath().endsWith("native.js"))
-        .forEach(
-            f ->
-                J2clUtils.copyFile(
-                    Paths.get(f.sourcePath()), outputPath.resolve(f.targetPath()), problems));
+        .forEach(f -> copySource(f, zipOutput, problems));
 
-    return J2clTranspilerOptions.newBuilder()
+    List<String> classpaths = getPathEntries(this.classPath);
+    J2clTranspilerOptions.Builder optionsBuilder = J2clTranspilerOptions.newBuilder();
+    if (this.profileOutput != null) {
+      optionsBuilder.setProfileOutput(Paths.get(this.profileOutput));
+    }
+    return optionsBuilder
         .setSources(allJavaSources)
         .setNativeSources(allNativeSources)
-        .setClasspaths(getPathEntries(this.classPath))
-        .setOutput(outputPath)
+        .setClasspaths(classpaths)
+        .setClasspathDigests(
+            Maps.filterKeys(getInputDigestByPath(), ImmutableSet.copyOf(classpaths)::contains))
+        .setOutput(zipOutput)
         .setLibraryInfoOutput(libraryInfoOutputPath)
         .setEmitReadableLibraryInfo(readableLibraryInfo)
         .setEmitReadableSourceMap(this.readableSourceMaps)
         .setDeclareLegacyNamespace(this.declareLegacyNamespaces)
         .setGenerateKytheIndexingMetadata(this.generateKytheIndexingMetadata)
+        .setNormalizationThreads(this.normalizationThreads)
+        .setGenerationThreads(this.generationThreads)
+        .setPipelineDepth(this.pipelineDepth)
+        .setIncremental(this.incremental)
+        .setVerificationPolicy(this.verificationPolicy)
         .build();
   }
 
+  private static void copySource(FileInfo source, Output output, Problems problems) {
+    if (!source.isInMemory()) {
+      output.copyFile(Paths.get(source.sourcePath()), source.targetPath(), problems);
+      return;
+    }
+    try {
+      output.write(source.targetPath(), source.readContent(), problems);
+    } catch (IOException e) {
+      problems.fatal(FatalError.CANNOT_COPY_FILE, e.toString());
+    }
+  }
+
   private static void checkSourceFiles(List<String> sourceFiles, Problems problems) {
     for (String sourceFile : sourceFiles) {
       if (isValidExtension(sourceFile)) {
@@ -153,10 +237,6 @@ final class BazelJ2clBuilder extends BazelWorker {
         || sourceFile.endsWith(".jar");
   }
 
-  private static Path getZipOutput(String output, Problems problems) {
-    return FrontendUtils.initZipOutput(output, problems).getPath("/");
-  }
-
   private static List<String> getPathEntries(String path) {
     List<String> entries = new ArrayList<>();
     for (String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(path)) {
@@ -17,14 +17,12 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.j2cl.common.CommandLineTool;
+import com.google.j2cl.common.OutputUtils;
 import com.google.j2cl.common.Problems;
 import com.google.j2cl.common.Problems.FatalError;
 import com.google.j2cl.frontend.FrontendUtils;
+import com.google.j2cl.transpiler.J2clTranspilerOptions.VerificationPolicy;
 import java.io.File;
-import java.nio.file.FileSystem;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import org.kohsuke.args4j.Argument;
@@ -77,6 +75,44 @@ public final class J2clCommandLineRunner extends CommandLineTool {
       hidden = true)
   protected boolean generateKytheIndexingMetadata = false;
 
+  @Option(
+      name = "-normalizationthreads",
+      metaVar = "<number>",
+      usage = "Number of threads used to normalize compilation units in parallel.",
+      hidden = true)
+  protected int normalizationThreads = 1;
+
+  @Option(
+      name = "-generationthreads",
+      metaVar = "<number>",
+      usage = "Number of threads used to render the outputs of types in parallel.",
+      hidden = true)
+  protected int generationThreads = 1;
+
+  @Option(
+      name = "-pipelinedepth",
+      metaVar = "<number>",
+      usage =
+          "Number of normalized compilation units that can wait for output generation, 0 disables"
+              + " overlapping normalization and output generation.",
+      hidden = true)
+  protected int pipelineDepth = 0;
+
+  @Option(
+      name = "-incremental",
+      usage =
+          "Reuses the outputs of compilation units that did not change since a previous"
+              + " transpilation in the same process.",
+      hidden = true)
+  protected boolean incremental = false;
+
+  @Option(
+      name = "-verification",
+      metaVar = "<policy>",
+      usage = "Which compilation units to verify before and after normalization.",
+      hidden = true)
+  protected VerificationPolicy verificationPolicy = VerificationPolicy.ALWAYS;
+
   private J2clCommandLineRunner() {
     super("j2cl");
   }
@@ -96,6 +132,11 @@ public final class J2clCommandLineRunner extends CommandLineTool {
       this.readableSourceMaps = false;
     }
 
+    if (this.incremental && (this.readableSourceMaps || this.generateKytheIndexingMetadata)) {
+      // The outputs depend on the location of the sources, which are not part of the cache key.
+      this.incremental = false;
+    }
+
     return J2clTranspilerOptions.newBuilder()
         .setSources(
             FrontendUtils.getAllSources(this.files, problems)
@@ -108,12 +149,17 @@ public final class J2clCommandLineRunner extends CommandLineTool {
         .setClasspaths(getPathEntries(this.classPath))
         .setOutput(
             this.output.endsWith(".zip")
-                ? getZipOutput(this.output, problems)
-                : getDirOutput(this.output, problems))
+                ? OutputUtils.initZipOutput(this.output, /* storeOnly= */ false, problems)
+                : OutputUtils.initDirectoryOutput(this.output, problems))
         .setEmitReadableSourceMap(this.readableSourceMaps)
         .setEmitReadableLibraryInfo(false)
         .setDeclareLegacyNamespace(this.declareLegacyNamespaces)
         .setGenerateKytheIndexingMetadata(this.generateKytheIndexingMetadata)
+        .setNormalizationThreads(this.normalizationThreads)
+        .setGenerationThreads(this.generationThreads)
+        .setPipelineDepth(this.pipelineDepth)
+        .setIncremental(this.incremental)
+        .setVerificationPolicy(this.verificationPolicy)
         .build();
   }
 
@@ -137,19 +183,6 @@ public final class J2clCommandLineRunner extends CommandLineTool {
         || sourceFile.endsWith("-src.jar");
   }
 
-  private static Path getDirOutput(String output, Problems problems) {
-    Path outputPath = Paths.get(output);
-    if (Files.isRegularFile(outputPath)) {
-      problems.fatal(FatalError.OUTPUT_LOCATION, outputPath);
-    }
-    return outputPath;
-  }
-
-  private static Path getZipOutput(String output, Problems problems) {
-    FileSystem newFileSystem = FrontendUtils.initZipOutput(output, problems);
-    return newFileSystem == null ? null : newFileSystem.getPath("/");
-  }
-
   private static List<String> getPathEntries(String path) {
     List<String> entries = new ArrayList<>();
     for (String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(path)) {
@@ -13,8 +13,21 @@
  */
 package com.google.j2cl.transpiler;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.j2cl.ast.CompilationUnit;
 import com.google.j2cl.ast.visitors.ArrayAccessNormalizer;
 import com.google.j2cl.ast.visitors.BridgeMethodsCreator;
@@ -81,22 +94,40 @@ import com.google.j2cl.ast.visitors.OptimizeAnonymousInnerClassesToFunctionExpre
 import com.google.j2cl.ast.visitors.PackagePrivateMethodsDispatcher;
 import com.google.j2cl.ast.visitors.RemoveUnneededJsDocCasts;
 import com.google.j2cl.ast.visitors.UnimplementedMethodsCreator;
-import com.google.j2cl.ast.visitors.VerifyParamAndArgCounts;
-import com.google.j2cl.ast.visitors.VerifySingleAstReference;
-import com.google.j2cl.ast.visitors.VerifyVariableScoping;
+import com.google.j2cl.ast.visitors.VerifyAstInvariants;
+import com.google.j2cl.common.J2clUtils;
 import com.google.j2cl.common.Problems;
 import com.google.j2cl.common.Problems.FatalError;
+import com.google.j2cl.common.SharedThreadLocal;
+import com.google.j2cl.frontend.ApiDigester;
 import com.google.j2cl.frontend.CompilationUnitBuilder;
 import com.google.j2cl.frontend.CompilationUnitsAndTypeBindings;
+import com.google.j2cl.frontend.DescriptorPreloader;
+import com.google.j2cl.frontend.FrontendUtils;
+import com.google.j2cl.frontend.FrontendUtils.FileInfo;
 import com.google.j2cl.frontend.JdtParser;
 import com.google.j2cl.frontend.PackageInfoCache;
+import com.google.j2cl.generator.CompilationUnitOutputs;
 import com.google.j2cl.generator.OutputGeneratorStage;
 import java.io.IOException;
-import java.nio.file.FileSystem;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /** Translation tool for generating JavaScript source files from Java sources. */
 class J2clTranspiler {
@@ -119,188 +150,603 @@ class J2clTranspiler {
 
   private final Problems problems = new Problems();
   private final J2clTranspilerOptions options;
+  private Path inMemorySourcesDir;
+  private List<FileInfo> sourcesOnDisk;
+
+  private final Profiler profiler;
 
   private J2clTranspiler(J2clTranspilerOptions options) {
     this.options = options;
+    this.profiler =
+        options.getProfileOutput().isPresent() ? Profiler.create() : Profiler.DISABLED;
   }
 
+  /** The category of the profiler events for the stages of the transpilation. */
+  private static final String STAGE = "stage";
+  /** The category of the profiler events for the passes that run on each unit. */
+  private static final String PASS = "pass";
+
   private Problems transpileImpl() {
     try {
       CompilationUnitsAndTypeBindings jdtUnitsAndResolvedBindings =
           createJdtUnitsAndResolveBindings();
+      if (options.getIncremental()) {
+        transpileIncrementally(jdtUnitsAndResolvedBindings);
+        return problems;
+      }
       List<CompilationUnit> j2clUnits = convertUnits(jdtUnitsAndResolvedBindings);
       if (!j2clUnits.isEmpty()) {
         checkUnits(j2clUnits);
+      }
+      if (options.getPipelineDepth() > 0) {
+        normalizeAndGenerateOutputs(j2clUnits);
+      } else {
         normalizeUnits(j2clUnits);
+        generateOutputs(j2clUnits);
       }
-      generateOutputs(j2clUnits);
       return problems;
     } catch (Problems.Exit e) {
       return e.getProblems();
     } finally {
-      maybeCloseFileSystem();
+      closeOutput();
+      maybeDeleteInMemorySourcesDir();
+      maybeWriteProfile();
     }
   }
 
   private List<CompilationUnit> convertUnits(
       CompilationUnitsAndTypeBindings compilationUnitsAndTypeBindings) {
+    initPackageInfoCache();
+    return buildUnits(compilationUnitsAndTypeBindings);
+  }
+
+  private void initPackageInfoCache() {
     // Records information about package-info files supplied as byte code.
-    PackageInfoCache.init(options.getClasspaths(), problems);
-    return CompilationUnitBuilder.build(compilationUnitsAndTypeBindings);
+    PackageInfoCache.init(options.getClasspaths(), options.getClasspathDigests(), problems);
+  }
+
+  private List<CompilationUnit> buildUnits(
+      CompilationUnitsAndTypeBindings compilationUnitsAndTypeBindings) {
+    try (Profiler.Scope scope = profiler.start(STAGE, "Build")) {
+      // Make sure the list is mutable, the units are handed over to the output pipeline.
+      return new ArrayList<>(CompilationUnitBuilder.build(compilationUnitsAndTypeBindings));
+    }
+  }
+
+  /** The maximum size of the outputs kept from previous transpilations. */
+  private static final long MAX_CACHED_OUTPUTS_BYTES = 256L * 1024 * 1024;
+
+  /**
+   * The outputs of the compilation units transpiled by this process, keyed by the digest of all
+   * the inputs that determine them (see {@link #getOutputsKey}).
+   */
+  private static final Cache<String, CompilationUnitOutputs> outputsByKey =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_OUTPUTS_BYTES)
+          .weigher((String key, CompilationUnitOutputs outputs) -> outputs.getSize())
+          .recordStats()
+          .build();
+
+  /** Returns how often incremental transpilations reused the outputs of compilation units. */
+  @VisibleForTesting
+  public static CacheStats getCachedOutputsStats() {
+    return outputsByKey.stats();
+  }
+
+  /**
+   * Transpiles the compilation units whose outputs are not cached and replays the outputs of the
+   * rest.
+   *
+   * <p>All sources are still parsed since JDT needs them to resolve bindings, and all units are
+   * built and checked since some checks span the whole library and the problems of the cached
+   * units need to be reported again. But a unit is only normalized and generated if its source or
+   * the API of any of the types it depends on changed since it was last transpiled.
+   */
+  private void transpileIncrementally(
+      CompilationUnitsAndTypeBindings jdtUnitsAndResolvedBindings) {
+    initPackageInfoCache();
+
+    Map<String, org.eclipse.jdt.core.dom.CompilationUnit> jdtUnitsByFilePath =
+        jdtUnitsAndResolvedBindings.getCompilationUnitsByFilePath();
+    Map<String, FileInfo> sourcesByFilePath = new HashMap<>();
+    for (int i = 0; i < sourcesOnDisk.size(); i++) {
+      sourcesByFilePath.put(sourcesOnDisk.get(i).sourcePath(), options.getSources().get(i));
+    }
+
+    ApiDigester apiDigester = new ApiDigester(jdtUnitsAndResolvedBindings);
+    String globalInputsDigest = digestGlobalInputs();
+    Map<String, String> outputsKeyByFilePath = new HashMap<>();
+    Map<String, CompilationUnitOutputs> cachedOutputsByFilePath = new HashMap<>();
+    for (Entry<String, org.eclipse.jdt.core.dom.CompilationUnit> entry :
+        jdtUnitsByFilePath.entrySet()) {
+      String filePath = entry.getKey();
+      if (filePath.endsWith("package-info.java")) {
+        // Source package-info units determine the namespaces of other units and are part of the
+        // global inputs.
+        continue;
+      }
+      String outputsKey =
+          getOutputsKey(
+              globalInputsDigest,
+              sourcesByFilePath.get(filePath),
+              apiDigester.digestDependencies(entry.getValue()));
+      outputsKeyByFilePath.put(filePath, outputsKey);
+      CompilationUnitOutputs cachedOutputs = outputsByKey.getIfPresent(outputsKey);
+      if (cachedOutputs != null) {
+        cachedOutputsByFilePath.put(filePath, cachedOutputs);
+      }
+    }
+
+    List<CompilationUnit> allJ2clUnits = buildUnits(jdtUnitsAndResolvedBindings);
+    if (!allJ2clUnits.isEmpty()) {
+      checkUnits(allJ2clUnits);
+    }
+    List<CompilationUnit> j2clUnits =
+        allJ2clUnits
+            .stream()
+            .filter(j2clUnit -> !cachedOutputsByFilePath.containsKey(j2clUnit.getFilePath()))
+            .collect(Collectors.toList());
+    normalizeUnits(j2clUnits);
+
+    Map<String, CompilationUnitOutputs> generatedOutputsByKey = new HashMap<>();
+    try (Profiler.Scope generationScope = profiler.start(STAGE, "Generate")) {
+      Map<String, CompilationUnit> j2clUnitsByFilePath =
+          Maps.uniqueIndex(j2clUnits, CompilationUnit::getFilePath);
+      OutputGeneratorStage outputGeneratorStage = createOutputGeneratorStage();
+      // Generate in the same order as a full transpilation so that the library info is the same.
+      List<String> filePaths =
+          ImmutableList.sortedCopyOf(
+              CompilationUnitBuilder.BUILD_ORDER, jdtUnitsByFilePath.keySet());
+      for (String filePath : filePaths) {
+        CompilationUnitOutputs cachedOutputs = cachedOutputsByFilePath.get(filePath);
+        if (cachedOutputs != null) {
+          try (Profiler.Scope scope = profiler.start(PASS, "ReplayOutputs", filePath)) {
+            outputGeneratorStage.replayOutputs(cachedOutputs);
+          }
+          continue;
+        }
+        CompilationUnitOutputs outputs =
+            generateOutputs(outputGeneratorStage, j2clUnitsByFilePath.get(filePath));
+        String outputsKey = outputsKeyByFilePath.get(filePath);
+        if (outputsKey != null) {
+          generatedOutputsByKey.put(outputsKey, outputs);
+        }
+      }
+      outputGeneratorStage.finishOutputs();
+    }
+
+    if (!problems.hasErrors()) {
+      outputsByKey.putAll(generatedOutputsByKey);
+    }
+  }
+
+  /**
+   * Returns the digest of the inputs that can affect the outputs of any compilation unit, besides
+   * the types it depends on.
+   */
+  private String digestGlobalInputs() {
+    Hasher hasher =
+        Hashing.sha256()
+            .newHasher()
+            .putBoolean(options.getDeclareLegacyNamespace())
+            .putBoolean(
+                options.getLibraryInfoOutput().isPresent() || options.getEmitReadableLibraryInfo());
+    // Native files are matched to types by path, and source package-info files determine the
+    // namespaces of the types in their packages.
+    for (FileInfo nativeSource : options.getNativeSources()) {
+      putFile(hasher, nativeSource);
+    }
+    for (FileInfo source : options.getSources()) {
+      if (source.targetPath().endsWith("package-info.java")) {
+        putFile(hasher, source);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /** Returns the key of the outputs of the compilation unit in {@code source}. */
+  private String getOutputsKey(
+      String globalInputsDigest, FileInfo source, HashCode dependenciesDigest) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    putString(hasher, globalInputsDigest);
+    putFile(hasher, source);
+    return hasher.putBytes(dependenciesDigest.asBytes()).hash().toString();
+  }
+
+  private void putFile(Hasher hasher, FileInfo file) {
+    // The location of the file determines the paths of the outputs and which native files are
+    // matched by its types.
+    putString(hasher, file.sourcePath());
+    putString(hasher, file.targetPath());
+    try {
+      putString(hasher, file.readContent());
+    } catch (IOException e) {
+      problems.fatal(FatalError.CANNOT_OPEN_FILE, e.toString());
+    }
+  }
+
+  private static void putString(Hasher hasher, String string) {
+    hasher.putInt(string.length()).putString(string, StandardCharsets.UTF_8);
   }
 
   private CompilationUnitsAndTypeBindings createJdtUnitsAndResolveBindings() {
-    JdtParser parser = new JdtParser(options.getClasspaths(), problems);
-    CompilationUnitsAndTypeBindings compilationUnitsAndTypeBindings =
-        parser.parseFiles(options.getSources(), options.getGenerateKytheIndexingMetadata());
-    problems.abortIfHasErrors();
-    return compilationUnitsAndTypeBindings;
+    try (Profiler.Scope scope = profiler.start(STAGE, "Parse")) {
+      JdtParser parser = new JdtParser(options.getClasspaths(), problems);
+      sourcesOnDisk = getSourcesOnDisk();
+      CompilationUnitsAndTypeBindings compilationUnitsAndTypeBindings =
+          parser.parseFiles(sourcesOnDisk, options.getGenerateKytheIndexingMetadata());
+      problems.abortIfHasErrors();
+      return compilationUnitsAndTypeBindings;
+    }
+  }
+
+  /**
+   * Returns the sources to transpile, writing the ones that were read from source jars to a
+   * temporary directory since JDT can only parse files on disk. The directory is deleted when the
+   * transpilation ends.
+   */
+  private List<FileInfo> getSourcesOnDisk() {
+    if (options.getSources().stream().noneMatch(FileInfo::isInMemory)) {
+      return options.getSources();
+    }
+    try {
+      inMemorySourcesDir = Files.createTempDirectory("j2cl_sources");
+    } catch (IOException e) {
+      problems.fatal(FatalError.CANNOT_CREATE_TEMP_DIR, e.getMessage());
+    }
+    return FrontendUtils.writeInMemorySources(options.getSources(), inMemorySourcesDir, problems);
   }
 
   private void checkUnits(List<CompilationUnit> j2clUnits) {
-    JsInteropRestrictionsChecker.check(j2clUnits, problems);
+    try (Profiler.Scope scope = profiler.start(STAGE, "Check")) {
+      JsInteropRestrictionsChecker.check(j2clUnits, problems);
+    }
     problems.abortIfHasErrors();
   }
 
   private void normalizeUnits(List<CompilationUnit> j2clUnits) {
-    // TODO(b/117155139): Review the ordering of passes.
-    List<NormalizationPass> passes =
-        ImmutableList.of(
-            // Class structure normalizations.
-            new ImplementLambdaExpressions(),
-            new OptimizeAnonymousInnerClassesToFunctionExpressions(),
-            new NormalizeFunctionExpressions(),
-            new NormalizeJsEnums(),
-            // Default constructors and explicit super calls should be synthesized first.
-            new CreateDefaultConstructors(),
-            new InsertExplicitSuperCalls(),
-            new DefaultMethodsResolver(),
-            new PackagePrivateMethodsDispatcher(),
-            new BridgeMethodsCreator(),
-            new JsBridgeMethodsCreator(),
-            new DevirtualizeBoxedTypesAndJsFunctionImplementations(),
-            new NormalizeTryWithResources(),
-            new NormalizeCatchClauses(),
-            // Runs before normalizing nested classes.
-            new InsertCastOnNewInstances(),
-            // Must run before Enum normalization
-            new FixSuperCallQualifiers(),
-
-            // Runs after all passes that synthesize overlays.
-            new NormalizeJsOverlayMembers(),
-            new NormalizeEnumClasses(),
-            new NormalizeInterfaceMethods(),
-            // End of class structure normalization.
-
-            // Statement/Expression normalizations
-            new NormalizeArrayLiterals(),
-            new NormalizeStaticMemberQualifiers(),
-            // Runs after NormalizeStaticMemberQualifiersPass.
-            new DevirtualizeMethodCalls(),
-            new ControlStatementFormatter(),
-            new NormalizeMultiExpressions(),
-            // Runs after NormalizeMultiExpressions to make sure it only sees valid l-values.
-            new ExpandCompoundAssignments(),
-            new InsertErasureTypeSafetyCasts(),
-            // Runs before unboxing conversion.
-            new InsertStringConversions(),
-            new InsertNarrowingReferenceConversions(),
-            new InsertUnboxingConversions(),
-            new InsertBoxingConversions(),
-            new InsertNarrowingPrimitiveConversions(),
-            new InsertWideningPrimitiveConversions(),
-            new NormalizeLongs(),
-            new InsertDivisionCoercions(),
-            new InsertBitwiseOperatorBooleanCoercions(),
-            new InsertUnsignedRightShiftCoercions(),
-            new NormalizeJsFunctionPropertyInvocations(),
-            // Run before other passes that normalize JsEnum expressions, but after all the normal
-            // Java semantic conversions.
-            new InsertJsEnumBoxingAndUnboxingConversions(),
-            new NormalizeSwitchStatements(),
-            new ArrayAccessNormalizer(),
-            new ImplementAssertStatements(),
-            new ImplementSynchronizedStatements(),
-            new NormalizeFieldInitialization(),
-            new ImplementInstanceInitialization(),
-            new NormalizeNestedClassConstructors(),
-            new NormalizeConstructors(),
-            new NormalizeTypeLiterals(),
-            new NormalizeCasts(),
-            new NormalizeInstanceOfs(),
-            new NormalizeEquality(),
-            new NormalizeStaticNativeMemberReferences(),
-            new NormalizeJsVarargs(),
-            new NormalizeArrayCreations(),
-            new InsertExceptionConversions(),
-            new NormalizeLiterals(),
-
-            // Needs to run after passes that do code synthesis are run so that it handles the
-            // synthesize code as well.
-            // TODO(b/35241823): Revisit this pass if jscompiler adds a way to express constraints
-            // to template variables.
-            new InsertCastsToTypeBounds(),
-            new RemoveUnneededJsDocCasts(),
-            new NormalizeJsDocCastExpressions(),
-
-            // Dodge OTI limitations.
-            // TODO(b/30365337): remove after JSCompiler stops requiring unnecessary abstract
-            // methods on abstract classes.
-            new UnimplementedMethodsCreator(),
-            // TODO(b/72652198): remove the temporary fix once switch to JSCompiler's new type
-            // checker.
-            new InsertTypeAnnotationOnGenericReturnTypes(),
-
-            // Perform post cleanups.
-            new ImplementStaticInitialization(),
-            // Normalize multiexpressions again to remove unnecessary clutter, but run before
-            // variable motion.
-            new NormalizeMultiExpressions(),
-            new MoveVariableDeclarationsToEnclosingBlock(),
-
-            // Handle await keyword
-            new NormalizeJsAwaitMethodInvocations(),
-
-            // Enrich source mapping information for better stack deobfuscation.
-            new FilloutMissingSourceMapInformation());
-
-    for (CompilationUnit j2clUnit : j2clUnits) {
-      verifyUnit(j2clUnit);
-      for (NormalizationPass pass : passes) {
+    try (Profiler.Scope scope = profiler.start(STAGE, "Normalize")) {
+      if (options.getNormalizationThreads() > 1) {
+        normalizeUnitsInParallel(j2clUnits);
+        return;
+      }
+      for (CompilationUnit j2clUnit : j2clUnits) {
+        normalizeUnit(j2clUnit);
+      }
+    }
+  }
+
+  private void normalizeUnitsInParallel(List<CompilationUnit> j2clUnits) {
+    // Normalization passes only reach JDT through lazily computed descriptor properties, force
+    // those upfront since JDT bindings cannot be used concurrently.
+    DescriptorPreloader.preload(j2clUnits);
+
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(options.getNormalizationThreads());
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (CompilationUnit j2clUnit : j2clUnits) {
+        // Units are normalized independently from each other and share the interned descriptors
+        // with this thread, so the output does not depend on the order in which they complete.
+        results.add(
+            executorService.submit(SharedThreadLocal.propagate(() -> normalizeUnit(j2clUnit))));
+      }
+      results.forEach(J2clTranspiler::getDone);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * Normalizes the units and generates their outputs concurrently.
+   *
+   * <p>Each unit is handed over to output generation as soon as it is normalized, and is released
+   * once its outputs are written. At most {@code getPipelineDepth()} units are in flight between
+   * the two stages.
+   */
+  private void normalizeAndGenerateOutputs(List<CompilationUnit> j2clUnits) {
+    // Output generation runs while other units are being normalized, neither of them can reach JDT
+    // from this point on.
+    DescriptorPreloader.preload(j2clUnits);
+    Deque<CompilationUnit> pendingUnits = new ArrayDeque<>(j2clUnits);
+    j2clUnits.clear();
+
+    BlockingQueue<Future<CompilationUnit>> normalizedUnits =
+        new ArrayBlockingQueue<>(options.getPipelineDepth());
+    ExecutorService normalizationExecutorService =
+        options.getNormalizationThreads() > 1
+            ? Executors.newFixedThreadPool(options.getNormalizationThreads())
+            : MoreExecutors.newDirectExecutorService();
+    ExecutorService generationExecutorService = Executors.newSingleThreadExecutor();
+    try (Profiler.Scope scope = profiler.start(STAGE, "NormalizeAndGenerate")) {
+      OutputGeneratorStage outputGeneratorStage = createOutputGeneratorStage();
+      Future<?> generation =
+          generationExecutorService.submit(
+              SharedThreadLocal.propagate(
+                  () -> generateOutputs(outputGeneratorStage, normalizedUnits)));
+      try {
+        while (!pendingUnits.isEmpty()) {
+          CompilationUnit j2clUnit = pendingUnits.poll();
+          // Units are enqueued in their original order so that the outputs are written in a
+          // deterministic order regardless of which normalization finishes first.
+          Uninterruptibles.putUninterruptibly(
+              normalizedUnits,
+              normalizationExecutorService.submit(
+                  SharedThreadLocal.propagate(
+                      () -> {
+                        normalizeUnit(j2clUnit);
+                        return j2clUnit;
+                      })));
+        }
+      } finally {
+        Uninterruptibles.putUninterruptibly(normalizedUnits, END_OF_UNITS);
+      }
+      getDone(generation);
+    } finally {
+      normalizationExecutorService.shutdown();
+      generationExecutorService.shutdown();
+    }
+  }
+
+  private void generateOutputs(
+      OutputGeneratorStage outputGeneratorStage,
+      BlockingQueue<Future<CompilationUnit>> normalizedUnits) {
+    Throwable failure = null;
+    Future<CompilationUnit> normalizedUnit;
+    while ((normalizedUnit = Uninterruptibles.takeUninterruptibly(normalizedUnits))
+        != END_OF_UNITS) {
+      if (failure != null) {
+        // Keep draining the queue so that the normalization side never blocks.
+        continue;
+      }
+      try {
+        generateOutputs(outputGeneratorStage, getDone(normalizedUnit));
+      } catch (RuntimeException | Error e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      Throwables.throwIfUnchecked(failure);
+      throw new AssertionError(failure);
+    }
+    outputGeneratorStage.finishOutputs();
+  }
+
+  /** Marks the end of the units in the output pipeline. */
+  private static final Future<CompilationUnit> END_OF_UNITS = Futures.immediateFuture(null);
+
+  /** Returns the result of {@code future}, rethrowing the original failure (e.g. Problems.Exit). */
+  private static <T> T getDone(Future<T> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new AssertionError(e.getCause());
+    }
+  }
+
+  private void normalizeUnit(CompilationUnit j2clUnit) {
+    verifyUnit(j2clUnit);
+    for (NormalizationPass pass : createNormalizationPasses()) {
+      try (Profiler.Scope scope =
+          profiler.start(PASS, pass.getClass().getSimpleName(), j2clUnit.getFilePath())) {
         pass.applyTo(j2clUnit);
       }
-      verifyUnit(j2clUnit);
     }
+    verifyUnit(j2clUnit);
+  }
+
+  /**
+   * Returns a fresh instance of every pass; passes may keep state while processing a unit and are
+   * not shared between units.
+   */
+  private static List<NormalizationPass> createNormalizationPasses() {
+    // TODO(b/117155139): Review the ordering of passes.
+    return ImmutableList.of(
+        // Class structure normalizations.
+        new ImplementLambdaExpressions(),
+        new OptimizeAnonymousInnerClassesToFunctionExpressions(),
+        new NormalizeFunctionExpressions(),
+        new NormalizeJsEnums(),
+        // Default constructors and explicit super calls should be synthesized first.
+        new CreateDefaultConstructors(),
+        new InsertExplicitSuperCalls(),
+        new DefaultMethodsResolver(),
+        new PackagePrivateMethodsDispatcher(),
+        new BridgeMethodsCreator(),
+        new JsBridgeMethodsCreator(),
+        new DevirtualizeBoxedTypesAndJsFunctionImplementations(),
+        new NormalizeTryWithResources(),
+        new NormalizeCatchClauses(),
+        // Runs before normalizing nested classes.
+        new InsertCastOnNewInstances(),
+        // Must run before Enum normalization
+        new FixSuperCallQualifiers(),
+
+        // Runs after all passes that synthesize overlays.
+        new NormalizeJsOverlayMembers(),
+        new NormalizeEnumClasses(),
+        new NormalizeInterfaceMethods(),
+        // End of class structure normalization.
+
+        // Statement/Expression normalizations
+        new NormalizeArrayLiterals(),
+        new NormalizeStaticMemberQualifiers(),
+        // Runs after NormalizeStaticMemberQualifiersPass.
+        new DevirtualizeMethodCalls(),
+        new ControlStatementFormatter(),
+        new NormalizeMultiExpressions(),
+        // Runs after NormalizeMultiExpressions to make sure it only sees valid l-values.
+        new ExpandCompoundAssignments(),
+        new InsertErasureTypeSafetyCasts(),
+        // Runs before unboxing conversion.
+        new InsertStringConversions(),
+        new InsertNarrowingReferenceConversions(),
+        new InsertUnboxingConversions(),
+        new InsertBoxingConversions(),
+        new InsertNarrowingPrimitiveConversions(),
+        new InsertWideningPrimitiveConversions(),
+        new NormalizeLongs(),
+        new InsertDivisionCoercions(),
+        new InsertBitwiseOperatorBooleanCoercions(),
+        new InsertUnsignedRightShiftCoercions(),
+        new NormalizeJsFunctionPropertyInvocations(),
+        // Run before other passes that normalize JsEnum expressions, but after all the normal
+        // Java semantic conversions.
+        new InsertJsEnumBoxingAndUnboxingConversions(),
+        new NormalizeSwitchStatements(),
+        new ArrayAccessNormalizer(),
+        new ImplementAssertStatements(),
+        new ImplementSynchronizedStatements(),
+        new NormalizeFieldInitialization(),
+        new ImplementInstanceInitialization(),
+        new NormalizeNestedClassConstructors(),
+        new NormalizeConstructors(),
+        new NormalizeTypeLiterals(),
+        new NormalizeCasts(),
+        new NormalizeInstanceOfs(),
+        new NormalizeEquality(),
+        new NormalizeStaticNativeMemberReferences(),
+        new NormalizeJsVarargs(),
+        new NormalizeArrayCreations(),
+        new InsertExceptionConversions(),
+        new NormalizeLiterals(),
+
+        // Needs to run after passes that do code synthesis are run so that it handles the
+        // synthesize code as well.
+        // TODO(b/35241823): Revisit this pass if jscompiler adds a way to express constraints
+        // to template variables.
+        new InsertCastsToTypeBounds(),
+        new RemoveUnneededJsDocCasts(),
+        new NormalizeJsDocCastExpressions(),
+
+        // Dodge OTI limitations.
+        // TODO(b/30365337): remove after JSCompiler stops requiring unnecessary abstract
+        // methods on abstract classes.
+        new UnimplementedMethodsCreator(),
+        // TODO(b/72652198): remove the temporary fix once switch to JSCompiler's new type
+        // checker.
+        new InsertTypeAnnotationOnGenericReturnTypes(),
+
+        // Perform post cleanups.
+        new ImplementStaticInitialization(),
+        // Normalize multiexpressions again to remove unnecessary clutter, but run before
+        // variable motion.
+        new NormalizeMultiExpressions(),
+        new MoveVariableDeclarationsToEnclosingBlock(),
+
+        // Handle await keyword
+        new NormalizeJsAwaitMethodInvocations(),
+
+        // Enrich source mapping information for better stack deobfuscation.
+        new FilloutMissingSourceMapInformation());
   }
 
   private void verifyUnit(CompilationUnit j2clUnit) {
-    VerifySingleAstReference.applyTo(j2clUnit);
-    VerifyParamAndArgCounts.applyTo(j2clUnit);
-    VerifyVariableScoping.applyTo(j2clUnit);
+    if (!shouldVerify(j2clUnit)) {
+      return;
+    }
+    try (Profiler.Scope scope =
+        profiler.start(PASS, "VerifyAstInvariants", j2clUnit.getFilePath())) {
+      VerifyAstInvariants.applyTo(j2clUnit);
+    }
+  }
+
+  /** One in this many compilation units is verified with the sampled verification policy. */
+  private static final int VERIFICATION_SAMPLING_RATE = 10;
+
+  private boolean shouldVerify(CompilationUnit j2clUnit) {
+    switch (options.getVerificationPolicy()) {
+      case ALWAYS:
+        return true;
+      case SAMPLED:
+        // Sample by path so that the same units are verified in every build, which keeps failures
+        // reproducible.
+        return Math.floorMod(j2clUnit.getFilePath().hashCode(), VERIFICATION_SAMPLING_RATE) == 0;
+      case DEBUG_ONLY:
+        return J2clTranspiler.class.desiredAssertionStatus();
+      case OFF:
+        return false;
+    }
+    throw new AssertionError(options.getVerificationPolicy());
   }
 
   private void generateOutputs(List<CompilationUnit> j2clCompilationUnits) {
-    new OutputGeneratorStage(
-            options.getNativeSources(),
-            options.getOutput(),
-            options.getLibraryInfoOutput(),
-            options.getDeclareLegacyNamespace(),
-            options.getEmitReadableLibraryInfo(),
-            options.getEmitReadableSourceMap(),
-            options.getGenerateKytheIndexingMetadata(),
-            problems)
-        .generateOutputs(j2clCompilationUnits);
-  }
-
-  private void maybeCloseFileSystem() {
-    FileSystem outputFileSystem = options.getOutput().getFileSystem();
-    if (outputFileSystem.getClass().getCanonicalName().equals("com.sun.nio.zipfs.ZipFileSystem")
-        || outputFileSystem.getClass().getCanonicalName().equals("jdk.nio.zipfs.ZipFileSystem")) {
-      try {
-        outputFileSystem.close();
-      } catch (IOException e) {
-        problems.fatal(FatalError.CANNOT_CLOSE_ZIP, e.getMessage());
+    try (Profiler.Scope scope = profiler.start(STAGE, "Generate")) {
+      if (options.getGenerationThreads() > 1) {
+        generateOutputsInParallel(j2clCompilationUnits);
+        return;
       }
+      OutputGeneratorStage outputGeneratorStage = createOutputGeneratorStage();
+      for (CompilationUnit j2clCompilationUnit : j2clCompilationUnits) {
+        generateOutputs(outputGeneratorStage, j2clCompilationUnit);
+      }
+      outputGeneratorStage.finishOutputs();
+    }
+  }
+
+  private CompilationUnitOutputs generateOutputs(
+      OutputGeneratorStage outputGeneratorStage, CompilationUnit j2clCompilationUnit) {
+    try (Profiler.Scope scope =
+        profiler.start(PASS, "GenerateOutputs", j2clCompilationUnit.getFilePath())) {
+      return outputGeneratorStage.generateOutputs(j2clCompilationUnit);
+    }
+  }
+
+  private void generateOutputsInParallel(List<CompilationUnit> j2clCompilationUnits) {
+    // Types are rendered on worker threads, none of them can reach JDT. Normalization might have
+    // introduced new descriptors.
+    DescriptorPreloader.preload(j2clCompilationUnits);
+
+    ExecutorService executorService = Executors.newFixedThreadPool(options.getGenerationThreads());
+    try {
+      // Outputs are written in the order of the units regardless of which rendering finishes
+      // first, so the output is identical to the one of a sequential generation.
+      createOutputGeneratorStage(executorService).generateOutputs(j2clCompilationUnits);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  private OutputGeneratorStage createOutputGeneratorStage() {
+    return createOutputGeneratorStage(MoreExecutors.directExecutor());
+  }
+
+  private OutputGeneratorStage createOutputGeneratorStage(Executor renderingExecutor) {
+    return new OutputGeneratorStage(
+        options.getNativeSources(),
+        options.getOutput(),
+        options.getLibraryInfoOutput(),
+        options.getDeclareLegacyNamespace(),
+        options.getEmitReadableLibraryInfo(),
+        options.getEmitReadableSourceMap(),
+        options.getGenerateKytheIndexingMetadata(),
+        renderingExecutor,
+        problems);
+  }
+
+  private void maybeDeleteInMemorySourcesDir() {
+    if (inMemorySourcesDir == null) {
+      return;
+    }
+    try {
+      MoreFiles.deleteRecursively(inMemorySourcesDir, RecursiveDeleteOption.ALLOW_INSECURE);
+    } catch (IOException e) {
+      // Leaving temporary files behind does not affect the result of the transpilation.
+    }
+  }
+
+  private void closeOutput() {
+    try (Profiler.Scope scope = profiler.start(STAGE, "Write")) {
+      options.getOutput().close();
+    } catch (IOException e) {
+      problems.fatal(FatalError.CANNOT_CLOSE_ZIP, e.getMessage());
+    }
+  }
+
+  private void maybeWriteProfile() {
+    if (options.getProfileOutput().isPresent()) {
+      J2clUtils.writeToFile(options.getProfileOutput().get(), profiler.toJson(), problems);
     }
   }
 }
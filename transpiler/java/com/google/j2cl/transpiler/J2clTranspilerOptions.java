@@ -18,9 +18,12 @@ package com.google.j2cl.transpiler;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
+import com.google.j2cl.common.OutputUtils.Output;
 import com.google.j2cl.frontend.FrontendUtils.FileInfo;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /** Frontend options, which is initialized by a Flag instance that is already parsed. */
@@ -33,7 +36,13 @@ public abstract class J2clTranspilerOptions {
 
   public abstract List<String> getClasspaths();
 
-  public abstract Path getOutput();
+  /**
+   * Content digests of the classpath entries, keyed by entry. Allows information extracted from
+   * the classpath to be reused across transpilations that run in the same process.
+   */
+  public abstract ImmutableMap<String, String> getClasspathDigests();
+
+  public abstract Output getOutput();
 
   public abstract Optional<Path> getLibraryInfoOutput();
 
@@ -45,8 +54,59 @@ public abstract class J2clTranspilerOptions {
 
   public abstract boolean getGenerateKytheIndexingMetadata();
 
+  /** The number of threads used to normalize compilation units, 1 means no parallelism. */
+  public abstract int getNormalizationThreads();
+
+  /**
+   * The number of threads used to render the outputs of types, 1 means no parallelism. Only used
+   * when normalization and output generation are not pipelined or incremental.
+   */
+  public abstract int getGenerationThreads();
+
+  /**
+   * The maximum number of normalized units waiting for output generation, 0 means that all units
+   * are normalized before any output is generated.
+   */
+  public abstract int getPipelineDepth();
+
+  /**
+   * Whether to reuse the outputs of compilation units whose source and dependencies did not change
+   * since a previous transpilation in the same process.
+   */
+  public abstract boolean getIncremental();
+
+  /**
+   * Where to write the time and allocations of each stage and pass of the transpilation, in the
+   * Chrome trace event format. No profiling is done if absent.
+   */
+  public abstract Optional<Path> getProfileOutput();
+
+  /** Which compilation units get their AST verified before and after normalization. */
+  public abstract VerificationPolicy getVerificationPolicy();
+
+  /** Determines which compilation units are verified. */
+  public enum VerificationPolicy {
+    /** Verifies every compilation unit. */
+    ALWAYS,
+    /**
+     * Verifies a fixed subset of the compilation units, chosen by their path, so that bugs still
+     * surface across a large code base at a fraction of the cost.
+     */
+    SAMPLED,
+    /** Verifies every compilation unit when Java assertions are enabled. */
+    DEBUG_ONLY,
+    /** Does not verify any compilation unit. */
+    OFF
+  }
+
   public static Builder newBuilder() {
-    return new AutoValue_J2clTranspilerOptions.Builder();
+    return new AutoValue_J2clTranspilerOptions.Builder()
+        .setClasspathDigests(ImmutableMap.of())
+        .setNormalizationThreads(1)
+        .setGenerationThreads(1)
+        .setPipelineDepth(0)
+        .setIncremental(false)
+        .setVerificationPolicy(VerificationPolicy.ALWAYS);
   }
 
   /** A Builder for J2clTranspilerOptions. */
@@ -59,7 +119,9 @@ public abstract class J2clTranspilerOptions {
 
     public abstract Builder setClasspaths(List<String> entries);
 
-    public abstract Builder setOutput(Path path);
+    public abstract Builder setClasspathDigests(Map<String, String> digestsByEntry);
+
+    public abstract Builder setOutput(Output output);
 
     public abstract Builder setLibraryInfoOutput(Path path);
 
@@ -71,6 +133,18 @@ public abstract class J2clTranspilerOptions {
 
     public abstract Builder setGenerateKytheIndexingMetadata(boolean b);
 
+    public abstract Builder setNormalizationThreads(int threads);
+
+    public abstract Builder setGenerationThreads(int threads);
+
+    public abstract Builder setPipelineDepth(int depth);
+
+    public abstract Builder setIncremental(boolean b);
+
+    public abstract Builder setProfileOutput(Path path);
+
+    public abstract Builder setVerificationPolicy(VerificationPolicy policy);
+
     abstract J2clTranspilerOptions autoBuild();
 
     public J2clTranspilerOptions build() {
@@ -79,6 +153,13 @@ public abstract class J2clTranspilerOptions {
           !options.getEmitReadableSourceMap() || !options.getGenerateKytheIndexingMetadata());
       checkState(
           !options.getEmitReadableLibraryInfo() || options.getLibraryInfoOutput().isPresent());
+      checkState(options.getNormalizationThreads() > 0);
+      checkState(options.getGenerationThreads() > 0);
+      checkState(options.getPipelineDepth() >= 0);
+      checkState(
+          !options.getIncremental()
+              || (!options.getEmitReadableSourceMap()
+                  && !options.getGenerateKytheIndexingMetadata()));
       return options;
     }
   }
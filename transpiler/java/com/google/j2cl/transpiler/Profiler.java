@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.transpiler;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of the stages and passes of a transpilation.
+ *
+ * <p>The report is in the Chrome trace event format, which can be loaded in chrome://tracing and is
+ * easy to aggregate. Each record is a complete event ("ph": "X") in the thread that did the work;
+ * CPU time and allocations are in its arguments.
+ */
+@SuppressWarnings("unused") // Fields are accessed through reflection by GSON.
+final class Profiler {
+
+  /** A profiler that does not record anything. */
+  static final Profiler DISABLED = new Profiler(false);
+
+  static Profiler create() {
+    return new Profiler(true);
+  }
+
+  /** A measured section of work, which is recorded when closed. */
+  interface Scope extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final Scope NO_OP_SCOPE = () -> {};
+
+  private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  private final boolean enabled;
+  private final long startNanos = System.nanoTime();
+  private final List<TraceEvent> traceEvents = Collections.synchronizedList(new ArrayList<>());
+
+  private Profiler(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Starts measuring a stage of the transpilation. */
+  Scope start(String category, String name) {
+    return start(category, name, null);
+  }
+
+  /** Starts measuring the work done by {@code name} on the compilation unit {@code unit}. */
+  Scope start(String category, String name, String unit) {
+    if (!enabled) {
+      return NO_OP_SCOPE;
+    }
+    Thread thread = Thread.currentThread();
+    // Measurements that are not supported or not enabled in the JVM are left out of the report.
+    boolean measureCpuTime = isCpuTimeMeasured();
+    boolean measureAllocations = isAllocationMeasured();
+    long startWallNanos = System.nanoTime();
+    long startCpuNanos = measureCpuTime ? threadMXBean.getCurrentThreadCpuTime() : 0;
+    long startAllocatedBytes = measureAllocations ? getAllocatedBytes(thread) : 0;
+    return () -> {
+      Map<String, Object> args = new LinkedHashMap<>();
+      if (unit != null) {
+        args.put("unit", unit);
+      }
+      if (measureCpuTime) {
+        args.put("cpuMicros", (threadMXBean.getCurrentThreadCpuTime() - startCpuNanos) / 1000);
+      }
+      if (measureAllocations) {
+        args.put("allocatedBytes", getAllocatedBytes(thread) - startAllocatedBytes);
+      }
+      long wallNanos = System.nanoTime() - startWallNanos;
+      traceEvents.add(
+          new TraceEvent(
+              name,
+              category,
+              (startWallNanos - startNanos) / 1000,
+              wallNanos / 1000,
+              thread.getId(),
+              args));
+    };
+  }
+
+  /** Returns the report in the Chrome trace event format. */
+  String toJson() {
+    synchronized (traceEvents) {
+      return new Gson().toJson(new Trace(new ArrayList<>(traceEvents)));
+    }
+  }
+
+  private static boolean isCpuTimeMeasured() {
+    return threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+  }
+
+  private static boolean isAllocationMeasured() {
+    if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+      return false;
+    }
+    com.sun.management.ThreadMXBean allocationsMXBean =
+        (com.sun.management.ThreadMXBean) threadMXBean;
+    return allocationsMXBean.isThreadAllocatedMemorySupported()
+        && allocationsMXBean.isThreadAllocatedMemoryEnabled();
+  }
+
+  private static long getAllocatedBytes(Thread thread) {
+    return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(thread.getId());
+  }
+
+  /** The top level object of the trace. */
+  private static class Trace {
+    private final List<TraceEvent> traceEvents;
+
+    private final String displayTimeUnit = "ms";
+
+    private Trace(List<TraceEvent> traceEvents) {
+      this.traceEvents = traceEvents;
+    }
+  }
+
+  /** A complete event, i.e. an event with a start time and a duration. */
+  private static class TraceEvent {
+    private final String name;
+
+    @SerializedName("cat")
+    private final String category;
+
+    @SerializedName("ph")
+    private final String phase = "X";
+
+    /** Start time in microseconds since the profiler was created. */
+    @SerializedName("ts")
+    private final long timestamp;
+
+    /** Wall time in microseconds. */
+    @SerializedName("dur")
+    private final long duration;
+
+    private final int pid = 1;
+
+    private final long tid;
+
+    private final Map<String, Object> args;
+
+    private TraceEvent(
+        String name,
+        String category,
+        long timestamp,
+        long duration,
+        long tid,
+        Map<String, Object> args) {
+      this.name = name;
+      this.category = category;
+      this.timestamp = timestamp;
+      this.duration = duration;
+      this.tid = tid;
+      this.args = args;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.common;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import com.google.j2cl.common.OutputUtils.Output;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class OutputUtilsTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testZipEntriesAreInWriteOrder() throws IOException {
+    File zipFile = new File(temporaryFolder.getRoot(), "output.zip");
+    Problems problems = new Problems();
+
+    Output output = OutputUtils.initZipOutput(zipFile.getPath(), false, problems);
+    output.write("b/y.js", "y", problems);
+    output.write("a/x.js", "x", problems);
+    output.write("/b/c/z.js", "z", problems);
+    output.close();
+
+    assertThat(problems.hasProblems()).isFalse();
+    assertThat(getEntryNames(zipFile))
+        .containsExactly("b/", "b/y.js", "a/", "a/x.js", "b/c/", "b/c/z.js")
+        .inOrder();
+    assertThat(getContent(zipFile, "b/c/z.js")).isEqualTo("z");
+  }
+
+  @Test
+  public void testZipIsDeterministic() throws IOException {
+    File firstZipFile = new File(temporaryFolder.getRoot(), "first.zip");
+    File secondZipFile = new File(temporaryFolder.getRoot(), "second.zip");
+
+    writeZip(firstZipFile, /* storeOnly= */ false);
+    writeZip(secondZipFile, /* storeOnly= */ false);
+
+    assertThat(Files.readAllBytes(secondZipFile.toPath()))
+        .isEqualTo(Files.readAllBytes(firstZipFile.toPath()));
+  }
+
+  @Test
+  public void testStoreOnlyZip() throws IOException {
+    File zipFile = new File(temporaryFolder.getRoot(), "output.zip");
+
+    writeZip(zipFile, /* storeOnly= */ true);
+
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+      }
+    }
+    assertThat(getContent(zipFile, "a/b/Foo.js")).isEqualTo("foo");
+  }
+
+  @Test
+  public void testZipDuplicateEntryWithSameContent() throws IOException {
+    File zipFile = new File(temporaryFolder.getRoot(), "output.zip");
+    Problems problems = new Problems();
+
+    Output output = OutputUtils.initZipOutput(zipFile.getPath(), false, problems);
+    output.write("a/x.js", "x", problems);
+    output.write("a/y.js", "y", problems);
+    output.write("/a/x.js", "x", problems);
+    output.close();
+
+    assertThat(problems.hasProblems()).isFalse();
+    assertThat(getEntryNames(zipFile)).containsExactly("a/", "a/x.js", "a/y.js").inOrder();
+  }
+
+  @Test
+  public void testZipDuplicateEntryWithDifferentContent() throws IOException {
+    File zipFile = new File(temporaryFolder.getRoot(), "output.zip");
+    Problems problems = new Problems();
+
+    Output output = OutputUtils.initZipOutput(zipFile.getPath(), false, problems);
+    output.write("a/x.js", "x", problems);
+    output.write("a/x.js", "other x", problems);
+    output.close();
+
+    assertThat(problems.getErrors())
+        .containsExactly("Error: Output file 'a/x.js' was written twice with different content.");
+    assertThat(getEntryNames(zipFile)).containsExactly("a/", "a/x.js").inOrder();
+    assertThat(getContent(zipFile, "a/x.js")).isEqualTo("x");
+  }
+
+  @Test
+  public void testZipCopyFile() throws IOException {
+    File zipFile = new File(temporaryFolder.getRoot(), "output.zip");
+    Path source = temporaryFolder.newFile("Foo.java").toPath();
+    Files.write(source, "class Foo {}".getBytes(UTF_8));
+    Problems problems = new Problems();
+
+    Output output = OutputUtils.initZipOutput(zipFile.getPath(), false, problems);
+    output.copyFile(source, "a/Foo.java", problems);
+    output.close();
+
+    assertThat(getContent(zipFile, "a/Foo.java")).isEqualTo("class Foo {}");
+  }
+
+  @Test
+  public void testDirectoryOutput() throws IOException {
+    File directory = temporaryFolder.newFolder("output");
+    Problems problems = new Problems();
+
+    Output output = OutputUtils.initDirectoryOutput(directory.getPath(), problems);
+    output.write("a/x.js", "x", problems);
+    output.write("/a/x.js", "other x", problems);
+    output.close();
+
+    assertThat(problems.hasProblems()).isFalse();
+    // Files in a directory are simply overwritten.
+    assertThat(Files.readAllLines(directory.toPath().resolve("a/x.js"), UTF_8))
+        .containsExactly("other x");
+  }
+
+  private static void writeZip(File zipFile, boolean storeOnly) throws IOException {
+    Problems problems = new Problems();
+    Output output = OutputUtils.initZipOutput(zipFile.getPath(), storeOnly, problems);
+    output.write("a/b/Foo.js", "foo", problems);
+    output.write("a/Bar.js", "bar", problems);
+    output.close();
+  }
+
+  private static List<String> getEntryNames(File zipFile) throws IOException {
+    List<String> entryNames = new ArrayList<>();
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        entryNames.add(entry.getName());
+      }
+    }
+    return entryNames;
+  }
+
+  private static String getContent(File zipFile, String entryName) throws IOException {
+    try (ZipFile zip = new ZipFile(zipFile);
+        InputStream inputStream = zip.getInputStream(zip.getEntry(entryName))) {
+      return new String(ByteStreams.toByteArray(inputStream), UTF_8);
+    }
+  }
+}
@@ -16,14 +16,29 @@
 package com.google.j2cl.frontend;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.collect.ImmutableList;
+import com.google.j2cl.common.Problems;
+import com.google.j2cl.frontend.FrontendUtils.FileInfo;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 @RunWith(JUnit4.class)
 public final class FrontendUtilsTest {
 
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private static final String[][] JAVA_PATHS_GOOD = {
     {"java", "com/google/foo/Foo"},
     {"javatests", "com/google/foo/FooTest"},
@@ -57,4 +72,79 @@ public final class FrontendUtilsTest {
       assertThat(FrontendUtils.getJavaPath(JAVA_PATHS_BAD[i])).isEqualTo(JAVA_PATHS_BAD[i]);
     }
   }
+
+  @Test
+  public void testGetAllSources_SourceJar() throws IOException {
+    File jar = temporaryFolder.newFile("sources.srcjar");
+    try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(jar))) {
+      zipOutputStream.putNextEntry(new ZipEntry("com/google/foo/"));
+      zipOutputStream.putNextEntry(new ZipEntry("com/google/foo/Foo.java"));
+      zipOutputStream.write("class Foo {}".getBytes(UTF_8));
+      zipOutputStream.putNextEntry(new ZipEntry("com/google/bar/Bar.java"));
+      zipOutputStream.write("class Bar {}".getBytes(UTF_8));
+    }
+    File sourcesDir = temporaryFolder.newFolder("java");
+    File baz = new File(sourcesDir, "Baz.java");
+    Files.write(baz.toPath(), "class Baz {}".getBytes(UTF_8));
+
+    List<FileInfo> fileInfos =
+        FrontendUtils.getAllSources(
+                ImmutableList.of(baz.getPath(), jar.getPath()), new Problems())
+            .collect(ImmutableList.toImmutableList());
+
+    assertThat(fileInfos).hasSize(3);
+    assertThat(fileInfos.get(0).targetPath()).isEqualTo("Baz.java");
+    assertThat(fileInfos.get(0).isInMemory()).isFalse();
+    assertThat(fileInfos.get(0).readContent()).isEqualTo("class Baz {}");
+    assertThat(fileInfos.get(1).sourcePath())
+        .isEqualTo(jar.getPath() + "!/com/google/bar/Bar.java");
+    assertThat(fileInfos.get(1).isInMemory()).isTrue();
+    assertThat(fileInfos.get(1).originalPath()).isEqualTo("com/google/bar/Bar.java");
+    assertThat(fileInfos.get(1).targetPath()).isEqualTo("com/google/bar/Bar.java");
+    assertThat(fileInfos.get(1).readContent()).isEqualTo("class Bar {}");
+    assertThat(fileInfos.get(2).targetPath()).isEqualTo("com/google/foo/Foo.java");
+    assertThat(fileInfos.get(2).readContent()).isEqualTo("class Foo {}");
+  }
+
+  @Test
+  public void testGetAllSources_SameEntryInSeveralSourceJars() throws IOException {
+    File first = createJar("first.srcjar", "com/google/foo/Foo.java", "class Foo { int first; }");
+    File second =
+        createJar(
+            "second.srcjar",
+            "com/google/foo/Foo.java",
+            "class Foo { int second; }",
+            "com/google/foo/Bar.java",
+            "class Bar {}");
+
+    List<FileInfo> fileInfos =
+        FrontendUtils.getAllSources(
+                ImmutableList.of(first.getPath(), second.getPath()), new Problems())
+            .collect(ImmutableList.toImmutableList());
+
+    // Like extracting the jars over each other, the entry of the last jar is kept.
+    assertThat(fileInfos).hasSize(2);
+    assertThat(fileInfos.get(0).targetPath()).isEqualTo("com/google/foo/Bar.java");
+    assertThat(fileInfos.get(1).sourcePath())
+        .isEqualTo(second.getPath() + "!/com/google/foo/Foo.java");
+    assertThat(fileInfos.get(1).readContent()).isEqualTo("class Foo { int second; }");
+
+    List<FileInfo> writtenSources =
+        FrontendUtils.writeInMemorySources(
+            fileInfos, temporaryFolder.newFolder("sources").toPath(), new Problems());
+    assertThat(writtenSources).hasSize(2);
+    assertThat(writtenSources.get(1).readContent()).isEqualTo("class Foo { int second; }");
+  }
+
+  /** Creates a jar with the given entry names and contents, which alternate in the arguments. */
+  private File createJar(String name, String... entryNamesAndContents) throws IOException {
+    File jar = temporaryFolder.newFile(name);
+    try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(jar))) {
+      for (int i = 0; i < entryNamesAndContents.length; i += 2) {
+        zipOutputStream.putNextEntry(new ZipEntry(entryNamesAndContents[i]));
+        zipOutputStream.write(entryNamesAndContents[i + 1].getBytes(UTF_8));
+      }
+    }
+    return jar;
+  }
 }
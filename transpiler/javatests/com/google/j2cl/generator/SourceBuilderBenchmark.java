@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.generator;
+
+import com.google.j2cl.common.FilePosition;
+import com.google.j2cl.common.SourcePosition;
+import java.util.Arrays;
+
+/**
+ * Measures the time SourceBuilder takes to build a large JavaScript file with source mappings.
+ *
+ * <p>The file has the shape of the output of a large class: methods whose statements are mapped
+ * and indented in nested blocks. Run it with:
+ *
+ * <pre>
+ *   bazel run //transpiler/javatests/com/google/j2cl/generator:SourceBuilderBenchmark
+ * </pre>
+ *
+ * <p>The number of methods can be changed with the argument.
+ */
+public final class SourceBuilderBenchmark {
+  private static final int WARMUP_RUNS = 5;
+  private static final int MEASURED_RUNS = 10;
+  private static final int STATEMENTS_PER_BLOCK = 5;
+  private static final int NESTED_BLOCKS = 3;
+
+  public static void main(String[] args) {
+    int methodCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      buildSource(methodCount);
+    }
+
+    long[] timesMs = new long[MEASURED_RUNS];
+    int length = 0;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      long start = System.nanoTime();
+      length = buildSource(methodCount);
+      timesMs[i] = (System.nanoTime() - start) / 1_000_000;
+    }
+    Arrays.sort(timesMs);
+
+    System.out.printf(
+        "%d methods, %d KB of output: median %d ms (min %d ms, max %d ms)%n",
+        methodCount,
+        length >> 10,
+        timesMs[MEASURED_RUNS / 2],
+        timesMs[0],
+        timesMs[MEASURED_RUNS - 1]);
+  }
+
+  /** Builds the source and its mappings, and returns the length of the source. */
+  private static int buildSource(int methodCount) {
+    SourceBuilder sourceBuilder = new SourceBuilder();
+    sourceBuilder.appendln("goog.module('com.google.Foo$impl');");
+    sourceBuilder.newLine();
+    sourceBuilder.append("class Foo extends j_l_Object ");
+    sourceBuilder.openBrace();
+    for (int method = 0; method < methodCount; method++) {
+      int line = method;
+      sourceBuilder.newLines(2);
+      sourceBuilder.appendLines("/**", " * @param {number} a", " * @return {number}", " */");
+      sourceBuilder.newLine();
+      sourceBuilder.emitWithMapping(
+          javaPosition(line),
+          () -> {
+            sourceBuilder.append("m_method" + line + "__int(/** number */ a) ");
+            emitBlock(sourceBuilder, line, NESTED_BLOCKS);
+          });
+    }
+    sourceBuilder.closeBrace();
+    sourceBuilder.newLine();
+    sourceBuilder.appendln("exports = Foo;");
+    String source = sourceBuilder.build();
+    sourceBuilder.getSourceMappings();
+    return source.length();
+  }
+
+  private static void emitBlock(SourceBuilder sourceBuilder, int line, int nestedBlocks) {
+    sourceBuilder.openBrace();
+    for (int statement = 0; statement < STATEMENTS_PER_BLOCK; statement++) {
+      sourceBuilder.newLine();
+      sourceBuilder.emitWithMapping(
+          javaPosition(line),
+          () -> sourceBuilder.append("a = $Primitives.$coerceDivision(a * 31 + " + line + ");"));
+    }
+    if (nestedBlocks > 0) {
+      sourceBuilder.newLine();
+      sourceBuilder.append("if (a > 0) ");
+      emitBlock(sourceBuilder, line, nestedBlocks - 1);
+    }
+    sourceBuilder.newLine();
+    sourceBuilder.append("return a;");
+    sourceBuilder.closeBrace();
+  }
+
+  private static SourcePosition javaPosition(int line) {
+    FilePosition filePosition =
+        FilePosition.newBuilder().setLine(line).setColumn(0).setByteOffset(0).build();
+    return SourcePosition.newBuilder()
+        .setFilePath("com/google/Foo.java")
+        .setStartFilePosition(filePosition)
+        .setEndFilePosition(filePosition)
+        .build();
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.generator;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+import com.google.j2cl.common.FilePosition;
+import com.google.j2cl.common.SourcePosition;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the output of SourceBuilder and the positions it tracks while the output is built. */
+@RunWith(JUnit4.class)
+public final class SourceBuilderTest {
+
+  private static final String[] SOURCE_PIECES = {
+    "", " ", "a", "foo", "{", "}", "\n", "\n\n", "x\ny", "x\n\ny\n"
+  };
+
+  @Test
+  public void testIndentation() {
+    SourceBuilder sourceBuilder = new SourceBuilder();
+    sourceBuilder.append("class A ");
+    sourceBuilder.openBrace();
+    sourceBuilder.newLine();
+    sourceBuilder.append("f() {\nreturn;\n}");
+    sourceBuilder.closeBrace();
+
+    assertThat(sourceBuilder.build()).isEqualTo("class A {\n  f() {\n  return;\n  }\n} ");
+  }
+
+  @Test
+  public void testDeepIndentation() {
+    SourceBuilder sourceBuilder = new SourceBuilder();
+    for (int i = 0; i < 40; i++) {
+      sourceBuilder.indent();
+    }
+    sourceBuilder.append("a\nb");
+
+    assertThat(sourceBuilder.build()).isEqualTo("a\n" + Strings.repeat(" ", 80) + "b ");
+  }
+
+  @Test
+  public void testMappingPositions() {
+    SourceBuilder sourceBuilder = new SourceBuilder();
+    sourceBuilder.append("a");
+    sourceBuilder.indent();
+    sourceBuilder.emitWithMapping(javaPosition(1), () -> sourceBuilder.append("bc\nde"));
+    sourceBuilder.build();
+
+    assertThat(sourceBuilder.getMappings())
+        .containsEntry(
+            sourcePosition(filePosition(0, 1, 1), filePosition(1, 4, 8)), javaPosition(1));
+  }
+
+  @Test
+  public void testEmptyMappingsAreNotRecorded() {
+    SourceBuilder sourceBuilder = new SourceBuilder();
+    sourceBuilder.emitWithMapping(javaPosition(1), () -> sourceBuilder.append(""));
+
+    assertThat(sourceBuilder.getMappings()).isEmpty();
+  }
+
+  /**
+   * Builds random sources and checks that the output and the mapped positions are the ones computed
+   * by indenting and scanning the whole output, which is what SourceBuilder used to do.
+   */
+  @Test
+  public void testRandomSourcesMatchRecomputedPositions() {
+    Random random = new Random(42);
+    for (int i = 0; i < 3000; i++) {
+      SourceBuilder sourceBuilder = new SourceBuilder();
+      ExpectedSource expectedSource = new ExpectedSource();
+      emitRandomSource(random, sourceBuilder, expectedSource, 0);
+
+      assertThat(sourceBuilder.build()).isEqualTo(expectedSource.build());
+      // Compare the entries rather than the maps, whose keys are only compared by start position.
+      assertThat(sourceBuilder.getMappings().entrySet())
+          .containsExactlyElementsIn(expectedSource.mappings.entrySet())
+          .inOrder();
+    }
+  }
+
+  private static void emitRandomSource(
+      Random random, SourceBuilder sourceBuilder, ExpectedSource expectedSource, int depth) {
+    int operationCount = random.nextInt(6);
+    for (int i = 0; i < operationCount; i++) {
+      int operation = random.nextInt(10);
+      if (operation < 5) {
+        String source = SOURCE_PIECES[random.nextInt(SOURCE_PIECES.length)];
+        sourceBuilder.append(source);
+        expectedSource.append(source);
+      } else if (operation == 5) {
+        sourceBuilder.indent();
+        expectedSource.indentation++;
+      } else if (operation == 6 && expectedSource.indentation > 0) {
+        sourceBuilder.unindent();
+        expectedSource.indentation--;
+      } else if (depth < 4) {
+        SourcePosition javaPosition = javaPosition(random.nextInt(1000));
+        int startOffset = expectedSource.source.length();
+        sourceBuilder.emitWithMapping(
+            javaPosition,
+            () -> emitRandomSource(random, sourceBuilder, expectedSource, depth + 1));
+        expectedSource.addMapping(startOffset, javaPosition);
+      }
+    }
+  }
+
+  /** The source and the mappings expected from a SourceBuilder, computed from the output. */
+  private static final class ExpectedSource {
+    private final StringBuilder source = new StringBuilder();
+    // Mappings that start at the same position replace each other, like they do in SourceBuilder.
+    private final SortedMap<SourcePosition, SourcePosition> mappings = new TreeMap<>();
+    private int indentation = 0;
+
+    private void append(String text) {
+      source.append(text.replace("\n", "\n" + Strings.repeat("  ", indentation)));
+    }
+
+    private void addMapping(int startOffset, SourcePosition javaPosition) {
+      if (source.length() == startOffset) {
+        return;
+      }
+      mappings.put(
+          sourcePosition(getFilePosition(startOffset), getFilePosition(source.length())),
+          javaPosition);
+    }
+
+    private String build() {
+      if (source.length() != 0) {
+        int startOffset = source.length();
+        append(" ");
+        addMapping(startOffset, javaPosition(0));
+      }
+      return source.toString();
+    }
+
+    private FilePosition getFilePosition(int offset) {
+      String sourceBefore = source.substring(0, offset);
+      return filePosition(
+          CharMatcher.is('\n').countIn(sourceBefore),
+          offset - sourceBefore.lastIndexOf('\n') - 1,
+          offset);
+    }
+  }
+
+  private static SourcePosition javaPosition(int line) {
+    return sourcePosition(filePosition(line, 0, line), filePosition(line, 0, line));
+  }
+
+  private static SourcePosition sourcePosition(FilePosition start, FilePosition end) {
+    return SourcePosition.newBuilder().setStartFilePosition(start).setEndFilePosition(end).build();
+  }
+
+  private static FilePosition filePosition(int line, int column, int byteOffset) {
+    return FilePosition.newBuilder()
+        .setLine(line)
+        .setColumn(column)
+        .setByteOffset(byteOffset)
+        .build();
+  }
+}
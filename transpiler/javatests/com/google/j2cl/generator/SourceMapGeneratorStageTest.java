@@ -0,0 +1,402 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.generator;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.debugging.sourcemap.SourceMapFormat;
+import com.google.debugging.sourcemap.SourceMapGenerator;
+import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.j2cl.common.FilePosition;
+import com.google.j2cl.common.SourcePosition;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests the Source Map V3 encoding by decoding the generated maps back into absolute segments, and
+ * by comparing them with the maps of the Closure generator that was used before.
+ */
+@RunWith(JUnit4.class)
+public final class SourceMapGeneratorStageTest {
+
+  @Test
+  public void testSingleMapping() {
+    SourceMappings sourceMappings =
+        new SourceMappings.Builder()
+            .addMapping(0, 2, 2, 0, 7, 7, javaPosition("a/b/Foo.java", 3, 4, "foo"))
+            .build();
+
+    DecodedSourceMap sourceMap = generateAndDecode("Foo.impl.java.js", sourceMappings);
+
+    assertThat(sourceMap.json.get("version").getAsInt()).isEqualTo(3);
+    assertThat(sourceMap.json.get("file").getAsString()).isEqualTo("Foo.impl.java.js");
+    assertThat(sourceMap.json.get("lineCount").getAsInt()).isEqualTo(1);
+    assertThat(sourceMap.sources).containsExactly("Foo.java");
+    assertThat(sourceMap.names).containsExactly("foo");
+    assertThat(sourceMap.segments)
+        .containsExactly(
+            // The output that precedes the first mapping is not mapped.
+            unmappedSegment(0, 0), segment(0, 2, "Foo.java", 3, 4, "foo"))
+        .inOrder();
+  }
+
+  @Test
+  public void testNestedMappings() {
+    SourceMappings sourceMappings =
+        new SourceMappings.Builder()
+            // Added out of order on purpose, the mappings are sorted when built.
+            .addMapping(0, 4, 4, 0, 6, 6, javaPosition("Foo.java", 5, 8, null))
+            .addMapping(0, 0, 0, 1, 3, 13, javaPosition("Foo.java", 5, 0, null))
+            .addMapping(1, 0, 10, 1, 2, 12, javaPosition("Foo.java", 2, 1, "bar"))
+            .build();
+
+    DecodedSourceMap sourceMap = generateAndDecode("Foo.impl.java.js", sourceMappings);
+
+    assertThat(sourceMap.json.get("lineCount").getAsInt()).isEqualTo(2);
+    assertThat(sourceMap.names).containsExactly("bar");
+    assertThat(sourceMap.segments)
+        .containsExactly(
+            segment(0, 0, "Foo.java", 5, 0, null),
+            segment(0, 4, "Foo.java", 5, 8, null),
+            // The enclosing mapping resumes after the nested one, across the line break.
+            segment(0, 6, "Foo.java", 5, 0, null),
+            // Going back to an earlier source line encodes negative deltas.
+            segment(1, 0, "Foo.java", 2, 1, "bar"),
+            segment(1, 2, "Foo.java", 5, 0, null))
+        .inOrder();
+  }
+
+  @Test
+  public void testMultipleSources() {
+    SourceMappings sourceMappings =
+        new SourceMappings.Builder()
+            .addMapping(0, 0, 0, 0, 1, 1, javaPosition("Foo.java", 0, 0, "x"))
+            .addMapping(0, 1, 1, 0, 2, 2, javaPosition("Bar.java", 7, 3, "y"))
+            .addMapping(2, 0, 5, 2, 1, 6, javaPosition("Foo.java", 1, 0, "x"))
+            .build();
+
+    DecodedSourceMap sourceMap = generateAndDecode("Foo.impl.java.js", sourceMappings);
+
+    assertThat(sourceMap.sources).containsExactly("Foo.java", "Bar.java").inOrder();
+    assertThat(sourceMap.names).containsExactly("x", "y").inOrder();
+    assertThat(sourceMap.segments)
+        .containsExactly(
+            segment(0, 0, "Foo.java", 0, 0, "x"),
+            segment(0, 1, "Bar.java", 7, 3, "y"),
+            unmappedSegment(0, 2),
+            // Lines without mappings have no segments.
+            segment(2, 0, "Foo.java", 1, 0, "x"))
+        .inOrder();
+  }
+
+  @Test
+  public void testMappingsWithoutUsefulInformationAreSkipped() {
+    SourceMappings sourceMappings =
+        new SourceMappings.Builder()
+            .addMapping(0, 0, 0, 0, 3, 3, javaPosition(null, 1, 0, "noFile"))
+            .addMapping(0, 3, 3, 0, 6, 6, javaPosition("Foo.java", -1, 0, "noLine"))
+            .addMapping(0, 6, 6, 0, 9, 9, javaPosition("Foo.java", 4, 2, null))
+            .build();
+
+    DecodedSourceMap sourceMap = generateAndDecode("Foo.impl.java.js", sourceMappings);
+
+    assertThat(sourceMap.names).isEmpty();
+    assertThat(sourceMap.segments)
+        .containsExactly(unmappedSegment(0, 0), segment(0, 6, "Foo.java", 4, 2, null))
+        .inOrder();
+  }
+
+  @Test
+  public void testEscapesFileName() {
+    DecodedSourceMap sourceMap =
+        generateAndDecode("Foo\"\\\n.js", new SourceMappings.Builder().build());
+
+    assertThat(sourceMap.json.get("file").getAsString()).isEqualTo("Foo\"\\\n.js");
+    assertThat(sourceMap.json.get("mappings").getAsString()).isEqualTo(";");
+    assertThat(sourceMap.segments).isEmpty();
+  }
+
+  @Test
+  public void testLargeValues() {
+    SourceMappings sourceMappings =
+        new SourceMappings.Builder()
+            .addMapping(0, 5000, 5000, 0, 5001, 5001, javaPosition("Foo.java", 100000, 70, null))
+            .addMapping(0, 5001, 5001, 0, 5002, 5002, javaPosition("Foo.java", 0, 0, null))
+            .build();
+
+    DecodedSourceMap sourceMap = generateAndDecode("Foo.impl.java.js", sourceMappings);
+
+    assertThat(sourceMap.segments)
+        .containsExactly(
+            unmappedSegment(0, 0),
+            segment(0, 5000, "Foo.java", 100000, 70, null),
+            segment(0, 5001, "Foo.java", 0, 0, null))
+        .inOrder();
+  }
+
+  @Test
+  public void testMatchesClosureGenerator_nestedMappings() throws IOException {
+    new DifferentialSourceMaps()
+        .addMapping(0, 59, javaPosition("Foo.java", 1, 0, "Foo"))
+        .addMapping(2, 30, javaPosition("Foo.java", 2, 2, "m"))
+        .addMapping(4, 10, javaPosition("Foo.java", 2, 9, null))
+        .addMapping(6, 8, javaPosition("Foo.java", 2, 11, "x"))
+        .addMapping(22, 25, javaPosition("Bar.java", 7, 0, "y"))
+        .addMapping(41, 50, javaPosition("Foo.java", 5, 4, "n"))
+        .assertMatchesClosureGenerator();
+  }
+
+  @Test
+  public void testMatchesClosureGenerator_overlappingMappings() throws IOException {
+    new DifferentialSourceMaps()
+        // Each mapping ends after the start of the next one but before its end.
+        .addMapping(0, 10, javaPosition("Foo.java", 1, 0, "a"))
+        .addMapping(5, 25, javaPosition("Foo.java", 2, 0, "b"))
+        .addMapping(20, 45, javaPosition("Foo.java", 3, 0, null))
+        .addMapping(30, 35, javaPosition("Foo.java", 4, 0, "a"))
+        .addMapping(33, 50, javaPosition("Foo.java", 0, 7, "c"))
+        .assertMatchesClosureGenerator();
+  }
+
+  @Test
+  public void testMatchesClosureGenerator_mappingsCloseWhenTheyEndBeforeTheNextStart()
+      throws IOException {
+    new DifferentialSourceMaps()
+        // Ends exactly where the next mapping starts, so it encloses it.
+        .addMapping(0, 10, javaPosition("Foo.java", 1, 0, "a"))
+        .addMapping(10, 15, javaPosition("Foo.java", 2, 0, "b"))
+        // Ends right before the next mapping starts, so it is closed first.
+        .addMapping(20, 29, javaPosition("Foo.java", 3, 0, "c"))
+        .addMapping(30, 40, javaPosition("Foo.java", 4, 0, "d"))
+        // Empty mappings.
+        .addMapping(50, 50, javaPosition("Foo.java", 5, 0, "e"))
+        .addMapping(52, 52, javaPosition("Foo.java", 6, 0, "f"))
+        .assertMatchesClosureGenerator();
+  }
+
+  @Test
+  public void testMatchesClosureGenerator_randomMappings() throws IOException {
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      DifferentialSourceMaps sourceMaps = new DifferentialSourceMaps();
+      int outputLength = 1 + random.nextInt(200);
+      int mappingCount = random.nextInt(30);
+      for (int mapping = 0; mapping < mappingCount; mapping++) {
+        int startOffset = random.nextInt(outputLength);
+        int endOffset = startOffset + random.nextInt(outputLength - startOffset + 1);
+        sourceMaps.addMapping(
+            startOffset,
+            endOffset,
+            javaPosition(
+                random.nextInt(8) == 0 ? null : "F" + random.nextInt(3) + ".java",
+                random.nextInt(40) - 1,
+                random.nextInt(30),
+                random.nextBoolean() ? null : "n" + random.nextInt(5)));
+      }
+      sourceMaps.assertMatchesClosureGenerator();
+    }
+  }
+
+  private static SourcePosition javaPosition(String filePath, int line, int column, String name) {
+    SourcePosition.Builder builder =
+        SourcePosition.newBuilder()
+            .setStartFilePosition(
+                FilePosition.newBuilder().setLine(line).setColumn(column).setByteOffset(0).build())
+            .setEndFilePosition(
+                FilePosition.newBuilder().setLine(line).setColumn(column).setByteOffset(0).build());
+    if (filePath != null) {
+      builder.setFilePath(filePath);
+    }
+    if (name != null) {
+      builder.setName(name);
+    }
+    return builder.build();
+  }
+
+  private static String segment(
+      int line, int column, String source, int sourceLine, int sourceColumn, String name) {
+    return String.format(
+        "%d:%d -> %s:%d:%d%s",
+        line, column, source, sourceLine, sourceColumn, name == null ? "" : " " + name);
+  }
+
+  private static String unmappedSegment(int line, int column) {
+    return String.format("%d:%d", line, column);
+  }
+
+  private static DecodedSourceMap generateAndDecode(
+      String fileName, SourceMappings sourceMappings) {
+    return new DecodedSourceMap(
+        SourceMapGeneratorStage.generateSourceMap(fileName, sourceMappings));
+  }
+
+  /** Feeds the same mappings to the encoder and to the Closure generator it replaced. */
+  private static final class DifferentialSourceMaps {
+    private static final String FILE_NAME = "Foo.impl.java.js";
+    // The output lines have LINE_LENGTH characters followed by a line break.
+    private static final int LINE_LENGTH = 20;
+
+    private final SourceMappings.Builder sourceMappingsBuilder = new SourceMappings.Builder();
+    // Like the map that the Closure generator was fed from, keeps one mapping per start offset.
+    private final Map<Integer, Integer> endOffsetByStartOffset = new TreeMap<>();
+    private final Map<Integer, SourcePosition> javaSourcePositionByStartOffset = new TreeMap<>();
+
+    DifferentialSourceMaps addMapping(
+        int startOffset, int endOffset, SourcePosition javaSourcePosition) {
+      sourceMappingsBuilder.addMapping(
+          getLine(startOffset),
+          getColumn(startOffset),
+          startOffset,
+          getLine(endOffset),
+          getColumn(endOffset),
+          endOffset,
+          javaSourcePosition);
+      endOffsetByStartOffset.putIfAbsent(startOffset, endOffset);
+      javaSourcePositionByStartOffset.put(startOffset, javaSourcePosition);
+      return this;
+    }
+
+    void assertMatchesClosureGenerator() throws IOException {
+      SourceMapGenerator sourceMapGenerator =
+          SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3);
+      endOffsetByStartOffset.forEach(
+          (startOffset, endOffset) -> {
+            SourcePosition javaSourcePosition = javaSourcePositionByStartOffset.get(startOffset);
+            sourceMapGenerator.addMapping(
+                javaSourcePosition.getFileName(),
+                javaSourcePosition.getName(),
+                new com.google.debugging.sourcemap.FilePosition(
+                    javaSourcePosition.getStartFilePosition().getLine(),
+                    javaSourcePosition.getStartFilePosition().getColumn()),
+                new com.google.debugging.sourcemap.FilePosition(
+                    getLine(startOffset), getColumn(startOffset)),
+                new com.google.debugging.sourcemap.FilePosition(
+                    getLine(endOffset), getColumn(endOffset)));
+          });
+      StringBuilder expectedSourceMap = new StringBuilder();
+      sourceMapGenerator.appendTo(expectedSourceMap, FILE_NAME);
+
+      assertThat(
+              SourceMapGeneratorStage.generateSourceMap(FILE_NAME, sourceMappingsBuilder.build()))
+          .isEqualTo(expectedSourceMap.toString());
+    }
+
+    private static int getLine(int offset) {
+      return offset / (LINE_LENGTH + 1);
+    }
+
+    private static int getColumn(int offset) {
+      return offset % (LINE_LENGTH + 1);
+    }
+  }
+
+  /** A minimal Source Map V3 consumer that turns the mappings into absolute segments. */
+  private static final class DecodedSourceMap {
+    private static final String BASE64_DIGITS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private final JsonObject json;
+    private final List<String> sources;
+    private final List<String> names;
+    private final List<String> segments = new ArrayList<>();
+
+    private final String mappings;
+    private int position;
+
+    DecodedSourceMap(String sourceMap) {
+      json = new JsonParser().parse(sourceMap).getAsJsonObject();
+      sources = toStrings(json.getAsJsonArray("sources"));
+      names = toStrings(json.getAsJsonArray("names"));
+      mappings = json.get("mappings").getAsString();
+      decodeSegments();
+    }
+
+    private void decodeSegments() {
+      int line = 0;
+      int column = 0;
+      int sourceIndex = 0;
+      int sourceLine = 0;
+      int sourceColumn = 0;
+      int nameIndex = 0;
+      while (position < mappings.length()) {
+        char c = mappings.charAt(position);
+        if (c == ';') {
+          position++;
+          line++;
+          column = 0;
+          continue;
+        }
+        if (c == ',') {
+          position++;
+          continue;
+        }
+        column += decodeVlq();
+        if (!atSegmentEnd()) {
+          sourceIndex += decodeVlq();
+          sourceLine += decodeVlq();
+          sourceColumn += decodeVlq();
+          String name = null;
+          if (!atSegmentEnd()) {
+            nameIndex += decodeVlq();
+            name = names.get(nameIndex);
+          }
+          segments.add(
+              segment(line, column, sources.get(sourceIndex), sourceLine, sourceColumn, name));
+        } else {
+          segments.add(unmappedSegment(line, column));
+        }
+      }
+    }
+
+    private boolean atSegmentEnd() {
+      return position == mappings.length()
+          || mappings.charAt(position) == ','
+          || mappings.charAt(position) == ';';
+    }
+
+    private int decodeVlq() {
+      int vlq = 0;
+      int shift = 0;
+      int digit;
+      do {
+        digit = BASE64_DIGITS.indexOf(mappings.charAt(position++));
+        vlq |= (digit & 31) << shift;
+        shift += 5;
+      } while ((digit & 32) != 0);
+      return (vlq & 1) == 0 ? vlq >>> 1 : -(vlq >>> 1);
+    }
+
+    private static List<String> toStrings(JsonArray array) {
+      ImmutableList.Builder<String> strings = ImmutableList.builder();
+      for (JsonElement element : array) {
+        strings.add(element.getAsString());
+      }
+      return strings.build();
+    }
+  }
+}
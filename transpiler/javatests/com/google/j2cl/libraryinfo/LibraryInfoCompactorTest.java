@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.libraryinfo;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class LibraryInfoCompactorTest {
+
+  private static final TypeInfo OBJECT =
+      TypeInfo.newBuilder()
+          .setTypeId("java.lang.Object")
+          .setHeaderSourceFilePath("java/lang/Object.java.js")
+          .setImplSourceFilePath("java/lang/Object.impl.java.js")
+          .addMember(MemberInfo.newBuilder().setName("constructor").setPublic(true))
+          .addMember(
+              MemberInfo.newBuilder()
+                  .setName("m_hashCode__")
+                  .setPublic(true)
+                  .setJsAccessible(true)
+                  .setStartPosition(FilePosition.newBuilder().setLine(12).setColumn(2))
+                  .setEndPosition(FilePosition.newBuilder().setLine(14).setColumn(3)))
+          .build();
+
+  private static final TypeInfo FOO =
+      TypeInfo.newBuilder()
+          .setTypeId("com.example.Foo")
+          .setExtendsType("java.lang.Object")
+          .addImplementsType("com.example.Bar")
+          .addImplementsType("com.example.Baz")
+          .setHeaderSourceFilePath("com/example/Foo.java.js")
+          .setImplSourceFilePath("com/example/Foo.impl.java.js")
+          .addMember(
+              MemberInfo.newBuilder()
+                  .setName("m_run__")
+                  .addInvokedMethods(
+                      MethodInvocation.newBuilder()
+                          .setMethod("m_hashCode__")
+                          .setEnclosingType("java.lang.Object")
+                          .setKind(InvocationKind.DYNAMIC))
+                  .addInvokedMethods(
+                      MethodInvocation.newBuilder()
+                          .setMethod("constructor")
+                          .setEnclosingType("com.example.Foo")
+                          .setKind(InvocationKind.INSTANTIATION))
+                  .addReferencedTypes("com.example.Bar")
+                  .addReferencedTypes("java.lang.Object"))
+          .addMember(MemberInfo.newBuilder().setName("f_count__").setStatic(true))
+          .build();
+
+  private static final LibraryInfo LIBRARY_INFO =
+      LibraryInfo.newBuilder().addType(OBJECT).addType(FOO).build();
+
+  @Test
+  public void testExpandRestoresCompactedTypes() {
+    CompactLibraryInfo libraryInfo = LibraryInfoCompactor.compact(LIBRARY_INFO);
+
+    assertThat(libraryInfo.getFormatVersion()).isEqualTo(LibraryInfoCompactor.FORMAT_VERSION);
+    assertThat(libraryInfo.getName(0)).isEmpty();
+    assertThat(libraryInfo.getTypeCount()).isEqualTo(2);
+    assertThat(LibraryInfoCompactor.expand(libraryInfo.getType(0), libraryInfo.getNameList()))
+        .isEqualTo(OBJECT);
+    assertThat(LibraryInfoCompactor.expand(libraryInfo.getType(1), libraryInfo.getNameList()))
+        .isEqualTo(FOO);
+  }
+
+  @Test
+  public void testNamesAreStoredOnce() {
+    CompactLibraryInfo libraryInfo = LibraryInfoCompactor.compact(LIBRARY_INFO);
+
+    assertThat(libraryInfo.getNameList()).containsNoDuplicates();
+    assertThat(libraryInfo.getNameList()).contains("java.lang.Object");
+  }
+
+  @Test
+  public void testParseFromReadsSerializedFile() throws IOException {
+    CompactLibraryInfo libraryInfo = LibraryInfoCompactor.compact(LIBRARY_INFO);
+
+    CompactLibraryInfo parsedLibraryInfo =
+        LibraryInfoCompactor.parseFrom(new ByteArrayInputStream(libraryInfo.toByteArray()));
+
+    assertThat(parsedLibraryInfo).isEqualTo(libraryInfo);
+    assertThat(
+            LibraryInfoCompactor.expand(
+                parsedLibraryInfo.getType(1), parsedLibraryInfo.getNameList()))
+        .isEqualTo(FOO);
+  }
+
+  @Test
+  public void testParseFromRejectsReadableLibraryInfo() {
+    try {
+      LibraryInfoCompactor.parseFrom(new ByteArrayInputStream(LIBRARY_INFO.toByteArray()));
+      fail("Expected the LibraryInfo written by older transpilers to be rejected.");
+    } catch (IOException expected) {
+      assertThat(expected).hasMessageThat().contains("Unsupported library info format version 0");
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.transpiler;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the trace that Profiler reports. */
+@RunWith(JUnit4.class)
+public final class ProfilerTest {
+
+  @Test
+  public void testTraceEvents() {
+    Profiler profiler = Profiler.create();
+    try (Profiler.Scope stageScope = profiler.start("stage", "Normalize")) {
+      try (Profiler.Scope passScope = profiler.start("pass", "NormalizeFoo", "com/google/A.java")) {
+        // Nothing to measure.
+      }
+    }
+
+    JsonObject trace = parse(profiler.toJson());
+    assertThat(trace.get("displayTimeUnit").getAsString()).isEqualTo("ms");
+    JsonArray traceEvents = trace.getAsJsonArray("traceEvents");
+    // Events are recorded when their scope is closed.
+    assertThat(traceEvents.size()).isEqualTo(2);
+
+    JsonObject passEvent = traceEvents.get(0).getAsJsonObject();
+    assertThat(passEvent.get("name").getAsString()).isEqualTo("NormalizeFoo");
+    assertThat(passEvent.get("cat").getAsString()).isEqualTo("pass");
+    assertThat(passEvent.getAsJsonObject("args").get("unit").getAsString())
+        .isEqualTo("com/google/A.java");
+
+    JsonObject stageEvent = traceEvents.get(1).getAsJsonObject();
+    assertThat(stageEvent.get("name").getAsString()).isEqualTo("Normalize");
+    assertThat(stageEvent.get("cat").getAsString()).isEqualTo("stage");
+    assertThat(stageEvent.getAsJsonObject("args").has("unit")).isFalse();
+
+    for (JsonObject event : new JsonObject[] {passEvent, stageEvent}) {
+      assertThat(event.get("ph").getAsString()).isEqualTo("X");
+      assertThat(event.get("pid").getAsInt()).isEqualTo(1);
+      assertThat(event.get("tid").getAsLong()).isEqualTo(Thread.currentThread().getId());
+      assertThat(event.get("ts").getAsLong()).isAtLeast(0L);
+      assertThat(event.get("dur").getAsLong()).isAtLeast(0L);
+    }
+    // The pass is nested in the stage.
+    assertThat(passEvent.get("ts").getAsLong()).isAtLeast(stageEvent.get("ts").getAsLong());
+    assertThat(passEvent.get("dur").getAsLong()).isAtMost(stageEvent.get("dur").getAsLong());
+  }
+
+  @Test
+  public void testCpuTimeIsLeftOutWhenDisabled() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    boolean cpuTimeEnabled = threadMXBean.isThreadCpuTimeEnabled();
+    Profiler profiler = Profiler.create();
+    try {
+      threadMXBean.setThreadCpuTimeEnabled(false);
+      profiler.start("stage", "Normalize").close();
+    } catch (UnsupportedOperationException e) {
+      // CPU time is not supported at all; it has to be left out as well.
+      profiler.start("stage", "Normalize").close();
+    } finally {
+      if (threadMXBean.isThreadCpuTimeSupported()) {
+        threadMXBean.setThreadCpuTimeEnabled(cpuTimeEnabled);
+      }
+    }
+
+    JsonObject args =
+        parse(profiler.toJson())
+            .getAsJsonArray("traceEvents")
+            .get(0)
+            .getAsJsonObject()
+            .getAsJsonObject("args");
+    assertThat(args.has("cpuMicros")).isFalse();
+  }
+
+  @Test
+  public void testDisabledProfilerRecordsNothing() {
+    Profiler.DISABLED.start("stage", "Normalize").close();
+
+    assertThat(parse(Profiler.DISABLED.toJson()).getAsJsonArray("traceEvents").size())
+        .isEqualTo(0);
+  }
+
+  private static JsonObject parse(String json) {
+    return new JsonParser().parse(json).getAsJsonObject();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.transpiler.integration;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.j2cl.transpiler.integration.TranspilerTester.newTesterWithDefaults;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.j2cl.transpiler.J2clTranspiler;
+import com.google.j2cl.transpiler.integration.TranspilerTester.TranspileResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import junit.framework.TestCase;
+
+/** Tests that incremental transpilations produce the same output as full transpilations. */
+public class IncrementalTranspilationTest extends TestCase {
+
+  public void testCompileJreIncrementally() throws Exception {
+    TranspileResult expected = compileJre(/* incremental= */ false);
+
+    // The first incremental transpilation populates the cache, the second one reuses it.
+    CacheStats statsBefore = J2clTranspiler.getCachedOutputsStats();
+    compileJre(/* incremental= */ true).assertOutputFilesAreSame(expected);
+    CacheStats firstStats = J2clTranspiler.getCachedOutputsStats().minus(statsBefore);
+    assertThat(firstStats.hitCount()).isEqualTo(0);
+    assertThat(firstStats.missCount()).isGreaterThan(0);
+
+    statsBefore = J2clTranspiler.getCachedOutputsStats();
+    compileJre(/* incremental= */ true).assertOutputFilesAreSame(expected);
+    CacheStats secondStats = J2clTranspiler.getCachedOutputsStats().minus(statsBefore);
+    assertThat(secondStats.hitCount()).isEqualTo(firstStats.missCount());
+    assertThat(secondStats.missCount()).isEqualTo(0);
+  }
+
+  public void testRecompileAfterDependencyChange() throws Exception {
+    // Sources are only reused if they are at the same location, so keep them in one directory.
+    Path sourceDir = Files.createTempDirectory("incremental_transpilation_test");
+
+    compileConstantAndUser(sourceDir, "1", /* incremental= */ true);
+    // The user of the constant has not changed but needs to be transpiled again.
+    CacheStats statsBefore = J2clTranspiler.getCachedOutputsStats();
+    TranspileResult recompiled = compileConstantAndUser(sourceDir, "2", /* incremental= */ true);
+    CacheStats stats = J2clTranspiler.getCachedOutputsStats().minus(statsBefore);
+    assertThat(stats.hitCount()).isEqualTo(0);
+    assertThat(stats.missCount()).isEqualTo(2);
+    recompiled.assertOutputFilesAreSame(
+        compileConstantAndUser(sourceDir, "2", /* incremental= */ false));
+
+    // Nothing changed, both units are reused.
+    statsBefore = J2clTranspiler.getCachedOutputsStats();
+    compileConstantAndUser(sourceDir, "2", /* incremental= */ true)
+        .assertOutputFilesAreSame(recompiled);
+    stats = J2clTranspiler.getCachedOutputsStats().minus(statsBefore);
+    assertThat(stats.hitCount()).isEqualTo(2);
+    assertThat(stats.missCount()).isEqualTo(0);
+  }
+
+  public void testProblemsOfReusedUnitsAreReported() throws Exception {
+    Path sourceDir = Files.createTempDirectory("incremental_transpilation_test");
+    Path bazPath = sourceDir.resolve("test/Baz.java");
+    Files.createDirectories(bazPath.getParent());
+    Files.write(
+        bazPath,
+        ImmutableList.of(
+            "package test;",
+            "import jsinterop.annotations.JsType;",
+            "class A {}",
+            "@JsType",
+            "public class Baz {",
+            "  public A field;",
+            "}"),
+        UTF_8);
+
+    TranspileResult first = compileIncrementally(bazPath);
+    assertThat(first.getProblems().getWarnings()).isNotEmpty();
+
+    CacheStats statsBefore = J2clTranspiler.getCachedOutputsStats();
+    TranspileResult second = compileIncrementally(bazPath);
+    assertThat(J2clTranspiler.getCachedOutputsStats().minus(statsBefore).hitCount()).isEqualTo(1);
+    // The checks still run on the units whose outputs are reused.
+    assertThat(second.getProblems().getMessages())
+        .containsExactlyElementsIn(first.getProblems().getMessages())
+        .inOrder();
+    second.assertOutputFilesAreSame(first);
+  }
+
+  private static TranspileResult compileIncrementally(Path sourcePath) throws Exception {
+    return newTesterWithDefaults()
+        .addArgs(sourcePath.toString(), "-incremental")
+        .assertTranspileSucceeds();
+  }
+
+  private static TranspileResult compileJre(boolean incremental) throws Exception {
+    return newTesterWithDefaults()
+        .setNativeSourcePath(
+            "transpiler/javatests/com/google/j2cl/transpiler/integration/libjre_native.jar")
+        .addSourcePath(
+            "transpiler/javatests/com/google/j2cl/transpiler/integration/jre_bundle_deploy-src.jar")
+        .addArgs(incremental ? new String[] {"-incremental"} : new String[0])
+        .assertTranspileSucceeds()
+        .assertNoWarnings();
+  }
+
+  private static TranspileResult compileConstantAndUser(
+      Path sourceDir, String value, boolean incremental) throws Exception {
+    Path constantsPath = sourceDir.resolve("test/Constants.java");
+    Path userPath = sourceDir.resolve("test/User.java");
+    Files.createDirectories(constantsPath.getParent());
+    Files.write(
+        constantsPath,
+        ImmutableList.of(
+            "package test;",
+            "public class Constants {",
+            "  static final int X = " + value + ";",
+            "}"),
+        UTF_8);
+    Files.write(
+        userPath,
+        ImmutableList.of(
+            "package test;",
+            "public class User {",
+            "  int getX() {",
+            "    return Constants.X;",
+            "  }",
+            "}"),
+        UTF_8);
+
+    return newTesterWithDefaults()
+        .addArgs(constantsPath.toString(), userPath.toString())
+        .addArgs(incremental ? new String[] {"-incremental"} : new String[0])
+        .assertTranspileSucceeds()
+        .assertNoWarnings();
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.j2cl.transpiler.integration;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.j2cl.transpiler.integration.TranspilerTester.newTesterWithDefaults;
+
+import com.google.j2cl.transpiler.integration.TranspilerTester.TranspileResult;
+import junit.framework.TestCase;
+
+/** Tests that transpilations using several threads produce the same output as sequential ones. */
+public class ParallelTranspilationTest extends TestCase {
+
+  public void testParallelNormalization() throws Exception {
+    assertSameAsSequential("-normalizationthreads", "4");
+  }
+
+  public void testParallelGeneration() throws Exception {
+    assertSameAsSequential("-generationthreads", "4");
+  }
+
+  public void testPipelinedTranspilation() throws Exception {
+    assertSameAsSequential("-normalizationthreads", "4", "-pipelinedepth", "8");
+  }
+
+  /**
+   * Transpiles the JRE, which covers all kinds of types and passes, with and without {@code args}
+   * and checks that the outputs and the reported problems are identical.
+   */
+  private static void assertSameAsSequential(String... args) throws Exception {
+    TranspileResult expected = compileJre();
+    TranspileResult actual = compileJre(args);
+
+    actual.assertOutputFilesAreSame(expected);
+    assertThat(actual.getProblems().getMessages())
+        .containsExactlyElementsIn(expected.getProblems().getMessages())
+        .inOrder();
+  }
+
+  private static TranspileResult compileJre(String... args) throws Exception {
+    return newTesterWithDefaults()
+        .setNativeSourcePath(
+            "transpiler/javatests/com/google/j2cl/transpiler/integration/libjre_native.jar")
+        .addSourcePath(
+            "transpiler/javatests/com/google/j2cl/transpiler/integration/jre_bundle_deploy-src.jar")
+        .addArgs(args)
+        .assertTranspileSucceeds()
+        .assertNoWarnings();
+  }
+}
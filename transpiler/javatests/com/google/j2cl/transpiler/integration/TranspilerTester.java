@@ -254,6 +254,8 @@ public class TranspilerTester {
           assertThat(Files.readAllLines(actualPath))
               .containsExactlyElementsIn(Files.readAllLines(expectedPath))
               .inOrder();
+          // Also catch differences in line separators.
+          assertThat(Files.readAllBytes(actualPath)).isEqualTo(Files.readAllBytes(expectedPath));
         }
       }
 